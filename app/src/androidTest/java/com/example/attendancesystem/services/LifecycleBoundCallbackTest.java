@@ -0,0 +1,85 @@
+package com.example.attendancesystem.services;
+
+import android.app.Activity;
+import android.content.Context;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.attendancesystem.activities.SessionManagementActivity;
+import com.example.attendancesystem.models.Teacher;
+import com.example.attendancesystem.utils.Utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Une requête encore en cours à la destruction de l'écran ne doit plus retenir l'activité
+ * (FirebaseManager.bind) et son résultat doit être ignoré.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LifecycleBoundCallbackTest {
+
+    private static final int GC_ATTEMPTS = 10;
+
+    @Before
+    public void setUp() {
+        // Sans utilisateur enregistré, SessionManagementActivity se ferme dès onCreate
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Utils.saveUserData(context, "enseignant.test@ecole.fr", "teacher", "Enseignant Test");
+    }
+
+    @Test
+    public void destroyedActivity_isReleasedByPendingRequest() throws Exception {
+        AtomicBoolean delivered = new AtomicBoolean();
+        AtomicReference<FirebaseManager.DataCallback<Teacher>> pending = new AtomicReference<>();
+        WeakReference<Activity> activityRef;
+
+        try (ActivityScenario<SessionManagementActivity> scenario =
+                     ActivityScenario.launch(SessionManagementActivity.class)) {
+            AtomicReference<WeakReference<Activity>> ref = new AtomicReference<>();
+            scenario.onActivity(activity -> {
+                ref.set(new WeakReference<>(activity));
+                // Callback anonyme : retient l'activité comme ceux des écrans
+                pending.set(FirebaseManager.bind(activity, new FirebaseManager.DataCallback<Teacher>() {
+                    @Override
+                    public void onSuccess(Teacher teacher) {
+                        delivered.set(true);
+                        activity.setTitle(teacher != null ? teacher.getFullName() : "");
+                    }
+
+                    @Override
+                    public void onFailure(String error) {
+                        delivered.set(true);
+                    }
+                }));
+            });
+            activityRef = ref.get();
+            // La requête reste en attente pendant la destruction de l'écran
+            scenario.moveToState(Lifecycle.State.DESTROYED);
+        }
+
+        for (int i = 0; i < GC_ATTEMPTS && activityRef.get() != null; i++) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+            Thread.sleep(100);
+        }
+        assertNull("L'activité détruite est encore retenue par la requête en cours", activityRef.get());
+
+        // Réponse arrivée après la destruction : ignorée
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            pending.get().onSuccess(new Teacher());
+            pending.get().onFailure("réponse tardive");
+        });
+        assertFalse(delivered.get());
+    }
+}
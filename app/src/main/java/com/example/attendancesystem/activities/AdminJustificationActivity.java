@@ -18,7 +18,9 @@ import com.example.attendancesystem.models.Admin; // Import the Admin model
 import com.example.attendancesystem.models.Justification;
 import com.example.attendancesystem.services.FirebaseManager;
 import com.example.attendancesystem.utils.AdminJustificationAdapter;
+import com.example.attendancesystem.utils.LoadMoreTrigger;
 import com.example.attendancesystem.utils.Utils; // Still useful for general utilities
+import com.google.firebase.firestore.DocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,17 +28,25 @@ import java.util.List;
 public class AdminJustificationActivity extends AppCompatActivity implements AdminJustificationAdapter.OnJustificationActionListener {
 
     private static final String TAG = "AdminJustificationAct";
+    private static final int PAGE_SIZE = 50;
 
     private FirebaseManager firebaseManager;
     private RecyclerView rvJustifications;
     private AdminJustificationAdapter adapter;
-    private List<Justification> allJustifications;
     private List<Justification> displayedJustifications;
     private ProgressBar progressBar;
     private Spinner statusFilterSpinner;
 
     private Admin currentAdmin; // NEW: Field to hold the current logged-in admin's data
 
+    // Statut filtré côté Firestore (null : tous les statuts)
+    private String statusFilter;
+
+    // Pagination (plus récentes d'abord)
+    private DocumentSnapshot justificationsCursor;
+    private boolean hasMoreJustifications;
+    private int loadGeneration; // Ignore les pages d'un chargement précédent
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -48,7 +58,6 @@ public class AdminJustificationActivity extends AppCompatActivity implements Adm
         }
 
         firebaseManager = FirebaseManager.getInstance();
-        allJustifications = new ArrayList<>();
         displayedJustifications = new ArrayList<>();
 
         initViews();
@@ -67,6 +76,7 @@ public class AdminJustificationActivity extends AppCompatActivity implements Adm
         adapter = new AdminJustificationAdapter(displayedJustifications, this); // 'this' for listener
         rvJustifications.setLayoutManager(new LinearLayoutManager(this));
         rvJustifications.setAdapter(adapter);
+        adapter.getLoadMoreTrigger().setOnLoadMoreListener(this::loadNextPage);
     }
 
     private void setupFilterSpinner() {
@@ -81,7 +91,14 @@ public class AdminJustificationActivity extends AppCompatActivity implements Adm
         statusFilterSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                filterJustifications();
+                String selected = parent.getItemAtPosition(position).toString();
+                String status = selected.equals("Toutes") ? null : selected;
+                if (status == null ? statusFilter == null : status.equals(statusFilter)) return;
+                statusFilter = status;
+                // Nouveau filtre : la pagination repart du début
+                if (currentAdmin != null) {
+                    loadJustifications();
+                }
             }
 
             @Override
@@ -127,42 +144,54 @@ public class AdminJustificationActivity extends AppCompatActivity implements Adm
             return;
         }
 
+        loadGeneration++;
+        displayedJustifications.clear();
+        adapter.notifyDataSetChanged();
+        justificationsCursor = null;
+        hasMoreJustifications = true;
+
         showLoading(true);
-        firebaseManager.getAllJustifications(new FirebaseManager.DataCallback<List<Justification>>() {
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        LoadMoreTrigger trigger = adapter.getLoadMoreTrigger();
+        if (!hasMoreJustifications) {
+            trigger.setHasMore(false);
+            trigger.setLoading(false);
+            return;
+        }
+        trigger.setLoading(true);
+
+        final int generation = loadGeneration;
+        firebaseManager.getJustificationsPage(statusFilter, justificationsCursor, PAGE_SIZE, new FirebaseManager.DataCallback<FirebaseManager.Page<Justification>>() {
             @Override
-            public void onSuccess(List<Justification> justifications) {
-                allJustifications.clear();
-                allJustifications.addAll(justifications);
-                filterJustifications();
+            public void onSuccess(FirebaseManager.Page<Justification> page) {
+                if (generation != loadGeneration) return;
+                justificationsCursor = page.getCursor();
+                hasMoreJustifications = page.hasMore();
+
+                int start = displayedJustifications.size();
+                displayedJustifications.addAll(page.getItems());
+                adapter.notifyItemRangeInserted(start, page.getItems().size());
                 showLoading(false);
-                Log.d(TAG, "Loaded " + allJustifications.size() + " total justifications.");
+                Log.d(TAG, "Loaded " + displayedJustifications.size() + " justifications so far.");
+
+                trigger.setLoading(false);
+                trigger.setHasMore(hasMoreJustifications);
             }
 
             @Override
             public void onFailure(String error) {
+                if (generation != loadGeneration) return;
                 Toast.makeText(AdminJustificationActivity.this, "Error loading justifications: " + error, Toast.LENGTH_SHORT).show();
                 Log.e(TAG, "Error loading justifications: " + error);
+                trigger.setLoading(false);
                 showLoading(false);
             }
         });
     }
 
-    private void filterJustifications() {
-        String selectedStatus = statusFilterSpinner.getSelectedItem().toString();
-        displayedJustifications.clear();
-
-        if (selectedStatus.equals("Toutes")) {
-            displayedJustifications.addAll(allJustifications);
-        } else {
-            for (Justification j : allJustifications) {
-                if (j.getStatus().equalsIgnoreCase(selectedStatus)) {
-                    displayedJustifications.add(j);
-                }
-            }
-        }
-        adapter.notifyDataSetChanged();
-    }
-
     private void showLoading(boolean show) {
         progressBar.setVisibility(show ? View.VISIBLE : View.GONE);
         rvJustifications.setVisibility(show ? View.GONE : View.VISIBLE);
@@ -2,11 +2,14 @@ package com.example.attendancesystem.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.Spinner;
 import android.widget.Toast;
@@ -22,7 +25,10 @@ import com.example.attendancesystem.models.Student;
 import com.example.attendancesystem.models.Teacher;
 import com.example.attendancesystem.services.FirebaseManager;
 import com.example.attendancesystem.utils.AdminUserAdapter;
+import com.example.attendancesystem.utils.LoadMoreTrigger;
+import com.example.attendancesystem.utils.UserSearchIndex;
 import com.example.attendancesystem.utils.Utils;
+import com.google.firebase.firestore.DocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,6 +38,10 @@ public class AdminUserManagementActivity extends AppCompatActivity implements
         CreateEditUserDialog.OnUserCreatedEditedListener {
 
     private static final String TAG = "AdminUserManagementAct";
+    private static final int PAGE_SIZE = 50;
+    // Pages chargées d'affilée pour compléter un filtre avant de demander l'avis de l'utilisateur
+    private static final int MAX_AUTO_PAGES = 3;
+    private static final int SERVER_SEARCH_LIMIT = 20;
 
     private FirebaseManager firebaseManager;
     private RecyclerView rvUsers;
@@ -41,6 +51,19 @@ public class AdminUserManagementActivity extends AppCompatActivity implements
     private ProgressBar progressBar;
     private Spinner userTypeFilterSpinner;
     private Button btnAddNewUser;
+    private Button btnLoadMore;
+    private EditText etSearch;
+
+    // Index de recherche alimenté par les pages chargées
+    private final UserSearchIndex searchIndex = new UserSearchIndex();
+
+    // Pagination : un curseur par collection, les étudiants puis les enseignants pour "Tous"
+    private DocumentSnapshot studentsCursor;
+    private DocumentSnapshot teachersCursor;
+    private boolean hasMoreStudents;
+    private boolean hasMoreTeachers;
+    private int loadGeneration; // Ignore les pages d'un chargement précédent
+    private int autoLoadedPages; // Pages chargées sans action de l'utilisateur
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -68,12 +91,15 @@ public class AdminUserManagementActivity extends AppCompatActivity implements
         progressBar = findViewById(R.id.progress_bar_user_management);
         userTypeFilterSpinner = findViewById(R.id.spinner_user_type_filter);
         btnAddNewUser = findViewById(R.id.btn_add_new_user);
+        btnLoadMore = findViewById(R.id.btn_load_more_users);
+        etSearch = findViewById(R.id.et_user_search);
     }
 
     private void setupRecyclerView() {
         adapter = new AdminUserAdapter(displayedUsers, this);
         rvUsers.setLayoutManager(new LinearLayoutManager(this));
         rvUsers.setAdapter(adapter);
+        adapter.getLoadMoreTrigger().setOnLoadMoreListener(this::loadMoreRequested);
     }
 
     private void setupFilterSpinner() {
@@ -100,57 +126,241 @@ public class AdminUserManagementActivity extends AppCompatActivity implements
 
     private void setupListeners() {
         btnAddNewUser.setOnClickListener(v -> showCreateEditUserDialog(null));
+        btnLoadMore.setOnClickListener(v -> {
+            if (getSearchQuery().isEmpty()) {
+                loadMoreRequested();
+            } else {
+                searchOnServer(getSearchQuery());
+            }
+        });
+
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                filterUsers();
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {}
+        });
     }
 
     private void loadAllUsers() {
-        showLoading(true);
+        loadGeneration++;
         allUsers.clear();
+        searchIndex.clear();
+        displayedUsers.clear();
+        adapter.notifyDataSetChanged();
+        studentsCursor = null;
+        teachersCursor = null;
+        hasMoreStudents = true;
+        hasMoreTeachers = true;
+        autoLoadedPages = 0;
+        btnLoadMore.setVisibility(View.GONE);
 
-        firebaseManager.getAllStudents(new FirebaseManager.DataCallback<List<Student>>() {
+        showLoading(true);
+        loadNextPage();
+    }
+
+    /**
+     * Page demandée par l'utilisateur (défilement ou bouton) : le compteur de pages automatiques repart à zéro
+     */
+    private void loadMoreRequested() {
+        autoLoadedPages = 0;
+        btnLoadMore.setVisibility(View.GONE);
+        loadNextPage();
+    }
+
+    /**
+     * Page chargée pour compléter le filtre ou la recherche.
+     * Au-delà de MAX_AUTO_PAGES, le parcours s'arrête : l'utilisateur peut charger la suite
+     * ou lancer la recherche sur le serveur au lieu de parcourir toute la collection.
+     */
+    private void loadFollowUpPage() {
+        if (autoLoadedPages >= MAX_AUTO_PAGES) {
+            btnLoadMore.setVisibility(View.VISIBLE);
+            updateLoadMoreButton();
+            return;
+        }
+        autoLoadedPages++;
+        loadNextPage();
+    }
+
+    private void updateLoadMoreButton() {
+        String query = getSearchQuery();
+        btnLoadMore.setText(query.isEmpty() ? "Charger plus" : "Rechercher « " + query + " » sur le serveur");
+    }
+
+    private void searchOnServer(String query) {
+        btnLoadMore.setVisibility(View.GONE);
+        showLoading(true);
+        final int generation = loadGeneration;
+        firebaseManager.searchUsers(query, SERVER_SEARCH_LIMIT, new FirebaseManager.DataCallback<List<Object>>() {
             @Override
-            public void onSuccess(List<Student> students) {
-                allUsers.addAll(students);
-                firebaseManager.getAllTeachers(new FirebaseManager.DataCallback<List<Teacher>>() {
-                    @Override
-                    public void onSuccess(List<Teacher> teachers) {
-                        allUsers.addAll(teachers);
-                        filterUsers();
-                        showLoading(false);
-                        Log.d(TAG, "Loaded " + allUsers.size() + " total users.");
-                    }
-
-                    @Override
-                    public void onFailure(String error) {
-                        Toast.makeText(AdminUserManagementActivity.this, "Erreur de chargement des enseignants: " + error, Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "Erreur de chargement des enseignants: " + error);
-                        showLoading(false);
-                    }
-                });
+            public void onSuccess(List<Object> users) {
+                if (generation != loadGeneration) return;
+                showLoading(false);
+                // Résultats ajoutés à l'index seulement : la liste complète reste paginée
+                searchIndex.addAll(users);
+                if (query.equals(getSearchQuery())) {
+                    filterUsers();
+                }
+                if (users.isEmpty()) {
+                    Toast.makeText(AdminUserManagementActivity.this, "Aucun compte trouvé pour « " + query + " »", Toast.LENGTH_SHORT).show();
+                }
             }
 
             @Override
             public void onFailure(String error) {
-                Toast.makeText(AdminUserManagementActivity.this, "Erreur de chargement des étudiants: " + error, Toast.LENGTH_SHORT).show();
-                Log.e(TAG, "Erreur de chargement des étudiants: " + error);
+                if (generation != loadGeneration) return;
                 showLoading(false);
+                Toast.makeText(AdminUserManagementActivity.this, error, Toast.LENGTH_SHORT).show();
+                Log.e(TAG, error);
             }
         });
     }
 
-    private void filterUsers() {
-        String selectedType = userTypeFilterSpinner.getSelectedItem().toString();
-        displayedUsers.clear();
+    /**
+     * Charger la page suivante de la collection correspondant au filtre
+     */
+    private void loadNextPage() {
+        String selectedType = getSelectedType();
+        boolean loadStudents = !selectedType.equals("Enseignants") && hasMoreStudents;
+        boolean loadTeachers = !loadStudents && !selectedType.equals("Étudiants") && hasMoreTeachers;
+
+        LoadMoreTrigger trigger = adapter.getLoadMoreTrigger();
+        if (!loadStudents && !loadTeachers) {
+            trigger.setHasMore(false);
+            trigger.setLoading(false);
+            showLoading(false);
+            return;
+        }
+        trigger.setLoading(true);
+
+        final int generation = loadGeneration;
+        if (loadStudents) {
+            firebaseManager.getStudentsPage(studentsCursor, PAGE_SIZE, new FirebaseManager.DataCallback<FirebaseManager.Page<Student>>() {
+                @Override
+                public void onSuccess(FirebaseManager.Page<Student> page) {
+                    if (generation != loadGeneration) return;
+                    studentsCursor = page.getCursor();
+                    hasMoreStudents = page.hasMore();
+                    onPageLoaded(page.getItems());
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    if (generation != loadGeneration) return;
+                    Toast.makeText(AdminUserManagementActivity.this, "Erreur de chargement des étudiants: " + error, Toast.LENGTH_SHORT).show();
+                    Log.e(TAG, "Erreur de chargement des étudiants: " + error);
+                    onPageFailed();
+                }
+            });
+        } else {
+            firebaseManager.getTeachersPage(teachersCursor, PAGE_SIZE, new FirebaseManager.DataCallback<FirebaseManager.Page<Teacher>>() {
+                @Override
+                public void onSuccess(FirebaseManager.Page<Teacher> page) {
+                    if (generation != loadGeneration) return;
+                    teachersCursor = page.getCursor();
+                    hasMoreTeachers = page.hasMore();
+                    onPageLoaded(page.getItems());
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    if (generation != loadGeneration) return;
+                    Toast.makeText(AdminUserManagementActivity.this, "Erreur de chargement des enseignants: " + error, Toast.LENGTH_SHORT).show();
+                    Log.e(TAG, "Erreur de chargement des enseignants: " + error);
+                    onPageFailed();
+                }
+            });
+        }
+    }
 
-        for (Object user : allUsers) {
-            if (selectedType.equals("Tous")) {
-                displayedUsers.add(user);
-            } else if (selectedType.equals("Étudiants") && user instanceof Student) {
+    private void onPageLoaded(List<?> users) {
+        allUsers.addAll(users);
+        searchIndex.addAll(users);
+
+        LoadMoreTrigger trigger = adapter.getLoadMoreTrigger();
+        if (!getSearchQuery().isEmpty()) {
+            // Recherche en cours : les résultats peuvent s'insérer n'importe où
+            trigger.setLoading(false);
+            showLoading(false);
+            filterUsers();
+            return;
+        }
+
+        int start = displayedUsers.size();
+        for (Object user : users) {
+            if (matchesFilter(user)) {
                 displayedUsers.add(user);
-            } else if (selectedType.equals("Enseignants") && user instanceof Teacher) {
+            }
+        }
+        adapter.notifyItemRangeInserted(start, displayedUsers.size() - start);
+        showLoading(false);
+        Log.d(TAG, "Loaded " + allUsers.size() + " users so far.");
+
+        trigger.setLoading(false);
+        trigger.setHasMore(hasMoreForFilter());
+        // Aucun élément visible ajouté (page d'un autre type) : rien ne déclenchera le défilement
+        if (displayedUsers.size() == start && hasMoreForFilter()) {
+            loadFollowUpPage();
+        }
+    }
+
+    private void onPageFailed() {
+        adapter.getLoadMoreTrigger().setLoading(false);
+        showLoading(false);
+    }
+
+    private void filterUsers() {
+        String query = getSearchQuery();
+        List<Object> candidates = query.isEmpty() ? allUsers : searchIndex.search(query);
+
+        displayedUsers.clear();
+        for (Object user : candidates) {
+            if (matchesFilter(user)) {
                 displayedUsers.add(user);
             }
         }
         adapter.notifyDataSetChanged();
+
+        // Compléter l'affichage si le filtre laisse trop peu d'éléments chargés
+        LoadMoreTrigger trigger = adapter.getLoadMoreTrigger();
+        trigger.setHasMore(hasMoreForFilter());
+        if (displayedUsers.size() < PAGE_SIZE && hasMoreForFilter() && !trigger.isLoading()) {
+            loadFollowUpPage();
+        } else if (!hasMoreForFilter()) {
+            btnLoadMore.setVisibility(View.GONE);
+        } else {
+            updateLoadMoreButton();
+        }
+    }
+
+    private boolean matchesFilter(Object user) {
+        String selectedType = getSelectedType();
+        return selectedType.equals("Tous")
+                || (selectedType.equals("Étudiants") && user instanceof Student)
+                || (selectedType.equals("Enseignants") && user instanceof Teacher);
+    }
+
+    private boolean hasMoreForFilter() {
+        String selectedType = getSelectedType();
+        if (selectedType.equals("Étudiants")) return hasMoreStudents;
+        if (selectedType.equals("Enseignants")) return hasMoreTeachers;
+        return hasMoreStudents || hasMoreTeachers;
+    }
+
+    private String getSearchQuery() {
+        return etSearch.getText() != null ? etSearch.getText().toString().trim() : "";
+    }
+
+    private String getSelectedType() {
+        Object selected = userTypeFilterSpinner.getSelectedItem();
+        return selected != null ? selected.toString() : "Tous";
     }
 
     private void showLoading(boolean show) {
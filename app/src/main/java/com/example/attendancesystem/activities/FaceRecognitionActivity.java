@@ -0,0 +1,310 @@
+package com.example.attendancesystem.activities;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.Size;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+import com.example.attendancesystem.R;
+import com.example.attendancesystem.models.Session;
+import com.example.attendancesystem.services.FaceEmbedder;
+import com.example.attendancesystem.services.FaceEmbedders;
+import com.example.attendancesystem.services.FaceEmbeddingIndex;
+import com.example.attendancesystem.services.FaceEmbeddingMatcher;
+import com.example.attendancesystem.services.FaceFrameAnalyzer;
+import com.example.attendancesystem.services.FirebaseManager;
+import com.example.attendancesystem.utils.Utils;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pointage par reconnaissance faciale pendant une séance active
+ */
+public class FaceRecognitionActivity extends AppCompatActivity implements FaceFrameAnalyzer.Listener {
+
+    private static final String TAG = "FaceRecognition";
+    public static final String EXTRA_SESSION_ID = "sessionId";
+    private static final int CAMERA_PERMISSION_REQUEST = 100;
+    // Résolution d'analyse suffisante pour des visages à un ou deux mètres
+    private static final Size ANALYSIS_RESOLUTION = new Size(640, 480);
+
+    // Views
+    private PreviewView previewView;
+    private TextView tvStatus, tvPresentCount;
+
+    // Data
+    private FirebaseManager firebaseManager;
+    private Session session;
+    private FaceEmbeddingMatcher matcher;
+    private FaceEmbedder embedder;
+    // Tous les étudiants : signaler ceux qui ne sont pas inscrits à la séance
+    private FaceEmbeddingIndex schoolIndex;
+
+    // Caméra
+    private ExecutorService analysisExecutor;
+    private ImageAnalysis imageAnalysis;
+    private FaceFrameAnalyzer analyzer;
+    private FirebaseManager.DataCallback<String> attendanceCallback;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_face_recognition);
+
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setTitle("Reconnaissance faciale");
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        previewView = findViewById(R.id.preview_view);
+        tvStatus = findViewById(R.id.tv_recognition_status);
+        tvPresentCount = findViewById(R.id.tv_present_count);
+
+        firebaseManager = FirebaseManager.getInstance();
+        analysisExecutor = Executors.newSingleThreadExecutor();
+        attendanceCallback = FirebaseManager.bind(this, new FirebaseManager.DataCallback<String>() {
+            @Override
+            public void onSuccess(String attendanceId) {
+                Log.d(TAG, "Présence enregistrée: " + attendanceId);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Utils.showToast(FaceRecognitionActivity.this, "Erreur d'enregistrement: " + error);
+            }
+        });
+
+        if (!FaceEmbedders.isAvailable()) {
+            Utils.showToast(this, "Modèle de reconnaissance non configuré");
+            finish();
+            return;
+        }
+        String sessionId = getIntent().getStringExtra(EXTRA_SESSION_ID);
+        if (sessionId == null) {
+            Utils.showToast(this, "Aucune session active");
+            finish();
+            return;
+        }
+        loadSession(sessionId);
+    }
+
+    private void loadSession(String sessionId) {
+        firebaseManager.getSessionById(sessionId, FirebaseManager.bind(this, new FirebaseManager.DataCallback<Session>() {
+            @Override
+            public void onSuccess(Session loaded) {
+                if (loaded == null || !loaded.isActive()) {
+                    Utils.showToast(FaceRecognitionActivity.this, "Aucune session active");
+                    finish();
+                    return;
+                }
+                session = loaded;
+                updatePresentCount();
+                loadGallery();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Utils.showToast(FaceRecognitionActivity.this, "Erreur: " + error);
+                finish();
+            }
+        }));
+    }
+
+    private void loadGallery() {
+        firebaseManager.getSessionFaceGallery(session, FirebaseManager.bind(this, new FirebaseManager.DataCallback<FaceEmbeddingMatcher>() {
+            @Override
+            public void onSuccess(FaceEmbeddingMatcher gallery) {
+                matcher = gallery;
+                if (gallery.size() == 0) {
+                    Utils.showToast(FaceRecognitionActivity.this, "Aucune empreinte faciale enregistrée pour cette séance");
+                }
+                try {
+                    embedder = FaceEmbedders.create(FaceRecognitionActivity.this);
+                } catch (IOException e) {
+                    Log.e(TAG, "Chargement du modèle d'empreinte impossible", e);
+                    Utils.showToast(FaceRecognitionActivity.this, "Modèle de reconnaissance indisponible");
+                    finish();
+                    return;
+                }
+                startCameraWithPermission();
+                loadSchoolIndex();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Utils.showToast(FaceRecognitionActivity.this, "Erreur: " + error);
+                finish();
+            }
+        }));
+    }
+
+    /**
+     * Index synchronisé en arrière-plan ; la reconnaissance démarre sans l'attendre
+     */
+    private void loadSchoolIndex() {
+        firebaseManager.getSchoolFaceIndex(FirebaseManager.bind(this, new FirebaseManager.DataCallback<FaceEmbeddingIndex>() {
+            @Override
+            public void onSuccess(FaceEmbeddingIndex index) {
+                schoolIndex = index;
+                if (analyzer != null) {
+                    analyzer.setSchoolIndex(index);
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.w(TAG, "Index des empreintes indisponible: " + error);
+            }
+        }));
+    }
+
+    private void startCameraWithPermission() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
+            startCamera();
+        } else {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, CAMERA_PERMISSION_REQUEST);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == CAMERA_PERMISSION_REQUEST) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                startCamera();
+            } else {
+                Utils.showToast(this, "Permission caméra refusée");
+                finish();
+            }
+        }
+    }
+
+    private void startCamera() {
+        ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(this);
+        providerFuture.addListener(() -> {
+            try {
+                bindCamera(providerFuture.get());
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Caméra indisponible", e);
+                Utils.showToast(this, "Caméra indisponible");
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    private void bindCamera(ProcessCameraProvider provider) {
+        if (isDestroyed()) return;
+
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        imageAnalysis = new ImageAnalysis.Builder()
+                .setTargetResolution(ANALYSIS_RESOLUTION)
+                // Une seule image en attente : celles qui arrivent pendant l'analyse remplacent la précédente
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+        analyzer = new FaceFrameAnalyzer(matcher, embedder, session.getPresentStudentEmails(), this);
+        analyzer.setSchoolIndex(schoolIndex);
+        imageAnalysis.setAnalyzer(analysisExecutor, analyzer);
+
+        provider.unbindAll();
+        provider.bindToLifecycle(this, CameraSelector.DEFAULT_FRONT_CAMERA, preview, imageAnalysis);
+        tvStatus.setText("Placez votre visage face à la caméra");
+    }
+
+    @Override
+    public void onFaceStateChanged(int faceCount, boolean stable) {
+        if (faceCount == 0) {
+            tvStatus.setText("Placez votre visage face à la caméra");
+        } else if (!stable) {
+            tvStatus.setText(faceCount > 1 ? faceCount + " visages détectés, ne bougez plus..." : "Ne bougez plus...");
+        } else {
+            tvStatus.setText("Analyse en cours...");
+        }
+    }
+
+    @Override
+    public void onStudentsRecognized(List<FaceEmbeddingMatcher.Match> matches, long processingTimeMs) {
+        if (session == null) return;
+
+        List<String> names = new ArrayList<>();
+        for (FaceEmbeddingMatcher.Match match : matches) {
+            String email = match.getStudent().getEmail();
+            if (session.isStudentPresent(email)) {
+                continue;
+            }
+            session.markStudentPresent(email);
+            if (!session.isStudentPresent(email)) {
+                // Reconnu dans la filière mais pas inscrit à cette séance
+                Log.w(TAG, "Étudiant reconnu non inscrit à la séance: " + email);
+                continue;
+            }
+            firebaseManager.queueAttendance(match.toAttendance(session, processingTimeMs), attendanceCallback);
+            names.add(match.getStudent().getFullName());
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+
+        // Les pointages de l'image partent dans un seul lot, puis une seule mise à jour de la séance
+        firebaseManager.flushAttendanceQueue();
+        firebaseManager.updateSession(session, FirebaseManager.bind(this, new FirebaseManager.DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void aVoid) {
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Utils.showToast(FaceRecognitionActivity.this, "Erreur de mise à jour de la session: " + error);
+            }
+        }));
+
+        tvStatus.setText("Présent: " + TextUtils.join(", ", names));
+        updatePresentCount();
+    }
+
+    @Override
+    public void onUnenrolledStudentsRecognized(List<String> emails) {
+        Log.w(TAG, "Étudiants reconnus non inscrits à la séance: " + emails);
+        tvStatus.setText("Non inscrit à cette séance: " + TextUtils.join(", ", emails));
+    }
+
+    private void updatePresentCount() {
+        int totalEnrolled = session.getStatistics().getTotalEnrolled();
+        int totalPresent = session.getStatistics().getTotalPresent();
+        tvPresentCount.setText(totalPresent + " étudiants présents / " + totalEnrolled + " inscrits");
+    }
+
+    @Override
+    public boolean onSupportNavigateUp() {
+        onBackPressed();
+        return true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        analysisExecutor.shutdown();
+    }
+}
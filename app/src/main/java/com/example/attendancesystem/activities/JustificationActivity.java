@@ -21,6 +21,8 @@ import com.example.attendancesystem.models.Justification;
 import com.example.attendancesystem.models.Student; // Import Student model
 import com.example.attendancesystem.services.FirebaseManager;
 import com.example.attendancesystem.utils.Utils;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.android.material.textfield.TextInputLayout;
 
 import java.text.SimpleDateFormat;
@@ -148,50 +150,42 @@ public class JustificationActivity extends AppCompatActivity {
         }
 
         showLoading(true);
-        firebaseManager.getStudentByEmail(currentUserEmail, new FirebaseManager.DataCallback<Student>() {
-            @Override
-            public void onSuccess(Student student) {
-                currentStudent = student;
-                Log.d(TAG, "Student loaded: " + student.toString());
-                loadStudentCourses(); // Load courses only after student data is available
-                loadJustifications(); // Load existing justifications for the student
-            }
+        // L'étudiant et ses justifications sont chargés en parallèle ;
+        // les cours dépendent de la filière de l'étudiant et suivent son chargement
+        Task<Student> studentTask = FirebaseManager.asTask(
+                callback -> firebaseManager.getStudentByEmail(currentUserEmail, callback));
+        Task<List<Justification>> justificationsTask = FirebaseManager.asTask(
+                callback -> firebaseManager.getStudentJustifications(currentUserEmail, callback));
+        Task<List<Map<String, String>>> coursesTask = studentTask.onSuccessTask(student -> {
+            currentStudent = student;
+            Log.d(TAG, "Student loaded: " + student.toString());
+            return FirebaseManager.asTask(callback -> firebaseManager.getStudentCourses(
+                    student.getEmail(), // You might not need email for course query, but passing for consistency
+                    student.getDepartment(),
+                    student.getField(),
+                    student.getYear(),
+                    callback));
+        });
 
-            @Override
-            public void onFailure(String error) {
-                Log.e(TAG, "Error loading student data: " + error);
-                Utils.showToast(JustificationActivity.this, "Erreur de chargement des données étudiant: " + error);
-                showLoading(false);
+        studentTask.addOnFailureListener(this, e -> {
+            Log.e(TAG, "Error loading student data: " + e.getMessage());
+            Utils.showToast(JustificationActivity.this, "Erreur de chargement des données étudiant: " + e.getMessage());
+        });
+        coursesTask.addOnSuccessListener(this, courses -> {
+            studentCourses = courses;
+            setupCourseSpinner();
+            Log.d(TAG, "Loaded " + courses.size() + " courses for student.");
+        }).addOnFailureListener(this, e -> {
+            if (studentTask.isSuccessful()) {
+                Log.e(TAG, "Error loading student courses: " + e.getMessage());
+                Utils.showToast(JustificationActivity.this, "Erreur de chargement des cours: " + e.getMessage());
             }
         });
-    }
+        justificationsTask.addOnSuccessListener(this, this::showJustifications)
+                .addOnFailureListener(this, e -> onJustificationsFailed(e.getMessage()));
 
-    private void loadStudentCourses() {
-        if (currentStudent == null) {
-            Utils.showToast(this, "Student data not available to load courses.");
-            return;
-        }
-
-        // Use the FirebaseManager method to get student's courses based on their academic details
-        firebaseManager.getStudentCourses(
-                currentStudent.getEmail(), // You might not need email for course query, but passing for consistency
-                currentStudent.getDepartment(),
-                currentStudent.getField(),
-                currentStudent.getYear(),
-                new FirebaseManager.DataCallback<List<Map<String, String>>>() {
-                    @Override
-                    public void onSuccess(List<Map<String, String>> courses) {
-                        studentCourses = courses;
-                        setupCourseSpinner();
-                        Log.d(TAG, "Loaded " + courses.size() + " courses for student.");
-                    }
-
-                    @Override
-                    public void onFailure(String error) {
-                        Log.e(TAG, "Error loading student courses: " + error);
-                        Utils.showToast(JustificationActivity.this, "Erreur de chargement des cours: " + error);
-                    }
-                });
+        Tasks.whenAllComplete(coursesTask, justificationsTask)
+                .addOnCompleteListener(this, task -> showLoading(false));
     }
 
     private void setupCourseSpinner() {
@@ -334,22 +328,30 @@ public class JustificationActivity extends AppCompatActivity {
         firebaseManager.getStudentJustifications(currentUserEmail, new FirebaseManager.DataCallback<List<Justification>>() {
             @Override
             public void onSuccess(List<Justification> justifications) {
-                Log.d(TAG, "Loaded " + justifications.size() + " justifications for " + currentUserEmail);
-                justificationsList.clear();
-                justificationsList.addAll(justifications);
-                justificationAdapter.notifyDataSetChanged();
+                showJustifications(justifications);
                 showLoading(false); // Hide loading
             }
 
             @Override
             public void onFailure(String error) {
-                Log.e(TAG, "Error loading justifications: " + error);
-                Utils.showToast(JustificationActivity.this, "Erreur de chargement des justifications: " + error);
+                onJustificationsFailed(error);
                 showLoading(false); // Hide loading
             }
         });
     }
 
+    private void showJustifications(List<Justification> justifications) {
+        Log.d(TAG, "Loaded " + justifications.size() + " justifications for " + currentUserEmail);
+        justificationsList.clear();
+        justificationsList.addAll(justifications);
+        justificationAdapter.notifyDataSetChanged();
+    }
+
+    private void onJustificationsFailed(String error) {
+        Log.e(TAG, "Error loading justifications: " + error);
+        Utils.showToast(JustificationActivity.this, "Erreur de chargement des justifications: " + error);
+    }
+
     private void showLoading(boolean show) {
         if (show) {
             progressBar.setVisibility(View.VISIBLE);
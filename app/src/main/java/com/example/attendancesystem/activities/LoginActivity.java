@@ -2,6 +2,8 @@ package com.example.attendancesystem.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
@@ -144,10 +146,13 @@ public class LoginActivity extends AppCompatActivity {
     }
 
     private void loadUserData(String email) {
+        long lookupStart = SystemClock.elapsedRealtime();
+
         // Utiliser la nouvelle méthode pour détecter automatiquement le type d'utilisateur
         firebaseManager.getUserByEmail(email, new FirebaseManager.DataCallback<Object>() {
             @Override
             public void onSuccess(Object userData) {
+                Log.d(TAG, "Profil résolu en " + (SystemClock.elapsedRealtime() - lookupStart) + " ms");
                 showLoading(false);
 
                 String role;
@@ -24,6 +24,7 @@ import com.example.attendancesystem.models.Teacher;
 import com.example.attendancesystem.models.Admin;
 import com.example.attendancesystem.models.NotificationPreferences;
 import com.example.attendancesystem.services.FirebaseManager;
+import com.example.attendancesystem.utils.AvatarLoader;
 import com.example.attendancesystem.utils.Utils;
 import com.google.firebase.Timestamp;
 
@@ -182,6 +183,8 @@ public class ProfileActivity extends AppCompatActivity {
     private void updateUI() {
         if (currentUser == null) return;
 
+        AvatarLoader.loadProfilePhoto(ivProfilePhoto, currentUser);
+
         if (currentUser instanceof Student) {
             Student student = (Student) currentUser;
             tvUserName.setText(student.getFullName());
@@ -1,5 +1,6 @@
 package com.example.attendancesystem.activities;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -15,7 +16,9 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.attendancesystem.R;
 import com.example.attendancesystem.models.Session;
 import com.example.attendancesystem.models.Teacher;
+import com.example.attendancesystem.services.FaceEmbedders;
 import com.example.attendancesystem.services.FirebaseManager;
+import com.example.attendancesystem.services.LiveSessionQueries;
 import com.example.attendancesystem.utils.Utils;
 import com.google.firebase.Timestamp;
 
@@ -38,6 +41,9 @@ public class SessionManagementActivity extends AppCompatActivity {
     private Teacher currentTeacher;
     private Session currentSession;
     private boolean isSessionActive = false;
+    // Session en cours lue dans le cache local (hors connexion)
+    private boolean isFromCache = false;
+    private LiveSessionQueries.Subscription sessionsSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,6 +70,8 @@ public class SessionManagementActivity extends AppCompatActivity {
         btnEndSession = findViewById(R.id.btn_end_session);
         btnManualAttendance = findViewById(R.id.btn_manual_attendance);
         cardFaceRecognition = findViewById(R.id.card_face_recognition);
+        // Sans modèle d'empreinte enregistré, le pointage par reconnaissance n'est pas proposé
+        cardFaceRecognition.setVisibility(FaceEmbedders.isAvailable() ? View.VISIBLE : View.GONE);
         rvCurrentStudents = findViewById(R.id.rv_current_students);
 
         // Setup RecyclerView
@@ -80,11 +88,11 @@ public class SessionManagementActivity extends AppCompatActivity {
     private void loadTeacherData() {
         String userEmail = Utils.getSavedUserEmail(this);
         if (userEmail != null) {
-            firebaseManager.getTeacherByEmail(userEmail, new FirebaseManager.DataCallback<Teacher>() {
+            firebaseManager.getTeacherByEmail(userEmail, FirebaseManager.bind(this, new FirebaseManager.DataCallback<Teacher>() {
                 @Override
                 public void onSuccess(Teacher teacher) {
                     currentTeacher = teacher;
-                    loadCurrentSession();
+                    startLiveSessions();
                 }
 
                 @Override
@@ -92,45 +100,56 @@ public class SessionManagementActivity extends AppCompatActivity {
                     Utils.showToast(SessionManagementActivity.this, "Erreur: " + error);
                     finish();
                 }
-            });
+            }));
         } else {
             Utils.showToast(this, "Erreur: Utilisateur non connecté");
             finish();
         }
     }
 
-    private void loadCurrentSession() {
-        if (currentTeacher == null) return;
+    /**
+     * Session en cours de l'enseignant suivie en direct : démarrage et clôture (y compris
+     * hors connexion, depuis le cache local) et modifications faites sur un autre appareil.
+     * La session transmise est partagée avec les autres écrans : elle n'est pas modifiée ici.
+     */
+    private void startLiveSessions() {
+        if (currentTeacher == null || sessionsSubscription != null) {
+            return;
+        }
 
-        // Chercher une session active pour ce professeur
-        firebaseManager.getActiveSessionForTeacher(currentTeacher.getEmail(), new FirebaseManager.DataCallback<Session>() {
-            @Override
-            public void onSuccess(Session session) {
-                if (session != null) {
-                    currentSession = session;
-                    isSessionActive = session.isActive();
-                } else {
-                    currentSession = null;
-                    isSessionActive = false;
-                }
-                updateUI();
-            }
+        sessionsSubscription = firebaseManager.getLiveSessions().subscribeTeacher(currentTeacher.getEmail(),
+                new LiveSessionQueries.SessionsListener() {
+                    @Override
+                    public void onSessionsChanged(LiveSessionQueries.SessionViews views) {
+                        currentSession = views.getActiveSession();
+                        isSessionActive = currentSession != null;
+                        isFromCache = views.isFromCache();
+                        updateUI();
+                    }
+
+                    @Override
+                    public void onFailure(String error) {
+                        Utils.showToast(SessionManagementActivity.this, "Erreur lors du chargement de la session: " + error);
+                        currentSession = null;
+                        isSessionActive = false;
+                        sessionsSubscription = null;
+                        updateUI();
+                    }
+                });
+    }
 
-            @Override
-            public void onFailure(String error) {
-                Utils.showToast(SessionManagementActivity.this, "Erreur lors du chargement de la session: " + error);
-                currentSession = null;
-                isSessionActive = false;
-                updateUI();
-            }
-        });
+    private void stopLiveSessions() {
+        if (sessionsSubscription != null) {
+            sessionsSubscription.remove();
+            sessionsSubscription = null;
+        }
     }
 
     private void showStartSessionDialog() {
         if (currentTeacher == null) return;
 
         // Obtenir les sessions programmées pour aujourd'hui
-        firebaseManager.getTodayScheduledSessionsForTeacher(currentTeacher.getEmail(), new FirebaseManager.DataCallback<List<Session>>() {
+        firebaseManager.getTodayScheduledSessionsForTeacher(currentTeacher.getEmail(), FirebaseManager.bind(this, new FirebaseManager.DataCallback<List<Session>>() {
             @Override
             public void onSuccess(List<Session> sessions) {
                 if (sessions.isEmpty()) {
@@ -159,7 +178,7 @@ public class SessionManagementActivity extends AppCompatActivity {
             public void onFailure(String error) {
                 Utils.showToast(SessionManagementActivity.this, "Erreur: " + error);
             }
-        });
+        }));
     }
 
     private void startSession(Session session) {
@@ -168,21 +187,21 @@ public class SessionManagementActivity extends AppCompatActivity {
         // Démarrer la session
         session.startSession();
 
-        // Sauvegarder dans Firebase
-        firebaseManager.updateSession(session, new FirebaseManager.DataCallback<Void>() {
+        // Sauvegarder dans Firebase (succès dès l'écriture locale, même hors connexion)
+        firebaseManager.updateSession(session, FirebaseManager.bind(this, new FirebaseManager.DataCallback<Void>() {
             @Override
             public void onSuccess(Void aVoid) {
-                currentSession = session;
-                isSessionActive = true;
-                updateUI();
+                // L'affichage suit la session en direct
                 Utils.showToast(SessionManagementActivity.this, "Session démarrée: " + session.getCourseName());
+                // Empreintes des inscrits prêtes avant l'ouverture de la reconnaissance
+                firebaseManager.preloadFaceGalleries(session);
             }
 
             @Override
             public void onFailure(String error) {
                 Utils.showToast(SessionManagementActivity.this, "Erreur lors du démarrage: " + error);
             }
-        });
+        }));
     }
 
     private void endSession() {
@@ -192,31 +211,56 @@ public class SessionManagementActivity extends AppCompatActivity {
                 .setTitle("Terminer la session")
                 .setMessage("Êtes-vous sûr de vouloir terminer la session '" + currentSession.getCourseName() + "' ?")
                 .setPositiveButton("Terminer", (dialog, which) -> {
-                    // Terminer la session
-                    currentSession.endSession();
-
-                    // Sauvegarder dans Firebase
-                    firebaseManager.updateSession(currentSession, new FirebaseManager.DataCallback<Void>() {
-                        @Override
-                        public void onSuccess(Void aVoid) {
-                            isSessionActive = false;
-                            updateUI();
-                            Utils.showToast(SessionManagementActivity.this, "Session terminée");
-
-                            // Optionnel: Revenir au dashboard après quelques secondes
-                            findViewById(android.R.id.content).postDelayed(() -> finish(), 2000);
-                        }
-
-                        @Override
-                        public void onFailure(String error) {
-                            Utils.showToast(SessionManagementActivity.this, "Erreur lors de la fermeture: " + error);
-                        }
-                    });
+                    // Envoyer les pointages encore en file avant de clôturer
+                    firebaseManager.flushAttendanceQueue();
+                    closeSession(currentSession.getSessionId());
                 })
                 .setNegativeButton("Annuler", null)
                 .show();
     }
 
+    /**
+     * Terminer la session sur une copie relue (la session en direct est partagée)
+     */
+    private void closeSession(String sessionId) {
+        firebaseManager.getSessionById(sessionId, FirebaseManager.bind(this, new FirebaseManager.DataCallback<Session>() {
+            @Override
+            public void onSuccess(Session session) {
+                if (session == null || !session.isActive()) {
+                    Utils.showToast(SessionManagementActivity.this, "Session déjà terminée");
+                    return;
+                }
+
+                // Terminer la session
+                session.endSession();
+
+                // Sauvegarder dans Firebase (succès dès l'écriture locale, même hors connexion)
+                Context appContext = getApplicationContext();
+                firebaseManager.updateSession(session, new FirebaseManager.DataCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void aVoid) {
+                        if (isDestroyed()) return;
+                        Utils.showToast(SessionManagementActivity.this, "Session terminée");
+
+                        // Optionnel: Revenir au dashboard après quelques secondes
+                        findViewById(android.R.id.content).postDelayed(() -> finish(), 2000);
+                    }
+
+                    @Override
+                    public void onFailure(String error) {
+                        // Refus du serveur, éventuellement après la fermeture de l'écran
+                        Utils.showToast(appContext, "Erreur lors de la fermeture: " + error);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Utils.showToast(SessionManagementActivity.this, "Erreur lors de la fermeture: " + error);
+            }
+        }));
+    }
+
     private void openManualAttendance() {
         if (currentSession == null) {
             Utils.showToast(this, "Aucune session active");
@@ -232,16 +276,22 @@ public class SessionManagementActivity extends AppCompatActivity {
             Utils.showToast(this, "Aucune session active");
             return;
         }
+        if (!FaceEmbedders.isAvailable()) {
+            Utils.showToast(this, "Modèle de reconnaissance non configuré");
+            return;
+        }
 
-        // TODO: Implémenter la reconnaissance faciale
-        Utils.showToast(this, "Reconnaissance faciale - À implémenter");
+        // La galerie des inscrits a été préchargée au démarrage de la séance
+        Intent intent = new Intent(this, FaceRecognitionActivity.class);
+        intent.putExtra(FaceRecognitionActivity.EXTRA_SESSION_ID, currentSession.getSessionId());
+        startActivity(intent);
     }
 
     private void updateUI() {
         if (isSessionActive && currentSession != null) {
             // Session active
             tvCurrentSession.setText(currentSession.getCourseName() + " - " + currentSession.getRoom());
-            tvSessionStatus.setText("Session Active");
+            tvSessionStatus.setText(isFromCache ? "Session Active (hors connexion)" : "Session Active");
             tvSessionStatus.setTextColor(getColor(R.color.success_color));
 
             int totalEnrolled = currentSession.getStatistics().getTotalEnrolled();
@@ -296,9 +346,15 @@ public class SessionManagementActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Recharger la session courante quand on revient sur l'activité
-        loadCurrentSession();
+    protected void onStart() {
+        super.onStart();
+        // Reprendre l'écoute (résultat immédiat si la requête est encore active)
+        startLiveSessions();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stopLiveSessions();
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import com.example.attendancesystem.R;
 import com.example.attendancesystem.models.Session;
 import com.example.attendancesystem.models.Student;
 import com.example.attendancesystem.services.FirebaseManager;
+import com.example.attendancesystem.services.LiveSessionQueries;
 import com.example.attendancesystem.utils.Utils;
 
 import java.util.List;
@@ -30,6 +31,8 @@ public class StudentDashboardActivity extends AppCompatActivity {
     // Firebase
     private FirebaseManager firebaseManager;
     private Student currentStudent;
+    private LiveSessionQueries.Subscription sessionsSubscription;
+    private int lastCompletedCount = -1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -79,7 +82,7 @@ public class StudentDashboardActivity extends AppCompatActivity {
         String userEmail = Utils.getSavedUserEmail(this);
         if (userEmail != null) {
             Log.d(TAG, "Loading student data for: " + userEmail);
-            firebaseManager.getStudentByEmail(userEmail, new FirebaseManager.DataCallback<Student>() {
+            firebaseManager.getStudentByEmail(userEmail, FirebaseManager.bind(this, new FirebaseManager.DataCallback<Student>() {
                 @Override
                 public void onSuccess(Student student) {
                     currentStudent = student;
@@ -88,7 +91,7 @@ public class StudentDashboardActivity extends AppCompatActivity {
                             " - Year: " + student.getYear() +
                             " - Department: " + student.getDepartment());
                     updateUI();
-                    loadTodayAttendance();
+                    startLiveSessions();
                 }
 
                 @Override
@@ -96,7 +99,7 @@ public class StudentDashboardActivity extends AppCompatActivity {
                     Log.e(TAG, "Error loading student data: " + error);
                     Utils.showToast(StudentDashboardActivity.this, "Erreur de chargement: " + error);
                 }
-            });
+            }));
         } else {
             Log.e(TAG, "No saved user email found");
             Utils.showToast(this, "Utilisateur non connecté");
@@ -113,30 +116,32 @@ public class StudentDashboardActivity extends AppCompatActivity {
         }
     }
 
-    private void loadTodayAttendance() {
-        if (currentStudent == null) {
-            Log.w(TAG, "Cannot load today attendance - currentStudent is null");
+    /**
+     * S'abonner aux sessions en direct : aujourd'hui, prochaine séance et séance en cours
+     * sont mises à jour à chaque modification, sans relancer de requête.
+     */
+    private void startLiveSessions() {
+        if (currentStudent == null || sessionsSubscription != null) {
             return;
         }
 
-        Log.d(TAG, "Loading today's sessions for: " +
+        Log.d(TAG, "Subscribing to sessions for: " +
                 "Department=" + currentStudent.getDepartment() +
                 ", Field=" + currentStudent.getField() +
                 ", Year=" + currentStudent.getYear());
 
-        // Load today's sessions for this student's department, field and year
-        firebaseManager.getTodaySessionsForStudent(
-                currentStudent.getEmail(),
+        sessionsSubscription = firebaseManager.getLiveSessions().subscribeStudent(
                 currentStudent.getDepartment(),
                 currentStudent.getField(),
                 currentStudent.getYear(),
-                new FirebaseManager.DataCallback<List<Session>>() {
+                new LiveSessionQueries.SessionsListener() {
                     @Override
-                    public void onSuccess(List<Session> sessions) {
-                        Log.d(TAG, "Today's sessions loaded successfully: " + sessions.size() + " sessions found");
+                    public void onSessionsChanged(LiveSessionQueries.SessionViews views) {
+                        List<Session> sessions = views.getTodaySessions();
+                        Log.d(TAG, "Today's sessions updated: " + sessions.size() + " sessions found");
                         updateTodayStatus(sessions);
-                        loadNextSession();
-                        loadAttendanceStatistics();
+                        updateNextSession(views.getNextSession());
+                        refreshStatisticsIfNeeded(sessions);
                     }
 
                     @Override
@@ -145,10 +150,34 @@ public class StudentDashboardActivity extends AppCompatActivity {
                         Utils.showToast(StudentDashboardActivity.this, "Erreur lors du chargement des sessions: " + error);
                         tvTodayStatus.setText("Erreur de chargement");
                         tvNextCourse.setText("Données non disponibles");
+                        sessionsSubscription = null;
                     }
                 });
     }
 
+    private void stopLiveSessions() {
+        if (sessionsSubscription != null) {
+            sessionsSubscription.remove();
+            sessionsSubscription = null;
+        }
+    }
+
+    /**
+     * Le taux d'assiduité ne change que lorsqu'une séance se termine
+     */
+    private void refreshStatisticsIfNeeded(List<Session> todaySessions) {
+        int completedCount = 0;
+        for (Session session : todaySessions) {
+            if (session.isCompleted()) {
+                completedCount++;
+            }
+        }
+        if (completedCount != lastCompletedCount) {
+            lastCompletedCount = completedCount;
+            loadAttendanceStatistics();
+        }
+    }
+
     private void updateTodayStatus(List<Session> sessions) {
         if (sessions == null || sessions.isEmpty()) {
             tvTodayStatus.setText("Aucun cours aujourd'hui");
@@ -184,43 +213,19 @@ public class StudentDashboardActivity extends AppCompatActivity {
         Log.d(TAG, "Today status updated: " + statusText);
     }
 
-    private void loadNextSession() {
-        if (currentStudent == null) {
-            Log.w(TAG, "Cannot load next session - currentStudent is null");
-            return;
-        }
-
-        Log.d(TAG, "Loading next session for student");
+    private void updateNextSession(Session session) {
+        if (session != null) {
+            Log.d(TAG, "Next session found: " + session.getCourseName() +
+                    " at " + session.getStartTime() +
+                    " in " + session.getRoom());
 
-        // Load next upcoming session for this student
-        firebaseManager.getNextSessionForStudent(
-                currentStudent.getEmail(),
-                currentStudent.getDepartment(),
-                currentStudent.getField(),
-                currentStudent.getYear(),
-                new FirebaseManager.DataCallback<Session>() {
-                    @Override
-                    public void onSuccess(Session session) {
-                        if (session != null) {
-                            Log.d(TAG, "Next session found: " + session.getCourseName() +
-                                    " at " + session.getStartTime() +
-                                    " in " + session.getRoom());
-
-                            String timeStr = Utils.formatTime(session.getStartTime());
-                            String sessionText = session.getCourseName() + " - " + timeStr + " (" + session.getRoom() + ")";
-                            tvNextCourse.setText(sessionText);
-                        } else {
-                            Log.d(TAG, "No next session found");
-                            tvNextCourse.setText("Aucun cours programmé");
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(String error) {
-                        Log.e(TAG, "Error loading next session: " + error);
-                        tvNextCourse.setText("Erreur de chargement");
-                    }
-                });
+            String timeStr = Utils.formatTime(session.getStartTime());
+            String sessionText = session.getCourseName() + " - " + timeStr + " (" + session.getRoom() + ")";
+            tvNextCourse.setText(sessionText);
+        } else {
+            Log.d(TAG, "No next session found");
+            tvNextCourse.setText("Aucun cours programmé");
+        }
     }
 
     private void loadAttendanceStatistics() {
@@ -237,7 +242,7 @@ public class StudentDashboardActivity extends AppCompatActivity {
                 currentStudent.getDepartment(),
                 currentStudent.getField(),
                 currentStudent.getYear(),
-                new FirebaseManager.DataCallback<FirebaseManager.AttendanceStats>() {
+                FirebaseManager.bind(this, new FirebaseManager.DataCallback<FirebaseManager.AttendanceStats>() {
                     @Override
                     public void onSuccess(FirebaseManager.AttendanceStats stats) {
                         if (stats != null) {
@@ -255,7 +260,7 @@ public class StudentDashboardActivity extends AppCompatActivity {
                         Log.e(TAG, "Error loading attendance statistics: " + error);
                         tvAttendanceRate.setText("N/A");
                     }
-                });
+                }));
     }
 
     private void setupListeners() {
@@ -301,7 +306,8 @@ public class StudentDashboardActivity extends AppCompatActivity {
         if (id == R.id.action_refresh) {
             // Refresh the dashboard data
             if (currentStudent != null) {
-                loadTodayAttendance();
+                // Les sessions sont déjà à jour ; seul le bilan est relu
+                loadAttendanceStatistics();
             } else {
                 loadUserData();
             }
@@ -334,12 +340,15 @@ public class StudentDashboardActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Refresh data when returning to the activity
-        if (currentStudent != null) {
-            Log.d(TAG, "onResume - refreshing data");
-            loadTodayAttendance();
-        }
+    protected void onStart() {
+        super.onStart();
+        // Reprendre l'écoute (résultat immédiat si la requête est encore active)
+        startLiveSessions();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stopLiveSessions();
     }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import com.example.attendancesystem.R;
 import com.example.attendancesystem.models.Session;
 import com.example.attendancesystem.models.Teacher;
 import com.example.attendancesystem.services.FirebaseManager;
+import com.example.attendancesystem.services.LiveSessionQueries;
 import com.example.attendancesystem.utils.Utils;
 
 import java.util.List;
@@ -29,6 +30,7 @@ public class TeacherDashboardActivity extends AppCompatActivity {
     // Firebase
     private FirebaseManager firebaseManager;
     private Teacher currentTeacher;
+    private LiveSessionQueries.Subscription sessionsSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -77,7 +79,7 @@ public class TeacherDashboardActivity extends AppCompatActivity {
                     Log.d(TAG, "Teacher loaded: " + teacher.getFullName() +
                             " - Department: " + teacher.getDepartment());
                     updateUI();
-                    loadTodayStatistics();
+                    startLiveSessions();
                 }
 
                 @Override
@@ -102,33 +104,34 @@ public class TeacherDashboardActivity extends AppCompatActivity {
         }
     }
 
-    private void loadTodayStatistics() {
-        if (currentTeacher == null) {
-            Log.w(TAG, "Cannot load today statistics - currentTeacher is null");
+    /**
+     * S'abonner aux sessions en direct de l'enseignant : le résumé du jour, la prochaine séance
+     * et les statistiques sont recalculés à chaque modification, sans relancer de requête.
+     */
+    private void startLiveSessions() {
+        if (currentTeacher == null || sessionsSubscription != null) {
             return;
         }
 
-        Log.d(TAG, "Loading today's sessions for teacher: " + currentTeacher.getEmail());
+        Log.d(TAG, "Subscribing to sessions for teacher: " + currentTeacher.getEmail());
 
-        // Charger les sessions d'aujourd'hui pour cet enseignant
-        firebaseManager.getTodaySessionsForTeacher(currentTeacher.getEmail(),
-                new FirebaseManager.DataCallback<List<Session>>() {
+        sessionsSubscription = firebaseManager.getLiveSessions().subscribeTeacher(currentTeacher.getEmail(),
+                new LiveSessionQueries.SessionsListener() {
                     @Override
-                    public void onSuccess(List<Session> sessions) {
-                        Log.d(TAG, "Today's sessions loaded successfully: " + sessions.size() + " sessions found");
-
-                        if (sessions != null) {
-                            for (int i = 0; i < sessions.size(); i++) {
-                                Session s = sessions.get(i);
-                                Log.d(TAG, "Session " + (i+1) + ": " + s.getCourseName() +
-                                        " - Field: " + s.getField() +
-                                        " - Time: " + s.getStartTime() +
-                                        " - Status: " + s.getStatus());
-                            }
+                    public void onSessionsChanged(LiveSessionQueries.SessionViews views) {
+                        List<Session> sessions = views.getTodaySessions();
+                        Log.d(TAG, "Today's sessions updated: " + sessions.size() + " sessions found");
+
+                        for (int i = 0; i < sessions.size(); i++) {
+                            Session s = sessions.get(i);
+                            Log.d(TAG, "Session " + (i+1) + ": " + s.getCourseName() +
+                                    " - Field: " + s.getField() +
+                                    " - Time: " + s.getStartTime() +
+                                    " - Status: " + s.getStatus());
                         }
 
                         updateTodaySessionsInfo(sessions);
-                        loadNextSession();
+                        updateNextSession(views.getNextSession());
                         loadAttendanceStatistics(sessions);
                     }
 
@@ -138,10 +141,18 @@ public class TeacherDashboardActivity extends AppCompatActivity {
                         Utils.showToast(TeacherDashboardActivity.this, "Erreur lors du chargement des sessions: " + error);
                         tvTodayCourses.setText("Erreur de chargement");
                         tvStudentsPresent.setText("Données non disponibles");
+                        sessionsSubscription = null;
                     }
                 });
     }
 
+    private void stopLiveSessions() {
+        if (sessionsSubscription != null) {
+            sessionsSubscription.remove();
+            sessionsSubscription = null;
+        }
+    }
+
     private void updateTodaySessionsInfo(List<Session> sessions) {
         if (sessions == null || sessions.isEmpty()) {
             tvTodayCourses.setText("Aucun cours aujourd'hui");
@@ -176,41 +187,21 @@ public class TeacherDashboardActivity extends AppCompatActivity {
         Log.d(TAG, "Today sessions info updated: " + statusText);
     }
 
-    private void loadNextSession() {
-        if (currentTeacher == null) {
-            Log.w(TAG, "Cannot load next session - currentTeacher is null");
-            return;
+    private void updateNextSession(Session session) {
+        if (session != null) {
+            Log.d(TAG, "Next session found: " + session.getCourseName() +
+                    " - Field: " + session.getField() +
+                    " at " + session.getStartTime() +
+                    " in " + session.getRoom());
+
+            String timeStr = Utils.formatTime(session.getStartTime());
+            String sessionText = session.getCourseName() + " (" + session.getField() + ") - " +
+                    timeStr + " (" + session.getRoom() + ")";
+            tvUpcomingCourse.setText(sessionText);
+        } else {
+            Log.d(TAG, "No next session found");
+            tvUpcomingCourse.setText("Aucun cours programmé");
         }
-
-        Log.d(TAG, "Loading next session for teacher: " + currentTeacher.getEmail());
-
-        // Charger la prochaine session pour cet enseignant
-        firebaseManager.getNextSessionForTeacher(currentTeacher.getEmail(),
-                new FirebaseManager.DataCallback<Session>() {
-                    @Override
-                    public void onSuccess(Session session) {
-                        if (session != null) {
-                            Log.d(TAG, "Next session found: " + session.getCourseName() +
-                                    " - Field: " + session.getField() +
-                                    " at " + session.getStartTime() +
-                                    " in " + session.getRoom());
-
-                            String timeStr = Utils.formatTime(session.getStartTime());
-                            String sessionText = session.getCourseName() + " (" + session.getField() + ") - " +
-                                    timeStr + " (" + session.getRoom() + ")";
-                            tvUpcomingCourse.setText(sessionText);
-                        } else {
-                            Log.d(TAG, "No next session found");
-                            tvUpcomingCourse.setText("Aucun cours programmé");
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(String error) {
-                        Log.e(TAG, "Error loading next session: " + error);
-                        tvUpcomingCourse.setText("Erreur de chargement");
-                    }
-                });
     }
 
     private void loadAttendanceStatistics(List<Session> todaySessions) {
@@ -301,7 +292,9 @@ public class TeacherDashboardActivity extends AppCompatActivity {
 
         if (id == R.id.action_refresh) {
             if (currentTeacher != null) {
-                loadTodayStatistics();
+                // Relancer l'écoute (après une erreur, par exemple)
+                stopLiveSessions();
+                startLiveSessions();
             } else {
                 loadUserData();
             }
@@ -330,12 +323,15 @@ public class TeacherDashboardActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Actualiser les données quand on revient sur l'activité
-        if (currentTeacher != null) {
-            Log.d(TAG, "onResume - refreshing data");
-            loadTodayStatistics();
-        }
+    protected void onStart() {
+        super.onStart();
+        // Reprendre l'écoute (résultat immédiat si la requête est encore active)
+        startLiveSessions();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stopLiveSessions();
     }
 }
\ No newline at end of file
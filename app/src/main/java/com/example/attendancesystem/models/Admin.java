@@ -9,6 +9,11 @@ public class Admin {
     private String fullName;
     private String adminId;
     private String profileImageUrl;
+    private String profileThumbnailUrl; // Miniature pour les listes et avatars
+    private String profileImageFileId; // Fichiers Drive de la photo et de la miniature
+    private String profileThumbnailFileId;
+    private String profileImageRevision; // Change à chaque nouvelle photo (clé de cache des avatars)
+    private String profileImageHash; // SHA-256 de l'image source (évite de renvoyer la même photo)
     private Timestamp createdAt;
     private boolean isActive;
     private String phoneNumber;
@@ -42,6 +47,19 @@ public class Admin {
         map.put("fullName", fullName);
         map.put("adminId", adminId);
         map.put("profileImageUrl", profileImageUrl);
+        if (profileThumbnailUrl != null) {
+            map.put("profileThumbnailUrl", profileThumbnailUrl);
+        }
+        if (profileImageFileId != null) {
+            map.put("profileImageFileId", profileImageFileId);
+            map.put("profileThumbnailFileId", profileThumbnailFileId);
+        }
+        if (profileImageRevision != null) {
+            map.put("profileImageRevision", profileImageRevision);
+        }
+        if (profileImageHash != null) {
+            map.put("profileImageHash", profileImageHash);
+        }
         map.put("createdAt", createdAt);
         map.put("isActive", isActive);
         map.put("phoneNumber", phoneNumber);
@@ -59,6 +77,11 @@ public class Admin {
     public String getFullName() { return fullName; }
     public String getAdminId() { return adminId; }
     public String getProfileImageUrl() { return profileImageUrl; }
+    public String getProfileThumbnailUrl() { return profileThumbnailUrl; }
+    public String getProfileImageFileId() { return profileImageFileId; }
+    public String getProfileThumbnailFileId() { return profileThumbnailFileId; }
+    public String getProfileImageRevision() { return profileImageRevision; }
+    public String getProfileImageHash() { return profileImageHash; }
     public Timestamp getCreatedAt() { return createdAt; }
     public boolean isActive() { return isActive; }
     public String getPhoneNumber() { return phoneNumber; }
@@ -72,6 +95,11 @@ public class Admin {
     public void setFullName(String fullName) { this.fullName = fullName; }
     public void setAdminId(String adminId) { this.adminId = adminId; }
     public void setProfileImageUrl(String profileImageUrl) { this.profileImageUrl = profileImageUrl; }
+    public void setProfileThumbnailUrl(String profileThumbnailUrl) { this.profileThumbnailUrl = profileThumbnailUrl; }
+    public void setProfileImageFileId(String profileImageFileId) { this.profileImageFileId = profileImageFileId; }
+    public void setProfileThumbnailFileId(String profileThumbnailFileId) { this.profileThumbnailFileId = profileThumbnailFileId; }
+    public void setProfileImageRevision(String profileImageRevision) { this.profileImageRevision = profileImageRevision; }
+    public void setProfileImageHash(String profileImageHash) { this.profileImageHash = profileImageHash; }
     public void setCreatedAt(Timestamp createdAt) { this.createdAt = createdAt; }
     public void setActive(boolean active) { this.isActive = active; }
     public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
@@ -1,6 +1,8 @@
 package com.example.attendancesystem.models;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -83,6 +85,15 @@ public class Attendance {
             return map;
         }
 
+        static AttendanceDetails fromMap(Map<String, Object> data) {
+            AttendanceDetails details = new AttendanceDetails();
+            details.captureTime = FirestoreValues.timestamp(data, "captureTime");
+            details.processingTime = FirestoreValues.integer(data, "processingTime");
+            details.retryCount = (int) FirestoreValues.integer(data, "retryCount");
+            details.location = FirestoreValues.string(data, "location");
+            return details;
+        }
+
         // Getters et setters
         public Timestamp getCaptureTime() { return captureTime; }
         public void setCaptureTime(Timestamp captureTime) { this.captureTime = captureTime; }
@@ -135,6 +146,36 @@ public class Attendance {
         return map;
     }
 
+    /**
+     * Lire une présence à partir d'un document (inverse de toMap(), sans réflexion)
+     */
+    public static Attendance fromSnapshot(DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        if (data == null) {
+            return null;
+        }
+        Attendance attendance = new Attendance();
+        String attendanceId = FirestoreValues.string(data, "attendanceId");
+        attendance.attendanceId = attendanceId != null ? attendanceId : document.getId();
+        attendance.studentEmail = FirestoreValues.string(data, "studentEmail");
+        attendance.studentName = FirestoreValues.string(data, "studentName");
+        attendance.studentId = FirestoreValues.string(data, "studentId");
+        attendance.courseId = FirestoreValues.string(data, "courseId");
+        attendance.courseName = FirestoreValues.string(data, "courseName");
+        attendance.sessionId = FirestoreValues.string(data, "sessionId");
+        attendance.timestamp = FirestoreValues.timestamp(data, "timestamp");
+        attendance.status = FirestoreValues.string(data, "status");
+        attendance.confidence = FirestoreValues.number(data, "confidence");
+        attendance.isManualEntry = FirestoreValues.bool(data, "isManualEntry", false);
+        attendance.modifiedBy = FirestoreValues.string(data, "modifiedBy");
+        attendance.modificationReason = FirestoreValues.string(data, "modificationReason");
+        Map<String, Object> details = FirestoreValues.map(data, "attendanceDetails");
+        attendance.attendanceDetails = details != null ? AttendanceDetails.fromMap(details) : null;
+        attendance.createdAt = FirestoreValues.timestamp(data, "createdAt");
+        attendance.lastModifiedAt = FirestoreValues.timestamp(data, "lastModifiedAt");
+        return attendance;
+    }
+
     // Getters
     public String getAttendanceId() { return attendanceId; }
     public String getStudentEmail() { return studentEmail; }
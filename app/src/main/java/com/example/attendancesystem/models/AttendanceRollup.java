@@ -0,0 +1,317 @@
+package com.example.attendancesystem.models;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bilan d'assiduité d'un étudiant (un document par étudiant).
+ * Les compteurs sont ventilés par statut, par cours et par jour ("2024-02-14").
+ * Le statut compté pour chaque séance est conservé dans sessions : réappliquer le même statut
+ * ne change rien, et une correction (absent -> présent, absence justifiée...) déplace
+ * les compteurs au lieu d'ajouter une séance.
+ * Seules les séances et les jours des RETENTION_DAYS derniers jours sont conservés (le document
+ * reste petit) : au-delà, les compteurs sont définitifs et une correction n'est plus reportée.
+ * Le bilan n'est fiable qu'une fois rempli avec l'historique de l'étudiant (backfilled).
+ */
+public class AttendanceRollup {
+    public static final String PRESENT = "present";
+    public static final String ABSENT = "absent";
+    public static final String JUSTIFIED = "justified";
+    public static final String TOTAL = "total";
+
+    // Jours conservés dans sessions et byDay (aujourd'hui compris), fenêtre des statistiques
+    public static final int RETENTION_DAYS = 30;
+
+    // Champs d'une entrée de sessions
+    private static final String ENTRY_STATUS = "status";
+    private static final String ENTRY_COURSE = "courseId";
+    private static final String ENTRY_DAY = "day";
+
+    private String studentEmail;
+    private long totalSessions;
+    private long presentCount;
+    private long absentCount;
+    private long justifiedCount;
+    private Map<String, Map<String, Long>> byCourse; // courseId -> {present, absent, justified, total}
+    private Map<String, Map<String, Long>> byDay;    // jour -> {present, absent, justified, total}
+    private Map<String, Map<String, Object>> sessions; // sessionId -> {status, courseId, day}
+    private boolean backfilled;
+    private Timestamp lastUpdatedAt;
+
+    // Constructeur vide requis pour Firestore
+    public AttendanceRollup() {
+        this.byCourse = new HashMap<>();
+        this.byDay = new HashMap<>();
+        this.sessions = new HashMap<>();
+    }
+
+    // =================== MISES À JOUR ===================
+
+    /**
+     * Entrée enregistrée pour une séance
+     */
+    public static Map<String, Object> sessionEntry(String courseId, Date sessionDate, String status) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(ENTRY_STATUS, status);
+        entry.put(ENTRY_COURSE, courseId);
+        entry.put(ENTRY_DAY, dayKey(sessionDate));
+        return entry;
+    }
+
+    /**
+     * Jours déjà présents dans byDay (vide si le document n'existe pas)
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> daysIn(DocumentSnapshot document) {
+        Object value = document != null && document.exists() ? document.get("byDay") : null;
+        return value instanceof Map ? new HashSet<>(((Map<String, Object>) value).keySet()) : new HashSet<>();
+    }
+
+    /**
+     * Entrées déjà enregistrées dans un document de bilan (vide s'il n'existe pas)
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Map<String, Object>> sessionsIn(DocumentSnapshot document) {
+        Map<String, Map<String, Object>> entries = new HashMap<>();
+        Object value = document != null && document.exists() ? document.get("sessions") : null;
+        if (value instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                if (entry.getValue() instanceof Map) {
+                    entries.put(entry.getKey(), (Map<String, Object>) entry.getValue());
+                }
+            }
+        }
+        return entries;
+    }
+
+    public static String entryStatus(Map<String, Object> entry) {
+        return entry != null ? (String) entry.get(ENTRY_STATUS) : null;
+    }
+
+    /**
+     * Statut à retenir pour une séance déjà comptée avec previousStatus (null si rien ne change).
+     * Une absence justifiée n'est pas ramenée à une simple absence, et seule une absence
+     * peut être justifiée.
+     */
+    public static String resolveStatus(String previousStatus, String status) {
+        if (status == null || status.equals(previousStatus)) {
+            return null;
+        }
+        if (JUSTIFIED.equals(previousStatus) && ABSENT.equals(status)) {
+            return null;
+        }
+        if (JUSTIFIED.equals(status) && PRESENT.equals(previousStatus)) {
+            return null;
+        }
+        return status;
+    }
+
+    /**
+     * Map (à écrire avec SetOptions.merge()) enregistrant le statut d'un étudiant pour une séance,
+     * à partir des entrées et des jours enregistrés dans le bilan ; les entrées et les jours
+     * sortis de la fenêtre de conservation sont supprimés au passage.
+     * Retourne null si le bilan ne change pas ou si la séance est hors de la fenêtre.
+     */
+    public static Map<String, Object> statusUpdate(String studentEmail, String sessionId, String courseId,
+                                                   Date sessionDate, String status,
+                                                   Map<String, Map<String, Object>> recorded,
+                                                   Set<String> recordedDays, Date now) {
+        Map<String, Object> previous = recorded.get(sessionId);
+        String previousStatus = entryStatus(previous);
+        String newStatus = resolveStatus(previousStatus, status);
+        if (newStatus == null) {
+            return null;
+        }
+        // Une correction reste rattachée au cours et au jour déjà comptés
+        String entryCourse = previous != null ? (String) previous.get(ENTRY_COURSE) : courseId;
+        String entryDay = previous != null && previous.get(ENTRY_DAY) != null
+                ? (String) previous.get(ENTRY_DAY) : dayKey(sessionDate);
+        String oldestDay = oldestRetainedDay(now);
+        if (entryDay.compareTo(oldestDay) < 0) {
+            return null; // Compteurs définitifs
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        Map<String, Object> bucket = new HashMap<>();
+        map.put("studentEmail", studentEmail);
+        map.put(newStatus + "Count", FieldValue.increment(1));
+        bucket.put(newStatus, FieldValue.increment(1));
+        if (previousStatus != null) {
+            map.put(previousStatus + "Count", FieldValue.increment(-1));
+            bucket.put(previousStatus, FieldValue.increment(-1));
+        } else {
+            map.put("totalSessions", FieldValue.increment(1));
+            bucket.put(TOTAL, FieldValue.increment(1));
+        }
+
+        if (entryCourse != null) {
+            Map<String, Object> course = new HashMap<>();
+            course.put(entryCourse, new HashMap<>(bucket));
+            map.put("byCourse", course);
+        }
+        Map<String, Object> day = new HashMap<>();
+        day.put(entryDay, bucket);
+        map.put("byDay", day);
+
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(ENTRY_STATUS, newStatus);
+        entry.put(ENTRY_COURSE, entryCourse);
+        entry.put(ENTRY_DAY, entryDay);
+        Map<String, Object> sessionsMap = new HashMap<>();
+        sessionsMap.put(sessionId, entry);
+        map.put("sessions", sessionsMap);
+
+        // Clés "yyyy-MM-dd" : l'ordre alphabétique est l'ordre chronologique
+        for (Map.Entry<String, Map<String, Object>> recordedEntry : recorded.entrySet()) {
+            Object recordedDay = recordedEntry.getValue().get(ENTRY_DAY);
+            if (recordedDay instanceof String && ((String) recordedDay).compareTo(oldestDay) < 0) {
+                sessionsMap.put(recordedEntry.getKey(), FieldValue.delete());
+            }
+        }
+        for (String recordedDay : recordedDays) {
+            if (recordedDay.compareTo(oldestDay) < 0) {
+                day.put(recordedDay, FieldValue.delete());
+            }
+        }
+        map.put("lastUpdatedAt", Timestamp.now());
+        return map;
+    }
+
+    /**
+     * Document complet (à écrire sans fusion) recalculé à partir des entrées de toutes les séances ;
+     * seules celles de la fenêtre de conservation sont enregistrées
+     */
+    public static Map<String, Object> rebuild(String studentEmail, Map<String, Map<String, Object>> entries, Date now) {
+        String oldestDay = oldestRetainedDay(now);
+        Map<String, Map<String, Object>> retained = new HashMap<>();
+        Map<String, Long> totals = new HashMap<>();
+        Map<String, Map<String, Long>> courses = new HashMap<>();
+        Map<String, Map<String, Long>> days = new HashMap<>();
+        for (Map<String, Object> entry : entries.values()) {
+            String status = (String) entry.get(ENTRY_STATUS);
+            if (status == null) {
+                continue;
+            }
+            count(totals, status);
+            String courseId = (String) entry.get(ENTRY_COURSE);
+            if (courseId != null) {
+                count(courses.computeIfAbsent(courseId, key -> new HashMap<>()), status);
+            }
+            String day = (String) entry.get(ENTRY_DAY);
+            if (day != null && day.compareTo(oldestDay) >= 0) {
+                count(days.computeIfAbsent(day, key -> new HashMap<>()), status);
+            }
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : entries.entrySet()) {
+            String day = (String) entry.getValue().get(ENTRY_DAY);
+            if (day != null && day.compareTo(oldestDay) >= 0) {
+                retained.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("studentEmail", studentEmail);
+        map.put("totalSessions", valueOf(totals, TOTAL));
+        map.put("presentCount", valueOf(totals, PRESENT));
+        map.put("absentCount", valueOf(totals, ABSENT));
+        map.put("justifiedCount", valueOf(totals, JUSTIFIED));
+        map.put("byCourse", courses);
+        map.put("byDay", days);
+        map.put("sessions", retained);
+        map.put("backfilled", true);
+        map.put("lastUpdatedAt", Timestamp.now());
+        return map;
+    }
+
+    /**
+     * Plus ancien jour conservé : RETENTION_DAYS jours, aujourd'hui compris (fenêtre de countSince)
+     */
+    static String oldestRetainedDay(Date now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(now);
+        calendar.add(Calendar.DAY_OF_MONTH, -(RETENTION_DAYS - 1));
+        return dayKey(calendar.getTime());
+    }
+
+    private static void count(Map<String, Long> bucket, String status) {
+        bucket.merge(status, 1L, Long::sum);
+        bucket.merge(TOTAL, 1L, Long::sum);
+    }
+
+    private static long valueOf(Map<String, Long> bucket, String status) {
+        Long value = bucket.get(status);
+        return value != null ? value : 0;
+    }
+
+    // =================== LECTURE ===================
+
+    /**
+     * Clé de jour (fuseau de l'appareil)
+     */
+    public static String dayKey(Date date) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(date != null ? date : new Date());
+    }
+
+    /**
+     * Somme des compteurs d'un statut sur les derniers jours (au plus RETENTION_DAYS), aujourd'hui compris
+     */
+    public long countSince(int days, String status) {
+        return countSince(days, status, new Date());
+    }
+
+    long countSince(int days, String status, Date now) {
+        if (byDay == null) return 0;
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(now);
+        long count = 0;
+        for (int i = 0; i < days; i++) {
+            count += bucketValue(byDay.get(dayKey(calendar.getTime())), status);
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        return count;
+    }
+
+    public long countForCourse(String courseId, String status) {
+        return byCourse != null ? bucketValue(byCourse.get(courseId), status) : 0;
+    }
+
+    private static long bucketValue(Map<String, Long> bucket, String status) {
+        if (bucket == null) return 0;
+        Long value = bucket.get(status);
+        return value != null ? value : 0;
+    }
+
+    // Getters
+    public String getStudentEmail() { return studentEmail; }
+    public long getTotalSessions() { return totalSessions; }
+    public long getPresentCount() { return presentCount; }
+    public long getAbsentCount() { return absentCount; }
+    public long getJustifiedCount() { return justifiedCount; }
+    public Map<String, Map<String, Long>> getByCourse() { return byCourse; }
+    public Map<String, Map<String, Long>> getByDay() { return byDay; }
+    public Map<String, Map<String, Object>> getSessions() { return sessions; }
+    public boolean isBackfilled() { return backfilled; }
+    public Timestamp getLastUpdatedAt() { return lastUpdatedAt; }
+
+    // Setters
+    public void setStudentEmail(String studentEmail) { this.studentEmail = studentEmail; }
+    public void setTotalSessions(long totalSessions) { this.totalSessions = totalSessions; }
+    public void setPresentCount(long presentCount) { this.presentCount = presentCount; }
+    public void setAbsentCount(long absentCount) { this.absentCount = absentCount; }
+    public void setJustifiedCount(long justifiedCount) { this.justifiedCount = justifiedCount; }
+    public void setByCourse(Map<String, Map<String, Long>> byCourse) { this.byCourse = byCourse; }
+    public void setByDay(Map<String, Map<String, Long>> byDay) { this.byDay = byDay; }
+    public void setSessions(Map<String, Map<String, Object>> sessions) { this.sessions = sessions; }
+    public void setBackfilled(boolean backfilled) { this.backfilled = backfilled; }
+    public void setLastUpdatedAt(Timestamp lastUpdatedAt) { this.lastUpdatedAt = lastUpdatedAt; }
+}
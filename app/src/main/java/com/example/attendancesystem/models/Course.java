@@ -3,6 +3,7 @@
 package com.example.attendancesystem.models;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -20,6 +21,7 @@ public class Course implements Serializable {
     private String teacherName;  // Name of the assigned teacher
     private boolean isActive;
     private Timestamp createdAt;
+    private Timestamp lastUpdatedAt; // Écrit à l'heure du serveur à chaque modification
 
     private ScheduleEntry courseScheduleEntry; // NEW: Reference to a specific schedule entry from the field
 
@@ -51,6 +53,7 @@ public class Course implements Serializable {
     public String getTeacherName() { return teacherName; }
     public boolean isActive() { return isActive; }
     public Timestamp getCreatedAt() { return createdAt; }
+    public Timestamp getLastUpdatedAt() { return lastUpdatedAt; }
     public ScheduleEntry getCourseScheduleEntry() { return courseScheduleEntry; } // NEW GETTER
     public Map<String, Object> getStatistics() { return statistics; }
 
@@ -65,6 +68,7 @@ public class Course implements Serializable {
     public void setTeacherName(String teacherName) { this.teacherName = teacherName; }
     public void setActive(boolean active) { isActive = active; }
     public void setCreatedAt(Timestamp createdAt) { this.createdAt = createdAt; }
+    public void setLastUpdatedAt(Timestamp lastUpdatedAt) { this.lastUpdatedAt = lastUpdatedAt; }
     public void setCourseScheduleEntry(ScheduleEntry courseScheduleEntry) { this.courseScheduleEntry = courseScheduleEntry; } // NEW SETTER
     public void setStatistics(Map<String, Object> statistics) { this.statistics = statistics; }
 
@@ -92,4 +96,30 @@ public class Course implements Serializable {
 
         return map;
     }
+
+    /**
+     * Lire un cours à partir d'un document (inverse de toMap(), sans réflexion)
+     */
+    public static Course fromSnapshot(DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        if (data == null) {
+            return null;
+        }
+        Course course = new Course();
+        String courseId = FirestoreValues.string(data, "courseId");
+        course.courseId = courseId != null ? courseId : document.getId();
+        course.courseName = FirestoreValues.string(data, "courseName");
+        course.department = FirestoreValues.string(data, "department");
+        course.field = FirestoreValues.string(data, "field");
+        course.targetYears = FirestoreValues.stringList(data, "targetYears");
+        course.teacherEmail = FirestoreValues.string(data, "teacherEmail");
+        course.teacherName = FirestoreValues.string(data, "teacherName");
+        course.isActive = FirestoreValues.bool(data, "isActive", true);
+        course.createdAt = FirestoreValues.timestamp(data, "createdAt");
+        course.lastUpdatedAt = FirestoreValues.timestamp(data, "lastUpdatedAt");
+        course.statistics = FirestoreValues.map(data, "statistics");
+        Map<String, Object> scheduleEntry = FirestoreValues.map(data, "courseScheduleEntry");
+        course.courseScheduleEntry = scheduleEntry != null ? ScheduleEntry.fromMap(scheduleEntry) : null;
+        return course;
+    }
 }
\ No newline at end of file
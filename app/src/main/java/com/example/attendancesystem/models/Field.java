@@ -1,6 +1,7 @@
 package com.example.attendancesystem.models;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
 import java.io.Serializable; // Import Serializable
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -80,6 +81,32 @@ public class Field implements Serializable { // Implement Serializable
         return map;
     }
 
+    /**
+     * Lire une filière à partir d'un document (inverse de toMap(), sans réflexion)
+     */
+    public static Field fromSnapshot(DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        if (data == null) {
+            return null;
+        }
+        Field field = new Field();
+        String fieldId = FirestoreValues.string(data, "fieldId");
+        field.fieldId = fieldId != null ? fieldId : document.getId();
+        field.fieldName = FirestoreValues.string(data, "fieldName");
+        field.department = FirestoreValues.string(data, "department");
+        field.description = FirestoreValues.string(data, "description");
+        field.createdAt = FirestoreValues.timestamp(data, "createdAt");
+        field.lastUpdatedAt = FirestoreValues.timestamp(data, "lastUpdatedAt");
+        List<Map<String, Object>> schedule = FirestoreValues.mapList(data, "weeklySchedule");
+        if (schedule != null) {
+            field.weeklySchedule = new ArrayList<>(schedule.size());
+            for (Map<String, Object> entry : schedule) {
+                field.weeklySchedule.add(ScheduleEntry.fromMap(entry));
+            }
+        }
+        return field;
+    }
+
     @Override
     public String toString() {
         return "Field{" +
@@ -0,0 +1,93 @@
+package com.example.attendancesystem.models;
+
+import com.google.firebase.Timestamp;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lecture typée des valeurs d'un document Firestore (DocumentSnapshot.getData()),
+ * utilisée par les fromSnapshot() des modèles à la place de toObject() (réflexion).
+ * Les clés lues sont celles écrites par les toMap() correspondants.
+ */
+final class FirestoreValues {
+
+    private FirestoreValues() {}
+
+    static String string(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    static boolean bool(Map<String, Object> data, String key, boolean defaultValue) {
+        Object value = data.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    static double number(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    static long integer(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    static Timestamp timestamp(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        return value instanceof Date ? new Timestamp((Date) value) : null;
+    }
+
+    static Date date(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toDate();
+        }
+        return value instanceof Date ? (Date) value : null;
+    }
+
+    /**
+     * Liste de chaînes (copie modifiable), ou null si le champ est absent
+     */
+    static List<String> stringList(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<?> source = (List<?>) value;
+        List<String> list = new ArrayList<>(source.size());
+        for (Object item : source) {
+            if (item instanceof String) {
+                list.add((String) item);
+            }
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> map(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> mapList(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (item instanceof Map) {
+                list.add((Map<String, Object>) item);
+            }
+        }
+        return list;
+    }
+}
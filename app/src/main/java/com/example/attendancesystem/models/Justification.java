@@ -1,6 +1,8 @@
 package com.example.attendancesystem.models;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -109,6 +111,36 @@ public class Justification {
         return map;
     }
 
+    /**
+     * Lire une justification à partir d'un document (inverse de toMap(), sans réflexion)
+     */
+    public static Justification fromSnapshot(DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        if (data == null) {
+            return null;
+        }
+        Justification justification = new Justification();
+        String justificationId = FirestoreValues.string(data, "justificationId");
+        justification.justificationId = justificationId != null ? justificationId : document.getId();
+        justification.studentEmail = FirestoreValues.string(data, "studentEmail");
+        justification.studentName = FirestoreValues.string(data, "studentName");
+        justification.studentId = FirestoreValues.string(data, "studentId");
+        justification.courseId = FirestoreValues.string(data, "courseId");
+        justification.courseName = FirestoreValues.string(data, "courseName");
+        justification.justificationDate = FirestoreValues.date(data, "justificationDate");
+        justification.reason = FirestoreValues.string(data, "reason");
+        justification.description = FirestoreValues.string(data, "description");
+        justification.status = FirestoreValues.string(data, "status");
+        justification.submittedAt = FirestoreValues.timestamp(data, "submittedAt");
+        justification.reviewedBy = FirestoreValues.string(data, "reviewedBy");
+        justification.reviewedAt = FirestoreValues.timestamp(data, "reviewedAt");
+        justification.reviewComments = FirestoreValues.string(data, "reviewComments");
+        justification.approvalReason = FirestoreValues.string(data, "approvalReason");
+        justification.createdAt = FirestoreValues.timestamp(data, "createdAt");
+        justification.lastUpdatedAt = FirestoreValues.timestamp(data, "lastUpdatedAt");
+        return justification;
+    }
+
     // Getters
     public String getJustificationId() { return justificationId; }
     public String getStudentEmail() { return studentEmail; }
@@ -74,6 +74,17 @@ public class ScheduleEntry implements Serializable {
         return map;
     }
 
+    /**
+     * Inverse de toMap() (entrée imbriquée dans un cours ou une filière)
+     */
+    static ScheduleEntry fromMap(Map<String, Object> data) {
+        return new ScheduleEntry(FirestoreValues.string(data, "dayOfWeek"),
+                FirestoreValues.string(data, "startTime"),
+                FirestoreValues.string(data, "endTime"),
+                FirestoreValues.string(data, "room"),
+                FirestoreValues.bool(data, "isRecurring", false));
+    }
+
     /**
      * IMPORTANT: Overrides equals() for proper object comparison.
      * This is crucial for methods like `List.indexOf()` and `Spinner.setSelection()`
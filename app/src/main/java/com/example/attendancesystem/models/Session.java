@@ -1,10 +1,16 @@
 package com.example.attendancesystem.models;
 
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Session {
     private String sessionId;
@@ -33,7 +39,22 @@ public class Session {
     private List<String> presentStudentEmails;
     private List<String> absentStudentEmails;
 
-    // Statistics
+    // Index des listes ci-dessus (non persisté), reconstruit à la demande : email -> position.
+    // Les listes restent la source de vérité pour Firestore (sans doublon, dans l'ordre des
+    // ajouts) ; les index donnent l'appartenance en O(1) et la position de l'email à retirer.
+    private transient Map<String, Integer> enrolledIndex;
+    private transient Map<String, Integer> presentIndex;
+    private transient Map<String, Integer> absentIndex;
+
+    // Modifications des listes depuis la dernière sauvegarde (null = suivi désactivé)
+    private transient ListChanges enrolledChanges;
+    private transient ListChanges presentChanges;
+    private transient ListChanges absentChanges;
+
+    // Clôture pas encore reportée dans les bilans d'assiduité des étudiants
+    private transient boolean rollupPending;
+
+    // Statistiques calculées à partir des listes (non enregistrées dans Firestore)
     private SessionStatistics statistics;
 
     private Timestamp createdAt;
@@ -115,6 +136,15 @@ public class Session {
             return map;
         }
 
+        static SessionStatistics fromMap(Map<String, Object> data) {
+            SessionStatistics statistics = new SessionStatistics();
+            statistics.totalEnrolled = (int) FirestoreValues.integer(data, "totalEnrolled");
+            statistics.totalPresent = (int) FirestoreValues.integer(data, "totalPresent");
+            statistics.totalAbsent = (int) FirestoreValues.integer(data, "totalAbsent");
+            statistics.attendanceRate = FirestoreValues.number(data, "attendanceRate");
+            return statistics;
+        }
+
         // Getters et setters
         public int getTotalEnrolled() { return totalEnrolled; }
         public void setTotalEnrolled(int totalEnrolled) { this.totalEnrolled = totalEnrolled; }
@@ -142,37 +172,40 @@ public class Session {
                 this.targetYears.contains(studentYear);
     }
 
+    // Tests d'appartenance (O(1) grâce aux index)
+    public boolean isStudentEnrolled(String studentEmail) { return enrolledIndex().containsKey(studentEmail); }
+    public boolean isStudentPresent(String studentEmail) { return presentIndex().containsKey(studentEmail); }
+    public boolean isStudentAbsent(String studentEmail) { return absentIndex().containsKey(studentEmail); }
+
     public void markStudentPresent(String studentEmail) {
-        if (enrolledStudentEmails.contains(studentEmail)) {
-            if (!presentStudentEmails.contains(studentEmail)) {
-                presentStudentEmails.add(studentEmail);
-            }
-            absentStudentEmails.remove(studentEmail);
+        if (isStudentEnrolled(studentEmail)) {
+            addPresent(studentEmail);
+            removeAbsent(studentEmail);
             updateStatistics();
         }
     }
 
     public void markStudentAbsent(String studentEmail) {
-        if (enrolledStudentEmails.contains(studentEmail)) {
-            if (!absentStudentEmails.contains(studentEmail)) {
-                absentStudentEmails.add(studentEmail);
-            }
-            presentStudentEmails.remove(studentEmail);
+        if (isStudentEnrolled(studentEmail)) {
+            addAbsent(studentEmail);
+            removePresent(studentEmail);
             updateStatistics();
         }
     }
 
     public void enrollStudent(String studentEmail) {
-        if (!enrolledStudentEmails.contains(studentEmail)) {
-            enrolledStudentEmails.add(studentEmail);
+        if (addIndexed(enrolledStudentEmails, enrolledIndex(), studentEmail)) {
+            if (enrolledChanges != null) enrolledChanges.added(studentEmail);
             updateStatistics();
         }
     }
 
     public void removeStudent(String studentEmail) {
-        enrolledStudentEmails.remove(studentEmail);
-        presentStudentEmails.remove(studentEmail);
-        absentStudentEmails.remove(studentEmail);
+        if (removeIndexed(enrolledStudentEmails, enrolledIndex(), studentEmail)) {
+            if (enrolledChanges != null) enrolledChanges.removed(studentEmail);
+        }
+        removePresent(studentEmail);
+        removeAbsent(studentEmail);
         updateStatistics();
     }
 
@@ -189,14 +222,17 @@ public class Session {
     }
 
     public void endSession() {
+        if (!isCompleted()) {
+            rollupPending = true;
+        }
         this.status = "completed";
-        // Marquer les étudiants non présents comme absents
+        // Marquer les étudiants non présents comme absents (un seul passage, O(n))
         for (String studentEmail : enrolledStudentEmails) {
-            if (!presentStudentEmails.contains(studentEmail)) {
-                markStudentAbsent(studentEmail);
+            if (!isStudentPresent(studentEmail)) {
+                addAbsent(studentEmail);
             }
         }
-        this.lastUpdatedAt = Timestamp.now();
+        updateStatistics();
     }
 
     public void cancelSession() {
@@ -204,6 +240,212 @@ public class Session {
         this.lastUpdatedAt = Timestamp.now();
     }
 
+    // =================== INDEX D'APPARTENANCE ===================
+
+    private Map<String, Integer> enrolledIndex() {
+        if (enrolledIndex == null) enrolledIndex = buildIndex(enrolledStudentEmails);
+        return enrolledIndex;
+    }
+
+    private Map<String, Integer> presentIndex() {
+        if (presentIndex == null) presentIndex = buildIndex(presentStudentEmails);
+        return presentIndex;
+    }
+
+    private Map<String, Integer> absentIndex() {
+        if (absentIndex == null) absentIndex = buildIndex(absentStudentEmails);
+        return absentIndex;
+    }
+
+    /**
+     * Index email -> position (les listes sont dédoublonnées à l'affectation)
+     */
+    private static Map<String, Integer> buildIndex(List<String> emails) {
+        Map<String, Integer> index = new HashMap<>();
+        if (emails == null) {
+            return index;
+        }
+        for (int i = 0; i < emails.size(); i++) {
+            index.putIfAbsent(emails.get(i), i);
+        }
+        return index;
+    }
+
+    /**
+     * Copie sans doublon, dans l'ordre d'origine (null reste null)
+     */
+    private static List<String> distinct(List<String> emails) {
+        return emails != null ? new ArrayList<>(new LinkedHashSet<>(emails)) : null;
+    }
+
+    private static boolean addIndexed(List<String> list, Map<String, Integer> index, String email) {
+        if (index.containsKey(email)) {
+            return false;
+        }
+        index.put(email, list.size());
+        list.add(email);
+        return true;
+    }
+
+    /**
+     * Retrait à la position indexée, sans recherche dans la liste ; l'ordre est conservé
+     * et les positions des emails suivants sont décalées
+     */
+    private static boolean removeIndexed(List<String> list, Map<String, Integer> index, String email) {
+        Integer position = index.remove(email);
+        if (position == null) {
+            return false;
+        }
+        list.remove((int) position);
+        for (int i = position; i < list.size(); i++) {
+            index.put(list.get(i), i);
+        }
+        return true;
+    }
+
+    private void addPresent(String studentEmail) {
+        if (addIndexed(presentStudentEmails, presentIndex(), studentEmail)) {
+            if (presentChanges != null) presentChanges.added(studentEmail);
+        }
+    }
+
+    private void removePresent(String studentEmail) {
+        if (removeIndexed(presentStudentEmails, presentIndex(), studentEmail)) {
+            if (presentChanges != null) presentChanges.removed(studentEmail);
+        }
+    }
+
+    private void addAbsent(String studentEmail) {
+        if (addIndexed(absentStudentEmails, absentIndex(), studentEmail)) {
+            if (absentChanges != null) absentChanges.added(studentEmail);
+        }
+    }
+
+    private void removeAbsent(String studentEmail) {
+        if (removeIndexed(absentStudentEmails, absentIndex(), studentEmail)) {
+            if (absentChanges != null) absentChanges.removed(studentEmail);
+        }
+    }
+
+    // =================== ÉCRITURES DIFFÉRENTIELLES ===================
+
+    /**
+     * Ajouts/retraits d'une liste d'emails depuis la dernière sauvegarde.
+     * Un ajout suivi d'un retrait (ou l'inverse) s'annule.
+     */
+    private static class ListChanges {
+        private final Map<String, Boolean> changes = new LinkedHashMap<>(); // true = ajout, false = retrait
+        private boolean replaced;
+
+        void added(String email) {
+            if (Boolean.FALSE.equals(changes.get(email))) changes.remove(email);
+            else changes.put(email, true);
+        }
+
+        void removed(String email) {
+            if (Boolean.TRUE.equals(changes.get(email))) changes.remove(email);
+            else changes.put(email, false);
+        }
+
+        List<String> collect(boolean added) {
+            List<String> emails = new ArrayList<>();
+            for (Map.Entry<String, Boolean> entry : changes.entrySet()) {
+                if (entry.getValue() == added) emails.add(entry.getKey());
+            }
+            return emails;
+        }
+    }
+
+    /**
+     * Démarrer (ou redémarrer) le suivi des modifications à partir de l'état actuel,
+     * considéré comme celui enregistré dans Firestore.
+     */
+    public void beginChangeTracking() {
+        enrolledChanges = new ListChanges();
+        presentChanges = new ListChanges();
+        absentChanges = new ListChanges();
+    }
+
+    /**
+     * Étudiants dont le statut doit être reporté dans leur bilan d'assiduité lors de la prochaine
+     * sauvegarde : tous les inscrits à la clôture, puis ceux dont la présence a été corrigée
+     * depuis la dernière sauvegarde d'une séance déjà clôturée (vide sinon).
+     * Le drapeau de clôture est consommé : l'écriture journalisée est rejouée jusqu'à son succès.
+     */
+    public List<String> takeRollupStudents() {
+        if (rollupPending) {
+            rollupPending = false;
+            return new ArrayList<>(enrolledStudentEmails);
+        }
+        if (!isCompleted() || presentChanges == null) {
+            return new ArrayList<>();
+        }
+        if (presentChanges.replaced || absentChanges.replaced || enrolledChanges.replaced) {
+            // Listes remplacées : statut de chaque inscrit (sans effet sur les bilans déjà à jour)
+            return new ArrayList<>(enrolledStudentEmails);
+        }
+        Set<String> corrected = new LinkedHashSet<>(presentChanges.changes.keySet());
+        corrected.addAll(absentChanges.changes.keySet());
+        List<String> students = new ArrayList<>();
+        for (String studentEmail : corrected) {
+            if (isStudentEnrolled(studentEmail)) {
+                students.add(studentEmail);
+            }
+        }
+        return students;
+    }
+
+    /**
+     * Une écriture différentielle est possible si la session est suivie depuis sa dernière sauvegarde.
+     */
+    public boolean canWriteDelta() {
+        return enrolledChanges != null && sessionId != null;
+    }
+
+    /**
+     * Map de mise à jour ne contenant que les différences des listes d'étudiants
+     * (arrayUnion/arrayRemove), en plus des champs scalaires (voir toUpdateMap()).
+     */
+    public Map<String, Object> toDeltaMap() {
+        Map<String, Object> map = toUpdateMap();
+        map.remove("enrolledStudentEmails");
+        map.remove("presentStudentEmails");
+        map.remove("absentStudentEmails");
+
+        putListDelta(map, "enrolledStudentEmails", enrolledStudentEmails, enrolledChanges);
+        putListDelta(map, "presentStudentEmails", presentStudentEmails, presentChanges);
+        putListDelta(map, "absentStudentEmails", absentStudentEmails, absentChanges);
+        return map;
+    }
+
+    private static void putListDelta(Map<String, Object> map, String key, List<String> list, ListChanges listChanges) {
+        if (listChanges.replaced) {
+            map.put(key, list);
+            return;
+        }
+        List<String> added = listChanges.collect(true);
+        List<String> removed = listChanges.collect(false);
+        // Firestore n'accepte pas arrayUnion et arrayRemove sur le même champ dans une seule mise à jour
+        if (!added.isEmpty() && !removed.isEmpty()) {
+            map.put(key, list);
+        } else if (!added.isEmpty()) {
+            map.put(key, FieldValue.arrayUnion(added.toArray()));
+        } else if (!removed.isEmpty()) {
+            map.put(key, FieldValue.arrayRemove(removed.toArray()));
+        }
+    }
+
+    /**
+     * Map de mise à jour complète (update()) : toMap() et suppression des statistiques
+     * enregistrées par les versions précédentes, qui ne suivaient plus les listes après
+     * une écriture différentielle.
+     */
+    public Map<String, Object> toUpdateMap() {
+        Map<String, Object> map = toMap();
+        map.put("statistics", FieldValue.delete());
+        return map;
+    }
+
     // Méthode pour convertir en Map pour Firebase
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<>();
@@ -226,14 +468,64 @@ public class Session {
         map.put("enrolledStudentEmails", enrolledStudentEmails);
         map.put("presentStudentEmails", presentStudentEmails);
         map.put("absentStudentEmails", absentStudentEmails);
-        if (statistics != null) {
-            map.put("statistics", statistics.toMap());
-        }
+        // Pas de statistiques : des compteurs enregistrés divergeraient des listes écrites par
+        // arrayUnion/arrayRemove (idempotents, contrairement à increment) ; elles sont
+        // recalculées à la lecture
         map.put("createdAt", createdAt);
         map.put("lastUpdatedAt", lastUpdatedAt);
         return map;
     }
 
+    /**
+     * Lire une session à partir d'un document (inverse de toMap(), sans réflexion).
+     * Les champs sont affectés directement, sans mettre à jour lastUpdatedAt comme le feraient
+     * les setters. Les statistiques sont recalculées à partir des listes ; la map enregistrée
+     * par les versions précédentes ne sert que si le document n'a aucune liste d'étudiants.
+     */
+    public static Session fromSnapshot(DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        if (data == null) {
+            return null;
+        }
+        Session session = new Session();
+        session.sessionId = document.getId();
+        session.courseId = FirestoreValues.string(data, "courseId");
+        session.courseName = FirestoreValues.string(data, "courseName");
+        session.teacherEmail = FirestoreValues.string(data, "teacherEmail");
+        session.teacherName = FirestoreValues.string(data, "teacherName");
+        session.startTime = FirestoreValues.timestamp(data, "startTime");
+        session.endTime = FirestoreValues.timestamp(data, "endTime");
+        session.status = FirestoreValues.string(data, "status");
+        session.room = FirestoreValues.string(data, "room");
+        session.isManuallyManaged = FirestoreValues.bool(data, "isManuallyManaged", false);
+        session.department = FirestoreValues.string(data, "department");
+        session.field = FirestoreValues.string(data, "field");
+        session.dayOfWeek = FirestoreValues.string(data, "dayOfWeek");
+        session.timeSlot = FirestoreValues.string(data, "timeSlot");
+        session.isRecurring = FirestoreValues.bool(data, "isRecurring", true);
+
+        List<String> targetYears = FirestoreValues.stringList(data, "targetYears");
+        if (targetYears != null) session.targetYears = targetYears;
+        // Listes dédoublonnées (écritures concurrentes ou anciennes versions de l'application)
+        List<String> enrolled = distinct(FirestoreValues.stringList(data, "enrolledStudentEmails"));
+        if (enrolled != null) session.enrolledStudentEmails = enrolled;
+        List<String> present = distinct(FirestoreValues.stringList(data, "presentStudentEmails"));
+        if (present != null) session.presentStudentEmails = present;
+        List<String> absent = distinct(FirestoreValues.stringList(data, "absentStudentEmails"));
+        if (absent != null) session.absentStudentEmails = absent;
+
+        Map<String, Object> statistics = FirestoreValues.map(data, "statistics");
+        if (statistics != null && enrolled == null && present == null && absent == null) {
+            session.statistics = SessionStatistics.fromMap(statistics);
+        } else {
+            session.statistics.recalculate(session.enrolledStudentEmails,
+                    session.presentStudentEmails, session.absentStudentEmails);
+        }
+        session.createdAt = FirestoreValues.timestamp(data, "createdAt");
+        session.lastUpdatedAt = FirestoreValues.timestamp(data, "lastUpdatedAt");
+        return session;
+    }
+
     // Getters - existing ones
     public String getSessionId() { return sessionId; }
     public String getCourseId() { return courseId; }
@@ -272,15 +564,21 @@ public class Session {
     public void setRoom(String room) { this.room = room; }
     public void setManuallyManaged(boolean manuallyManaged) { this.isManuallyManaged = manuallyManaged; }
     public void setEnrolledStudentEmails(List<String> enrolledStudentEmails) {
-        this.enrolledStudentEmails = enrolledStudentEmails;
+        this.enrolledStudentEmails = distinct(enrolledStudentEmails);
+        this.enrolledIndex = null;
+        if (enrolledChanges != null) enrolledChanges.replaced = true;
         updateStatistics();
     }
     public void setPresentStudentEmails(List<String> presentStudentEmails) {
-        this.presentStudentEmails = presentStudentEmails;
+        this.presentStudentEmails = distinct(presentStudentEmails);
+        this.presentIndex = null;
+        if (presentChanges != null) presentChanges.replaced = true;
         updateStatistics();
     }
     public void setAbsentStudentEmails(List<String> absentStudentEmails) {
-        this.absentStudentEmails = absentStudentEmails;
+        this.absentStudentEmails = distinct(absentStudentEmails);
+        this.absentIndex = null;
+        if (absentChanges != null) absentChanges.replaced = true;
         updateStatistics();
     }
     public void setStatistics(SessionStatistics statistics) { this.statistics = statistics; }
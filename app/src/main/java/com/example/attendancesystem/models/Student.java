@@ -4,6 +4,7 @@ import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.PropertyName;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Student {
@@ -13,6 +14,12 @@ public class Student {
     private String fullName;
     private String studentId;
     private String profileImageUrl;
+    private String profileThumbnailUrl; // Miniature pour les listes et avatars
+    private String profileImageFileId; // Fichiers Drive de la photo et de la miniature
+    private String profileThumbnailFileId;
+    private String profileImageRevision; // Change à chaque nouvelle photo (clé de cache des avatars)
+    private String profileImageHash; // SHA-256 de l'image source (évite de renvoyer la même photo)
+    private List<Double> faceEmbedding; // Empreinte faciale enregistrée (reconnaissance en séance)
     private Timestamp createdAt;
     @PropertyName("isActive")
     private boolean isActive;
@@ -72,6 +79,22 @@ public class Student {
         map.put("fullName", fullName);
         map.put("studentId", studentId);
         map.put("profileImageUrl", profileImageUrl);
+        if (profileThumbnailUrl != null) {
+            map.put("profileThumbnailUrl", profileThumbnailUrl);
+        }
+        if (profileImageFileId != null) {
+            map.put("profileImageFileId", profileImageFileId);
+            map.put("profileThumbnailFileId", profileThumbnailFileId);
+        }
+        if (profileImageRevision != null) {
+            map.put("profileImageRevision", profileImageRevision);
+        }
+        if (profileImageHash != null) {
+            map.put("profileImageHash", profileImageHash);
+        }
+        if (faceEmbedding != null) {
+            map.put("faceEmbedding", faceEmbedding);
+        }
         map.put("createdAt", createdAt);
         map.put("isActive", isActive);
         map.put("phoneNumber", phoneNumber);
@@ -96,6 +119,12 @@ public class Student {
     public String getFullName() { return fullName; }
     public String getStudentId() { return studentId; }
     public String getProfileImageUrl() { return profileImageUrl; }
+    public String getProfileThumbnailUrl() { return profileThumbnailUrl; }
+    public String getProfileImageFileId() { return profileImageFileId; }
+    public String getProfileThumbnailFileId() { return profileThumbnailFileId; }
+    public String getProfileImageRevision() { return profileImageRevision; }
+    public String getProfileImageHash() { return profileImageHash; }
+    public List<Double> getFaceEmbedding() { return faceEmbedding; }
     public Timestamp getCreatedAt() { return createdAt; }
     public boolean isActive() { return isActive; }
     public String getPhoneNumber() { return phoneNumber; }
@@ -110,6 +139,12 @@ public class Student {
     public void setFullName(String fullName) { this.fullName = fullName; }
     public void setStudentId(String studentId) { this.studentId = studentId; }
     public void setProfileImageUrl(String profileImageUrl) { this.profileImageUrl = profileImageUrl; }
+    public void setProfileThumbnailUrl(String profileThumbnailUrl) { this.profileThumbnailUrl = profileThumbnailUrl; }
+    public void setProfileImageFileId(String profileImageFileId) { this.profileImageFileId = profileImageFileId; }
+    public void setProfileThumbnailFileId(String profileThumbnailFileId) { this.profileThumbnailFileId = profileThumbnailFileId; }
+    public void setProfileImageRevision(String profileImageRevision) { this.profileImageRevision = profileImageRevision; }
+    public void setProfileImageHash(String profileImageHash) { this.profileImageHash = profileImageHash; }
+    public void setFaceEmbedding(List<Double> faceEmbedding) { this.faceEmbedding = faceEmbedding; }
     public void setCreatedAt(Timestamp createdAt) { this.createdAt = createdAt; }
     public void setActive(boolean active) { this.isActive = active; }
     public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
@@ -13,6 +13,11 @@ public class Teacher {
     private String fullName;
     private String employeeId;
     private String profileImageUrl;
+    private String profileThumbnailUrl; // Miniature pour les listes et avatars
+    private String profileImageFileId; // Fichiers Drive de la photo et de la miniature
+    private String profileThumbnailFileId;
+    private String profileImageRevision; // Change à chaque nouvelle photo (clé de cache des avatars)
+    private String profileImageHash; // SHA-256 de l'image source (évite de renvoyer la même photo)
     private Timestamp createdAt;
     @PropertyName("isActive")
     private boolean isActive;
@@ -69,6 +74,19 @@ public class Teacher {
         map.put("fullName", fullName);
         map.put("employeeId", employeeId);
         map.put("profileImageUrl", profileImageUrl);
+        if (profileThumbnailUrl != null) {
+            map.put("profileThumbnailUrl", profileThumbnailUrl);
+        }
+        if (profileImageFileId != null) {
+            map.put("profileImageFileId", profileImageFileId);
+            map.put("profileThumbnailFileId", profileThumbnailFileId);
+        }
+        if (profileImageRevision != null) {
+            map.put("profileImageRevision", profileImageRevision);
+        }
+        if (profileImageHash != null) {
+            map.put("profileImageHash", profileImageHash);
+        }
         map.put("createdAt", createdAt);
         map.put("isActive", isActive);
         map.put("phoneNumber", phoneNumber);
@@ -88,6 +106,11 @@ public class Teacher {
     public String getFullName() { return fullName; }
     public String getEmployeeId() { return employeeId; }
     public String getProfileImageUrl() { return profileImageUrl; }
+    public String getProfileThumbnailUrl() { return profileThumbnailUrl; }
+    public String getProfileImageFileId() { return profileImageFileId; }
+    public String getProfileThumbnailFileId() { return profileThumbnailFileId; }
+    public String getProfileImageRevision() { return profileImageRevision; }
+    public String getProfileImageHash() { return profileImageHash; }
     public Timestamp getCreatedAt() { return createdAt; }
     public boolean isActive() { return isActive; }
     public String getPhoneNumber() { return phoneNumber; }
@@ -103,6 +126,11 @@ public class Teacher {
     public void setFullName(String fullName) { this.fullName = fullName; }
     public void setEmployeeId(String employeeId) { this.employeeId = employeeId; }
     public void setProfileImageUrl(String profileImageUrl) { this.profileImageUrl = profileImageUrl; }
+    public void setProfileThumbnailUrl(String profileThumbnailUrl) { this.profileThumbnailUrl = profileThumbnailUrl; }
+    public void setProfileImageFileId(String profileImageFileId) { this.profileImageFileId = profileImageFileId; }
+    public void setProfileThumbnailFileId(String profileThumbnailFileId) { this.profileThumbnailFileId = profileThumbnailFileId; }
+    public void setProfileImageRevision(String profileImageRevision) { this.profileImageRevision = profileImageRevision; }
+    public void setProfileImageHash(String profileImageHash) { this.profileImageHash = profileImageHash; }
     public void setCreatedAt(Timestamp createdAt) { this.createdAt = createdAt; }
     public void setActive(boolean active) { this.isActive = active; }
     public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
@@ -0,0 +1,126 @@
+package com.example.attendancesystem.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.attendancesystem.models.Attendance;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File d'écriture différée des présences.
+ * Les identifiants des documents sont générés côté client, puis les pointages
+ * sont regroupés dans des WriteBatch (500 opérations max) envoyés dès que le lot
+ * est plein ou après un court délai.
+ */
+public class AttendanceBatchWriter {
+    private static final String TAG = "AttendanceBatchWriter";
+
+    // Limite Firestore du nombre d'opérations par WriteBatch
+    public static final int MAX_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_DELAY_MS = 1000;
+
+    private final FirebaseFirestore db;
+    private final String collection;
+    private final int maxBatchSize;
+    private final long flushDelayMs;
+    private final Handler handler;
+    private final Runnable flushRunnable = this::flush;
+
+    private final List<PendingWrite> pending = new ArrayList<>();
+
+    private static class PendingWrite {
+        final DocumentReference reference;
+        final Attendance attendance;
+        final FirebaseManager.DataCallback<String> callback;
+
+        PendingWrite(DocumentReference reference, Attendance attendance, FirebaseManager.DataCallback<String> callback) {
+            this.reference = reference;
+            this.attendance = attendance;
+            this.callback = callback;
+        }
+    }
+
+    public AttendanceBatchWriter(FirebaseFirestore db, String collection) {
+        this(db, collection, MAX_BATCH_SIZE, DEFAULT_FLUSH_DELAY_MS);
+    }
+
+    public AttendanceBatchWriter(FirebaseFirestore db, String collection, int maxBatchSize, long flushDelayMs) {
+        this.db = db;
+        this.collection = collection;
+        this.maxBatchSize = Math.min(Math.max(maxBatchSize, 1), MAX_BATCH_SIZE);
+        this.flushDelayMs = flushDelayMs;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Ajouter une présence à la file.
+     * L'identifiant est attribué immédiatement et retourné ; le callback est appelé
+     * quand le lot contenant cette présence est validé (ou a échoué).
+     */
+    public synchronized String enqueue(Attendance attendance, FirebaseManager.DataCallback<String> callback) {
+        DocumentReference reference = attendance.getAttendanceId() != null
+                ? db.collection(collection).document(attendance.getAttendanceId())
+                : db.collection(collection).document();
+        attendance.setAttendanceId(reference.getId());
+
+        pending.add(new PendingWrite(reference, attendance, callback));
+
+        if (pending.size() >= maxBatchSize) {
+            flush();
+        } else if (pending.size() == 1) {
+            handler.postDelayed(flushRunnable, flushDelayMs);
+        }
+        return reference.getId();
+    }
+
+    /**
+     * Envoyer immédiatement les présences en attente
+     */
+    public synchronized void flush() {
+        handler.removeCallbacks(flushRunnable);
+        while (!pending.isEmpty()) {
+            int size = Math.min(pending.size(), maxBatchSize);
+            List<PendingWrite> chunk = new ArrayList<>(pending.subList(0, size));
+            pending.subList(0, size).clear();
+            commit(chunk);
+        }
+    }
+
+    /**
+     * Nombre de présences en attente d'envoi
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void commit(List<PendingWrite> chunk) {
+        WriteBatch batch = db.batch();
+        for (PendingWrite write : chunk) {
+            batch.set(write.reference, write.attendance.toMap());
+        }
+
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Lot de " + chunk.size() + " présences enregistré");
+                    for (PendingWrite write : chunk) {
+                        if (write.callback != null) {
+                            write.callback.onSuccess(write.reference.getId());
+                        }
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Erreur enregistrement du lot de présences", e);
+                    for (PendingWrite write : chunk) {
+                        if (write.callback != null) {
+                            write.callback.onFailure(e.getMessage());
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.attendancesystem.services;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lectures servies par le cache local persistant de Firestore (SQLite sur l'appareil).
+ * Avant de lire une collection synchronisée (cours, filières), seules les modifications
+ * depuis le dernier lastUpdatedAt présent en cache sont demandées au serveur ; un comptage
+ * côté serveur détecte les suppressions et déclenche alors un rechargement complet.
+ * Hors connexion, la synchronisation échoue silencieusement et le cache est lu tel quel.
+ */
+class CollectionSync {
+    private static final String TAG = "CollectionSync";
+    private static final String UPDATED_FIELD = "lastUpdatedAt";
+
+    // En deçà de ce délai depuis la dernière synchronisation, lecture directe du cache
+    private static final long SYNC_INTERVAL_MS = 5 * 60 * 1000;
+
+    private final FirebaseFirestore db;
+    private final Map<String, Long> lastSyncTimes = new HashMap<>();
+    private final Map<String, Task<Void>> pendingSyncs = new HashMap<>();
+    private final Map<String, Long> documentReadTimes = new HashMap<>();
+
+    CollectionSync(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Lire une requête sur une collection synchronisée, depuis le cache local
+     */
+    synchronized Task<QuerySnapshot> read(String collection, Query query) {
+        return sync(collection).continueWithTask(ignored -> query.get(Source.CACHE));
+    }
+
+    /**
+     * Lire un document : cache local s'il a été lu récemment, sinon serveur (avec repli sur le cache)
+     */
+    synchronized Task<DocumentSnapshot> readDocument(DocumentReference reference) {
+        String path = reference.getPath();
+        Long readTime = documentReadTimes.get(path);
+        if (readTime != null && System.currentTimeMillis() - readTime < SYNC_INTERVAL_MS) {
+            return reference.get(Source.CACHE).continueWithTask(task ->
+                    task.isSuccessful() ? task : fetchDocument(reference));
+        }
+        return fetchDocument(reference);
+    }
+
+    private Task<DocumentSnapshot> fetchDocument(DocumentReference reference) {
+        return reference.get().addOnSuccessListener(snapshot -> {
+            if (!snapshot.getMetadata().isFromCache()) {
+                synchronized (this) {
+                    documentReadTimes.put(reference.getPath(), System.currentTimeMillis());
+                }
+            }
+        });
+    }
+
+    private Task<Void> sync(String collection) {
+        Long lastSync = lastSyncTimes.get(collection);
+        if (lastSync != null && System.currentTimeMillis() - lastSync < SYNC_INTERVAL_MS) {
+            return Tasks.forResult(null);
+        }
+        Task<Void> pending = pendingSyncs.get(collection);
+        if (pending != null) {
+            return pending;
+        }
+
+        long start = System.currentTimeMillis();
+        CollectionReference reference = db.collection(collection);
+        Task<Void> syncTask = latestCachedUpdate(reference)
+                .continueWithTask(task -> {
+                    Timestamp watermark = task.isSuccessful() ? task.getResult() : null;
+                    if (watermark == null) {
+                        // Rien en cache : chargement complet
+                        return reference.get(Source.SERVER).continueWith(full -> {
+                            Log.d(TAG, collection + ": chargement complet, "
+                                    + full.getResult().size() + " documents");
+                            return null;
+                        });
+                    }
+                    return reference.whereGreaterThan(UPDATED_FIELD, watermark).get(Source.SERVER)
+                            .continueWithTask(delta -> {
+                                Log.d(TAG, collection + ": " + delta.getResult().size() + " documents modifiés");
+                                return reconcileDeletions(reference, collection);
+                            });
+                })
+                .continueWith(task -> {
+                    synchronized (this) {
+                        pendingSyncs.remove(collection);
+                        if (task.isSuccessful()) {
+                            lastSyncTimes.put(collection, System.currentTimeMillis());
+                            Log.d(TAG, collection + " synchronisé en " + (System.currentTimeMillis() - start) + " ms");
+                        } else {
+                            Log.w(TAG, collection + ": synchronisation impossible, lecture du cache", task.getException());
+                        }
+                    }
+                    return null;
+                });
+        pendingSyncs.put(collection, syncTask);
+        return syncTask;
+    }
+
+    /**
+     * Plus grand lastUpdatedAt présent dans le cache (null si la collection n'y est pas)
+     */
+    private static Task<Timestamp> latestCachedUpdate(CollectionReference reference) {
+        return reference.orderBy(UPDATED_FIELD, Query.Direction.DESCENDING).limit(1).get(Source.CACHE)
+                .continueWith(task -> {
+                    if (!task.isSuccessful() || task.getResult().isEmpty()) {
+                        return null;
+                    }
+                    return task.getResult().getDocuments().get(0).getTimestamp(UPDATED_FIELD);
+                });
+    }
+
+    /**
+     * Les requêtes par lastUpdatedAt ne voient pas les suppressions : comparer le nombre
+     * de documents côté serveur et en cache, et tout recharger en cas d'écart
+     */
+    private static Task<Void> reconcileDeletions(CollectionReference reference, String collection) {
+        Task<Long> serverCount = reference.count().get(AggregateSource.SERVER)
+                .continueWith(task -> task.getResult().getCount());
+        Task<Integer> cachedCount = reference.get(Source.CACHE)
+                .continueWith(task -> task.getResult().size());
+        return Tasks.whenAll(serverCount, cachedCount).continueWithTask(task -> {
+            if (!serverCount.isSuccessful() || !cachedCount.isSuccessful()
+                    || serverCount.getResult() == cachedCount.getResult().longValue()) {
+                return serverCount.isSuccessful() ? Tasks.forResult(null)
+                        : Tasks.forException(serverCount.getException());
+            }
+            Log.d(TAG, collection + ": " + cachedCount.getResult() + " en cache, "
+                    + serverCount.getResult() + " sur le serveur, rechargement complet");
+            return reference.get(Source.SERVER).continueWith(full -> null);
+        });
+    }
+}
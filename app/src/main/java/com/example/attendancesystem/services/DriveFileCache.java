@@ -0,0 +1,76 @@
+package com.example.attendancesystem.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Identifiants Drive mémorisés localement, par compte Google :
+ * dossier des photos et fichiers de profil (photo et miniature) de chaque utilisateur.
+ * Évite une requête files().list() avant chaque suppression ou remplacement.
+ */
+class DriveFileCache {
+    private static final String PREFS_NAME = "DriveFileCache";
+    private static final String KEY_FOLDER = "folder";
+    private static final String KEY_PHOTO = "photo";
+    private static final String KEY_THUMBNAIL = "thumb";
+    private static final String KEY_REVISION = "revision";
+    private static final String KEY_HASH = "hash";
+
+    private final SharedPreferences prefs;
+
+    DriveFileCache(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    String getFolderId(String account) {
+        return prefs.getString(key(account, KEY_FOLDER), null);
+    }
+
+    void putFolderId(String account, String folderId) {
+        prefs.edit().putString(key(account, KEY_FOLDER), folderId).apply();
+    }
+
+    void removeFolderId(String account) {
+        prefs.edit().remove(key(account, KEY_FOLDER)).apply();
+    }
+
+    /**
+     * Fichiers de profil connus pour un utilisateur, ou null
+     */
+    GoogleDriveService.ProfileFiles getProfileFiles(String account, String profileName) {
+        String photoId = prefs.getString(key(account, KEY_PHOTO, profileName), null);
+        if (photoId == null) {
+            return null;
+        }
+        return new GoogleDriveService.ProfileFiles(photoId,
+                prefs.getString(key(account, KEY_THUMBNAIL, profileName), null),
+                prefs.getString(key(account, KEY_REVISION, profileName), null),
+                prefs.getString(key(account, KEY_HASH, profileName), null));
+    }
+
+    void putProfileFiles(String account, String profileName, GoogleDriveService.ProfileFiles files) {
+        prefs.edit()
+                .putString(key(account, KEY_PHOTO, profileName), files.getPhotoFileId())
+                .putString(key(account, KEY_THUMBNAIL, profileName), files.getThumbnailFileId())
+                .putString(key(account, KEY_REVISION, profileName), files.getRevision())
+                .putString(key(account, KEY_HASH, profileName), files.getContentHash())
+                .apply();
+    }
+
+    void removeProfileFiles(String account, String profileName) {
+        prefs.edit()
+                .remove(key(account, KEY_PHOTO, profileName))
+                .remove(key(account, KEY_THUMBNAIL, profileName))
+                .remove(key(account, KEY_REVISION, profileName))
+                .remove(key(account, KEY_HASH, profileName))
+                .apply();
+    }
+
+    private static String key(String account, String type) {
+        return account + "|" + type;
+    }
+
+    private static String key(String account, String type, String profileName) {
+        return account + "|" + type + "|" + profileName;
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.attendancesystem.services;
+
+import android.util.Log;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File d'exécution des appels Google Drive :
+ * - nombre de workers borné, deux files de priorité (interactif avant import en masse) ;
+ * - une seule tâche par clé (ex. photo d'un utilisateur) : une nouvelle tâche remplace
+ *   celle en attente et annule celle en cours, puis s'exécute après elle ;
+ * - limite de débit Drive (429, 403 rateLimitExceeded) : la tâche est replanifiée avec
+ *   un backoff exponentiel et les suivantes attendent la fin de la pause ;
+ * - métriques : profondeur des files, tâches terminées/échouées/annulées, débit.
+ */
+public class DriveTaskScheduler {
+    private static final String TAG = "DriveTaskScheduler";
+
+    private static final int WORKER_COUNT = 3;
+    private static final int MAX_RATE_LIMIT_RETRIES = 5;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 64000;
+
+    public enum Priority {
+        INTERACTIVE,  // Action de l'utilisateur à l'écran
+        BACKGROUND    // Import en masse, synchronisation
+    }
+
+    /**
+     * Travail exécuté sur un worker
+     */
+    public interface DriveTask {
+        void run(TaskHandle handle) throws Exception;
+
+        /**
+         * Tâche annulée avant la fin ; replaced indique qu'une tâche plus récente
+         * de même clé la remplace (et rendra compte du résultat à sa place)
+         */
+        default void onCancelled(boolean replaced) {}
+
+        /** Échec définitif (après les réessais sur limite de débit) */
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Accès de la tâche en cours à son état d'annulation et aux métriques
+     */
+    public static class TaskHandle {
+        private volatile boolean cancelled;
+        private final AtomicLong bytes = new AtomicLong();
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * À appeler entre deux étapes (et dans les listeners de progression)
+         */
+        public void throwIfCancelled() throws InterruptedIOException {
+            if (cancelled) {
+                throw new InterruptedIOException("Tâche Drive annulée");
+            }
+        }
+
+        public void addBytesTransferred(long count) {
+            bytes.addAndGet(count);
+        }
+    }
+
+    /**
+     * Photographie des compteurs
+     */
+    public static class Metrics {
+        private final int queuedInteractive;
+        private final int queuedBackground;
+        private final int running;
+        private final long completed;
+        private final long failed;
+        private final long cancelled;
+        private final long rateLimited;
+        private final long bytesTransferred;
+        private final long busyTimeMs;
+
+        Metrics(int queuedInteractive, int queuedBackground, int running, long completed, long failed,
+                long cancelled, long rateLimited, long bytesTransferred, long busyTimeMs) {
+            this.queuedInteractive = queuedInteractive;
+            this.queuedBackground = queuedBackground;
+            this.running = running;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.rateLimited = rateLimited;
+            this.bytesTransferred = bytesTransferred;
+            this.busyTimeMs = busyTimeMs;
+        }
+
+        public int getQueuedInteractive() { return queuedInteractive; }
+        public int getQueuedBackground() { return queuedBackground; }
+        public int getQueueDepth() { return queuedInteractive + queuedBackground; }
+        public int getRunning() { return running; }
+        public long getCompleted() { return completed; }
+        public long getFailed() { return failed; }
+        public long getCancelled() { return cancelled; }
+        public long getRateLimited() { return rateLimited; }
+        public long getBytesTransferred() { return bytesTransferred; }
+
+        /** Octets par seconde de travail effectif des workers */
+        public double getBytesPerSecond() {
+            return busyTimeMs > 0 ? bytesTransferred * 1000.0 / busyTimeMs : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "file=" + queuedInteractive + "/" + queuedBackground + " en cours=" + running
+                    + " ok=" + completed + " échecs=" + failed + " annulées=" + cancelled
+                    + " limitées=" + rateLimited + " débit=" + (long) getBytesPerSecond() + " o/s";
+        }
+    }
+
+    private class Entry implements Runnable, Comparable<Entry> {
+        final String key;
+        final Priority priority;
+        final DriveTask task;
+        final long sequence;
+        final TaskHandle handle = new TaskHandle();
+        int rateLimitRetries;
+        volatile boolean replaced; // Annulée par une tâche de même clé
+        Entry successor; // Tâche de même clé à lancer après celle-ci
+
+        Entry(String key, Priority priority, DriveTask task) {
+            this.key = key;
+            this.priority = priority;
+            this.task = task;
+            this.sequence = sequenceCounter.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (DriveTaskScheduler.this) {
+                queuedCounts[priority.ordinal()]--;
+                if (handle.cancelled) {
+                    cancelled(this);
+                    finish(this);
+                    return;
+                }
+                running++;
+            }
+            waitForRateLimitPause();
+
+            long start = System.currentTimeMillis();
+            boolean retry = false;
+            try {
+                handle.throwIfCancelled();
+                task.run(handle);
+                completedCount.incrementAndGet();
+                consecutiveRateLimits.set(0);
+            } catch (Exception e) {
+                if (handle.cancelled) {
+                    cancelled(this);
+                } else if (isRateLimitError(e) && rateLimitRetries < MAX_RATE_LIMIT_RETRIES) {
+                    retry = true;
+                } else {
+                    failedCount.incrementAndGet();
+                    task.onFailure(e);
+                }
+            } finally {
+                busyTimeMs.addAndGet(System.currentTimeMillis() - start);
+                bytesTransferred.addAndGet(handle.bytes.getAndSet(0));
+                synchronized (DriveTaskScheduler.this) {
+                    running--;
+                    if (!retry) {
+                        finish(this);
+                    }
+                }
+            }
+            if (retry) {
+                scheduleRetry(this);
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Entry> entriesByKey = new HashMap<>();
+    private final int[] queuedCounts = new int[Priority.values().length];
+    private final Random random = new Random();
+    private int running;
+
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private final AtomicLong busyTimeMs = new AtomicLong();
+    private final AtomicInteger consecutiveRateLimits = new AtomicInteger();
+    private volatile long pausedUntil;
+
+    DriveTaskScheduler() {
+        workers = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>());
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Planifier une tâche ; key (peut être null) identifie les tâches qui se remplacent
+     */
+    public synchronized void schedule(String key, Priority priority, DriveTask task) {
+        Entry entry = new Entry(key, priority, task);
+        if (key != null) {
+            Entry previous = entriesByKey.put(key, entry);
+            if (previous != null) {
+                previous.handle.cancelled = true;
+                previous.replaced = true;
+                if (!workers.remove(previous)) {
+                    // En cours, en attente de réessai ou de sa propre tâche précédente :
+                    // la nouvelle tâche sera lancée quand elle se termine
+                    previous.successor = entry;
+                    return;
+                }
+                queuedCounts[previous.priority.ordinal()]--;
+                cancelled(previous);
+            }
+        }
+        enqueue(entry);
+    }
+
+    /**
+     * Annuler la tâche associée à une clé (en attente ou en cours)
+     */
+    public synchronized void cancel(String key) {
+        Entry entry = entriesByKey.get(key);
+        if (entry == null) {
+            return;
+        }
+        entry.handle.cancelled = true;
+        if (workers.remove(entry)) {
+            queuedCounts[entry.priority.ordinal()]--;
+            cancelled(entry);
+            finish(entry);
+        }
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(queuedCounts[Priority.INTERACTIVE.ordinal()],
+                queuedCounts[Priority.BACKGROUND.ordinal()], running,
+                completedCount.get(), failedCount.get(), cancelledCount.get(), rateLimitedCount.get(),
+                bytesTransferred.get(), busyTimeMs.get());
+    }
+
+    private void enqueue(Entry entry) {
+        queuedCounts[entry.priority.ordinal()]++;
+        workers.execute(entry);
+    }
+
+    /**
+     * Fin d'une tâche : libérer sa clé ou lancer la tâche qui l'a remplacée
+     */
+    private void finish(Entry entry) {
+        if (entry.successor != null) {
+            enqueue(entry.successor);
+        } else if (entry.key != null) {
+            entriesByKey.remove(entry.key, entry);
+        }
+    }
+
+    private void cancelled(Entry entry) {
+        cancelledCount.incrementAndGet();
+        entry.task.onCancelled(entry.replaced);
+    }
+
+    private void scheduleRetry(Entry entry) {
+        rateLimitedCount.incrementAndGet();
+        entry.rateLimitRetries++;
+        int exponent = Math.min(consecutiveRateLimits.getAndIncrement(), 6);
+        long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << exponent)
+                + random.nextInt((int) INITIAL_BACKOFF_MS); // Éviter les réessais simultanés
+        pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + delay);
+        Log.w(TAG, "Limite de débit Drive, nouvel essai dans " + delay + " ms (" + getMetrics() + ")");
+
+        retryTimer.schedule(() -> {
+            synchronized (DriveTaskScheduler.this) {
+                if (entry.handle.cancelled) {
+                    cancelled(entry);
+                    finish(entry);
+                } else {
+                    enqueue(entry);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Après une erreur de limite de débit, les tâches suivantes attendent elles aussi
+     */
+    private void waitForRateLimitPause() {
+        long wait = pausedUntil - System.currentTimeMillis();
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static boolean isRateLimitError(Exception e) {
+        if (!(e instanceof GoogleJsonResponseException)) {
+            return false;
+        }
+        GoogleJsonResponseException response = (GoogleJsonResponseException) e;
+        if (response.getStatusCode() == 429) {
+            return true;
+        }
+        if (response.getStatusCode() != 403 || response.getDetails() == null
+                || response.getDetails().getErrors() == null) {
+            return false;
+        }
+        for (GoogleJsonError.ErrorInfo error : response.getDetails().getErrors()) {
+            String reason = error.getReason();
+            if ("rateLimitExceeded".equals(reason) || "userRateLimitExceeded".equals(reason)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.attendancesystem.services;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+
+/**
+ * Modèle de calcul d'empreinte faciale (ex. modèle TFLite embarqué), à enregistrer
+ * via FaceEmbedders.setFactory(). embed() est appelé sur le thread d'analyse avec le visage
+ * recadré au format getInputSize() x getInputSize() ; l'empreinte doit avoir la dimension
+ * des empreintes enregistrées (Student.faceEmbedding).
+ */
+public interface FaceEmbedder {
+
+    int getInputSize();
+
+    float[] embed(Bitmap face);
+
+    /**
+     * Empreintes des count premiers visages d'une même image. Un modèle acceptant un lot
+     * (ex. entrée TFLite de forme [n, taille, taille, 3]) doit redéfinir cette méthode
+     * pour traiter tous les visages en une seule inférence.
+     */
+    default float[][] embedBatch(Bitmap[] faces, int count) {
+        float[][] embeddings = new float[count][];
+        for (int i = 0; i < count; i++) {
+            embeddings[i] = embed(faces[i]);
+        }
+        return embeddings;
+    }
+
+    interface Factory {
+        FaceEmbedder create(Context context) throws IOException;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.attendancesystem.services;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * Point d'enregistrement du modèle d'empreinte faciale utilisé par la reconnaissance.
+ * Aucun modèle n'est enregistré pour l'instant : sans modèle, le pointage par reconnaissance
+ * et le calcul des empreintes des photos de profil sont désactivés.
+ */
+public final class FaceEmbedders {
+
+    private static volatile FaceEmbedder.Factory factory;
+
+    private FaceEmbedders() {}
+
+    public static void setFactory(FaceEmbedder.Factory embedderFactory) {
+        factory = embedderFactory;
+    }
+
+    /**
+     * Vrai si un modèle est enregistré (sinon le pointage par reconnaissance est indisponible)
+     */
+    public static boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * Nouveau modèle ; IOException si aucun n'est enregistré ou s'il ne peut pas être chargé
+     */
+    public static FaceEmbedder create(Context context) throws IOException {
+        FaceEmbedder.Factory current = factory;
+        if (current == null) {
+            throw new IOException("Aucun modèle d'empreinte enregistré");
+        }
+        FaceEmbedder embedder = current.create(context);
+        if (embedder == null) {
+            throw new IOException("Le modèle d'empreinte n'a pas pu être créé");
+        }
+        return embedder;
+    }
+}
@@ -0,0 +1,557 @@
+package com.example.attendancesystem.services;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index de recherche approchée (IVF) des empreintes faciales de tous les étudiants, pour les
+ * terminaux de pointage qui ne sont pas rattachés à une séance.
+ * Les empreintes normalisées sont quantifiées sur 8 bits et réparties en listes autour de
+ * centroïdes (k-means sphérique) : une recherche ne parcourt que les listes les plus proches.
+ * L'index est enregistré dans un fichier projeté en mémoire (aucune relecture au démarrage) ;
+ * les ajouts et modifications restent en mémoire jusqu'au prochain save().
+ * Méthodes synchronisées : utilisable depuis plusieurs threads.
+ */
+public class FaceEmbeddingIndex {
+    private static final String TAG = "FaceEmbeddingIndex";
+
+    // En-tête : magic, version, dimension, nombre de listes, nombre d'empreintes, watermark
+    private static final int MAGIC = 0x46494458; // "FIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * 4 + 8;
+
+    private static final float QUANTIZATION_SCALE = 127f;
+    public static final int DEFAULT_PROBES = 16;
+    private static final int KMEANS_ITERATIONS = 8;
+    private static final int TRAINING_SAMPLES_PER_LIST = 16;
+    // Au-delà de cette proportion d'empreintes ajoutées depuis le dernier save(), les centroïdes sont recalculés
+    private static final float RETRAIN_RATIO = 0.5f;
+
+    /**
+     * Étudiant candidat (par email) et son score cosinus approché
+     */
+    public static class Match {
+        private final String email;
+        private final float score;
+
+        Match(String email, float score) {
+            this.email = email;
+            this.score = score;
+        }
+
+        public String getEmail() { return email; }
+        public float getScore() { return score; }
+
+        public boolean isAccepted() {
+            return score >= FaceEmbeddingMatcher.MATCH_THRESHOLD;
+        }
+    }
+
+    private final File file;
+    private int dimension;
+    private int listCount;
+    private float[] centroids = new float[0];
+    private long watermark;
+
+    // Index enregistré, projeté en mémoire (empreintes rangées par liste)
+    private ByteBuffer stored;
+    private int storedCount;
+    private int[] listStarts = {0};
+    private int codesOffset;
+    private int emailOffsetsOffset;
+    private int emailsOffset;
+
+    // Modifications depuis le dernier save()
+    private final Map<String, byte[]> pending = new LinkedHashMap<>();
+    private final BitSet replacedRows = new BitSet();
+    private Map<String, Integer> storedRows; // construit au premier ajout
+    private boolean dirty;
+    private byte[] scratch = new byte[0];
+
+    private FaceEmbeddingIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Ouvrir l'index enregistré (index vide si le fichier est absent ou illisible)
+     */
+    public static FaceEmbeddingIndex open(File file) {
+        FaceEmbeddingIndex index = new FaceEmbeddingIndex(file);
+        if (file.exists()) {
+            try {
+                index.map();
+                Log.d(TAG, "Index ouvert: " + index.storedCount + " empreintes, " + index.listCount + " listes");
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Index illisible, il sera reconstruit", e);
+                index = new FaceEmbeddingIndex(file);
+            }
+        }
+        return index;
+    }
+
+    public synchronized int size() {
+        return storedCount - replacedRows.cardinality() + pending.size();
+    }
+
+    public synchronized int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Date (ms) de la dernière modification d'étudiant prise en compte
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    public synchronized void setWatermark(long watermark) {
+        if (watermark != this.watermark) {
+            this.watermark = watermark;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Ajouter ou remplacer l'empreinte d'un étudiant
+     */
+    public synchronized void put(String email, float[] embedding) {
+        if (dimension == 0) {
+            dimension = embedding.length;
+        }
+        if (embedding.length != dimension) {
+            Log.w(TAG, "Empreinte ignorée (dimension " + embedding.length + "): " + email);
+            return;
+        }
+        float[] vector = embedding.clone();
+        normalize(vector);
+        markReplaced(email);
+        pending.put(email, quantize(vector));
+        dirty = true;
+    }
+
+    public synchronized void remove(String email) {
+        boolean removed = markReplaced(email);
+        if (pending.remove(email) != null || removed) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Les k étudiants les plus proches, en parcourant les `probes` listes les plus proches
+     */
+    public synchronized List<Match> search(float[] probe, int k, int probes) {
+        if (probe.length != dimension || k <= 0 || size() == 0) {
+            return Collections.emptyList();
+        }
+        float[] query = probe.clone();
+        normalize(query);
+        TopK top = new TopK(k);
+
+        if (storedCount > 0) {
+            TopK nearestLists = new TopK(Math.min(probes, listCount));
+            for (int list = 0; list < listCount; list++) {
+                nearestLists.offer(dot(query, centroids, list * dimension), list, null);
+            }
+            for (int i = 0; i < nearestLists.size; i++) {
+                scanList(query, nearestLists.rows[i], top);
+            }
+        }
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            top.offer(dotCodes(query, 0, entry.getValue(), 0, dimension) / QUANTIZATION_SCALE, -1, entry.getKey());
+        }
+
+        List<Match> matches = new ArrayList<>(top.size);
+        for (int i = 0; i < top.size; i++) {
+            String email = top.emails[i] != null ? top.emails[i] : emailAt(top.rows[i]);
+            matches.add(new Match(email, top.scores[i]));
+        }
+        return matches;
+    }
+
+    /**
+     * Recherche exhaustive (référence pour mesurer le rappel de search())
+     */
+    public synchronized List<Match> searchExhaustive(float[] probe, int k) {
+        return search(probe, k, listCount);
+    }
+
+    private void scanList(float[] query, int list, TopK top) {
+        int start = listStarts[list];
+        int end = listStarts[list + 1];
+        int length = (end - start) * dimension;
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        // Copie groupée des codes de la liste depuis le fichier projeté
+        ByteBuffer codes = stored.duplicate();
+        codes.position(codesOffset + start * dimension);
+        codes.get(scratch, 0, length);
+        for (int row = start, offset = 0; row < end; row++, offset += dimension) {
+            if (!replacedRows.get(row)) {
+                top.offer(dotCodes(query, 0, scratch, offset, dimension) / QUANTIZATION_SCALE, row, null);
+            }
+        }
+    }
+
+    /**
+     * Écrire l'index (fichier temporaire puis renommage) et le projeter à nouveau en mémoire
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        // Empreintes conservées : celles du fichier non remplacées, puis les ajouts
+        List<String> emails = new ArrayList<>(size());
+        List<byte[]> codes = new ArrayList<>(size());
+        List<Integer> lists = new ArrayList<>(size());
+        for (int list = 0; list < listCount; list++) {
+            for (int row = listStarts[list]; row < listStarts[list + 1]; row++) {
+                if (!replacedRows.get(row)) {
+                    byte[] code = new byte[dimension];
+                    ByteBuffer source = stored.duplicate();
+                    source.position(codesOffset + row * dimension);
+                    source.get(code);
+                    emails.add(emailAt(row));
+                    codes.add(code);
+                    lists.add(list);
+                }
+            }
+        }
+        int kept = emails.size();
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            emails.add(entry.getKey());
+            codes.add(entry.getValue());
+            lists.add(-1);
+        }
+
+        if (listCount == 0 || pending.size() > RETRAIN_RATIO * Math.max(1, kept)) {
+            train(codes);
+            for (int i = 0; i < lists.size(); i++) {
+                lists.set(i, -1);
+            }
+        }
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i) < 0) {
+                lists.set(i, nearestList(codes.get(i)));
+            }
+        }
+
+        write(emails, codes, lists);
+        pending.clear();
+        replacedRows.clear();
+        storedRows = null;
+        dirty = false;
+        map();
+        Log.d(TAG, "Index enregistré: " + storedCount + " empreintes, " + listCount + " listes en "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * K-means sphérique sur un échantillon des empreintes (environ racine de n listes)
+     */
+    private void train(List<byte[]> codes) {
+        int count = codes.size();
+        listCount = count == 0 ? 0 : Math.max(1, (int) Math.round(Math.sqrt(count)));
+        centroids = new float[listCount * dimension];
+        if (listCount == 0) {
+            return;
+        }
+
+        int sampleCount = Math.min(count, listCount * TRAINING_SAMPLES_PER_LIST);
+        float[] samples = new float[sampleCount * dimension];
+        for (int i = 0; i < sampleCount; i++) {
+            byte[] code = codes.get((int) ((long) i * count / sampleCount));
+            for (int d = 0; d < dimension; d++) {
+                samples[i * dimension + d] = code[d] / QUANTIZATION_SCALE;
+            }
+        }
+        // Centroïdes initiaux répartis dans l'échantillon
+        for (int list = 0; list < listCount; list++) {
+            int sample = (int) ((long) list * sampleCount / listCount);
+            System.arraycopy(samples, sample * dimension, centroids, list * dimension, dimension);
+        }
+
+        float[] sums = new float[centroids.length];
+        int[] members = new int[listCount];
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            Arrays.fill(sums, 0f);
+            Arrays.fill(members, 0);
+            for (int i = 0; i < sampleCount; i++) {
+                int best = 0;
+                float bestScore = -Float.MAX_VALUE;
+                for (int list = 0; list < listCount; list++) {
+                    float score = dot(samples, i * dimension, centroids, list * dimension, dimension);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = list;
+                    }
+                }
+                members[best]++;
+                for (int d = 0; d < dimension; d++) {
+                    sums[best * dimension + d] += samples[i * dimension + d];
+                }
+            }
+            for (int list = 0; list < listCount; list++) {
+                if (members[list] > 0) { // une liste vide garde son centroïde
+                    System.arraycopy(sums, list * dimension, centroids, list * dimension, dimension);
+                    normalize(centroids, list * dimension, dimension);
+                }
+            }
+        }
+    }
+
+    private int nearestList(byte[] code) {
+        int best = 0;
+        float bestScore = -Float.MAX_VALUE;
+        for (int list = 0; list < listCount; list++) {
+            float score = dotCodes(centroids, list * dimension, code, 0, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                best = list;
+            }
+        }
+        return best;
+    }
+
+    private void write(List<String> emails, List<byte[]> codes, List<Integer> lists) throws IOException {
+        int count = emails.size();
+        // Rangement par liste (tri par dénombrement)
+        int[] starts = new int[listCount + 1];
+        for (int list : lists) {
+            starts[list + 1]++;
+        }
+        for (int list = 0; list < listCount; list++) {
+            starts[list + 1] += starts[list];
+        }
+        int[] order = new int[count];
+        int[] next = starts.clone();
+        for (int i = 0; i < count; i++) {
+            order[next[lists.get(i)]++] = i;
+        }
+
+        byte[][] encodedEmails = new byte[count][];
+        int emailBytes = 0;
+        for (int row = 0; row < count; row++) {
+            encodedEmails[row] = emails.get(order[row]).getBytes(StandardCharsets.UTF_8);
+            emailBytes += encodedEmails[row].length;
+        }
+
+        int size = HEADER_BYTES + centroids.length * 4 + starts.length * 4
+                + count * dimension + (count + 1) * 4 + emailBytes;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(listCount).putInt(count).putLong(watermark);
+        for (float value : centroids) {
+            buffer.putFloat(value);
+        }
+        for (int value : starts) {
+            buffer.putInt(value);
+        }
+        for (int row = 0; row < count; row++) {
+            buffer.put(codes.get(order[row]));
+        }
+        int emailOffset = 0;
+        buffer.putInt(emailOffset);
+        for (byte[] email : encodedEmails) {
+            emailOffset += email.length;
+            buffer.putInt(emailOffset);
+        }
+        for (byte[] email : encodedEmails) {
+            buffer.put(email);
+        }
+        buffer.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Impossible de remplacer " + file.getName());
+        }
+    }
+
+    private void map() throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Format d'index inconnu");
+        }
+        int fileDimension = buffer.getInt(8);
+        int lists = buffer.getInt(12);
+        int count = buffer.getInt(16);
+        long fileWatermark = buffer.getLong(20);
+
+        int position = HEADER_BYTES;
+        float[] fileCentroids = new float[lists * fileDimension];
+        for (int i = 0; i < fileCentroids.length; i++, position += 4) {
+            fileCentroids[i] = buffer.getFloat(position);
+        }
+        int[] starts = new int[lists + 1];
+        for (int i = 0; i < starts.length; i++, position += 4) {
+            starts[i] = buffer.getInt(position);
+        }
+
+        dimension = fileDimension;
+        listCount = lists;
+        centroids = fileCentroids;
+        listStarts = starts;
+        watermark = fileWatermark;
+        storedCount = count;
+        codesOffset = position;
+        emailOffsetsOffset = codesOffset + count * fileDimension;
+        emailsOffset = emailOffsetsOffset + (count + 1) * 4;
+        stored = buffer;
+    }
+
+    private String emailAt(int row) {
+        int start = stored.getInt(emailOffsetsOffset + row * 4);
+        int end = stored.getInt(emailOffsetsOffset + (row + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer source = stored.duplicate();
+        source.position(emailsOffset + start);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Masquer la version enregistrée d'une empreinte (vrai si elle existait)
+     */
+    private boolean markReplaced(String email) {
+        if (storedCount == 0) {
+            return false;
+        }
+        if (storedRows == null) {
+            storedRows = new HashMap<>(storedCount * 2);
+            for (int row = 0; row < storedCount; row++) {
+                storedRows.put(emailAt(row), row);
+            }
+        }
+        Integer row = storedRows.get(email);
+        if (row == null || replacedRows.get(row)) {
+            return false;
+        }
+        replacedRows.set(row);
+        return true;
+    }
+
+    /**
+     * Meilleurs scores par ordre décroissant (insertion, k est petit)
+     */
+    private static class TopK {
+        final float[] scores;
+        final int[] rows;
+        final String[] emails;
+        int size;
+
+        TopK(int k) {
+            scores = new float[k];
+            rows = new int[k];
+            emails = new String[k];
+        }
+
+        void offer(float score, int row, String email) {
+            int capacity = scores.length;
+            if (capacity == 0 || (size == capacity && score <= scores[capacity - 1])) {
+                return;
+            }
+            int position = size < capacity ? size++ : capacity - 1;
+            while (position > 0 && scores[position - 1] < score) {
+                scores[position] = scores[position - 1];
+                rows[position] = rows[position - 1];
+                emails[position] = emails[position - 1];
+                position--;
+            }
+            scores[position] = score;
+            rows[position] = row;
+            emails[position] = email;
+        }
+    }
+
+    private static byte[] quantize(float[] vector) {
+        byte[] code = new byte[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            int value = Math.round(vector[i] * QUANTIZATION_SCALE);
+            code[i] = (byte) Math.max(-127, Math.min(127, value));
+        }
+        return code;
+    }
+
+    private static float dot(float[] query, float[] vectors, int offset) {
+        return dot(query, 0, vectors, offset, query.length);
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum0 = 0f, sum1 = 0f, sum2 = 0f, sum3 = 0f;
+        int i = 0;
+        for (; i < length - 3; i += 4) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+            sum1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            sum2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            sum3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Produit scalaire float x int8, déroulé par 4 comme FaceEmbeddingMatcher.dot()
+     */
+    private static float dotCodes(float[] query, int queryOffset, byte[] codes, int offset, int length) {
+        float sum0 = 0f, sum1 = 0f, sum2 = 0f, sum3 = 0f;
+        int i = 0;
+        for (; i < length - 3; i += 4) {
+            sum0 += query[queryOffset + i] * codes[offset + i];
+            sum1 += query[queryOffset + i + 1] * codes[offset + i + 1];
+            sum2 += query[queryOffset + i + 2] * codes[offset + i + 2];
+            sum3 += query[queryOffset + i + 3] * codes[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += query[queryOffset + i] * codes[offset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static void normalize(float[] vector) {
+        normalize(vector, 0, vector.length);
+    }
+
+    private static void normalize(float[] values, int offset, int length) {
+        float squares = 0f;
+        for (int i = offset; i < offset + length; i++) {
+            squares += values[i] * values[i];
+        }
+        if (squares <= 0f) {
+            return;
+        }
+        float scale = (float) (1.0 / Math.sqrt(squares));
+        for (int i = offset; i < offset + length; i++) {
+            values[i] *= scale;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.attendancesystem.services;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.attendancesystem.models.Attendance;
+import com.example.attendancesystem.models.Session;
+import com.example.attendancesystem.models.Student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reconnaissance sur l'appareil : comparaison d'une empreinte faciale (probe) avec celles
+ * des étudiants d'une séance. Les empreintes sont normalisées et rangées bout à bout dans
+ * un seul float[] (ligne i = étudiant i) : le parcours est séquentiel en mémoire et le
+ * score cosinus se réduit à un produit scalaire.
+ * Seule l'identité des étudiants (email, nom, numéro) est conservée avec la galerie.
+ * Instance immuable, utilisable depuis n'importe quel thread.
+ */
+public class FaceEmbeddingMatcher {
+    private static final String TAG = "FaceEmbeddingMatcher";
+
+    // Score cosinus minimal pour reconnaître un étudiant
+    public static final float MATCH_THRESHOLD = 0.6f;
+    // Estimation de la place occupée par l'identité d'un étudiant (objet et chaînes)
+    private static final int STUDENT_BYTES = 256;
+
+    private final Student[] students;
+    private final float[] gallery;
+    private final int dimension;
+
+    /**
+     * Étudiant candidat et son score
+     */
+    public static class Match {
+        private final Student student;
+        private final float score;
+
+        Match(Student student, float score) {
+            this.student = student;
+            this.score = score;
+        }
+
+        public Student getStudent() { return student; }
+        public float getScore() { return score; }
+
+        /**
+         * Confiance enregistrée dans Attendance (score ramené entre 0 et 1)
+         */
+        public double getConfidence() {
+            return Math.max(0f, Math.min(1f, score));
+        }
+
+        public boolean isAccepted() {
+            return score >= MATCH_THRESHOLD;
+        }
+
+        /**
+         * Pointage automatique de l'étudiant pour la séance
+         */
+        public Attendance toAttendance(Session session, long processingTimeMs) {
+            Attendance attendance = new Attendance(student.getEmail(), student.getFullName(),
+                    student.getStudentId(), session.getCourseId(), session.getCourseName(), getConfidence());
+            attendance.setSessionId(session.getSessionId());
+            attendance.getAttendanceDetails().setProcessingTime(processingTimeMs);
+            return attendance;
+        }
+    }
+
+    /**
+     * Meilleurs candidats (score décroissant) et durée de la comparaison
+     */
+    public static class Result {
+        private final List<Match> matches;
+        private final long processingTimeMs;
+
+        Result(List<Match> matches, long processingTimeMs) {
+            this.matches = matches;
+            this.processingTimeMs = processingTimeMs;
+        }
+
+        public List<Match> getMatches() { return matches; }
+        public long getProcessingTimeMs() { return processingTimeMs; }
+
+        /**
+         * Meilleur candidat s'il dépasse le seuil, sinon null
+         */
+        public Match getAccepted() {
+            return !matches.isEmpty() && matches.get(0).isAccepted() ? matches.get(0) : null;
+        }
+
+        /**
+         * Pointage automatique pour le meilleur candidat (null si personne n'est reconnu)
+         */
+        public Attendance toAttendance(Session session) {
+            Match match = getAccepted();
+            return match != null ? match.toAttendance(session, processingTimeMs) : null;
+        }
+    }
+
+    private FaceEmbeddingMatcher(Student[] students, float[] gallery, int dimension) {
+        this.students = students;
+        this.gallery = gallery;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Construire la galerie à partir des étudiants ayant une empreinte enregistrée.
+     * La dimension retenue est celle de la première empreinte ; les autres tailles sont ignorées.
+     */
+    public static FaceEmbeddingMatcher fromStudents(List<Student> candidates) {
+        List<Student> enrolled = new ArrayList<>(candidates.size());
+        int dimension = 0;
+        for (Student student : candidates) {
+            List<Double> embedding = student.getFaceEmbedding();
+            if (embedding == null || embedding.isEmpty()) {
+                continue;
+            }
+            if (dimension == 0) {
+                dimension = embedding.size();
+            }
+            if (embedding.size() == dimension) {
+                enrolled.add(student);
+            } else {
+                Log.w(TAG, "Empreinte ignorée (dimension " + embedding.size() + "): " + student.getEmail());
+            }
+        }
+
+        float[] gallery = new float[enrolled.size() * dimension];
+        Student[] identities = new Student[enrolled.size()];
+        for (int row = 0; row < enrolled.size(); row++) {
+            Student student = enrolled.get(row);
+            List<Double> embedding = student.getFaceEmbedding();
+            int offset = row * dimension;
+            for (int i = 0; i < dimension; i++) {
+                gallery[offset + i] = embedding.get(i).floatValue();
+            }
+            normalize(gallery, offset, dimension);
+            identities[row] = identityOf(student);
+        }
+        Log.d(TAG, "Galerie: " + enrolled.size() + " empreintes de dimension " + dimension
+                + " (" + (candidates.size() - enrolled.size()) + " étudiants sans empreinte)");
+        return new FaceEmbeddingMatcher(identities, gallery, dimension);
+    }
+
+    /**
+     * Copie réduite de l'étudiant : la liste de Double de l'empreinte n'est pas retenue
+     */
+    private static Student identityOf(Student student) {
+        Student identity = new Student();
+        identity.setEmail(student.getEmail());
+        identity.setFullName(student.getFullName());
+        identity.setStudentId(student.getStudentId());
+        return identity;
+    }
+
+    public int size() {
+        return students.length;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Mémoire occupée (approximative), pour borner le cache des galeries
+     */
+    public long getMemoryBytes() {
+        return gallery.length * 4L + students.length * (long) STUDENT_BYTES;
+    }
+
+    /**
+     * Les k étudiants les plus proches de l'empreinte (non modifiée par l'appel)
+     */
+    public Result match(float[] probe, int k) {
+        long start = SystemClock.elapsedRealtime();
+        if (probe.length != dimension || students.length == 0 || k <= 0) {
+            return new Result(Collections.emptyList(), SystemClock.elapsedRealtime() - start);
+        }
+        float[] query = probe.clone();
+        normalize(query, 0, dimension);
+
+        int count = Math.min(k, students.length);
+        // Meilleurs scores triés par ordre décroissant (insertion, k est petit)
+        float[] bestScores = new float[count];
+        int[] bestRows = new int[count];
+        int filled = 0;
+        for (int row = 0, offset = 0; row < students.length; row++, offset += dimension) {
+            float score = dot(query, gallery, offset, dimension);
+            if (filled == count && score <= bestScores[count - 1]) {
+                continue;
+            }
+            int position = filled < count ? filled++ : count - 1;
+            while (position > 0 && bestScores[position - 1] < score) {
+                bestScores[position] = bestScores[position - 1];
+                bestRows[position] = bestRows[position - 1];
+                position--;
+            }
+            bestScores[position] = score;
+            bestRows[position] = row;
+        }
+
+        List<Match> matches = new ArrayList<>(filled);
+        for (int i = 0; i < filled; i++) {
+            matches.add(new Match(students[bestRows[i]], bestScores[i]));
+        }
+        return new Result(matches, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Meilleur candidat pour chacune des count premières empreintes d'une même image
+     * (null si l'empreinte n'a pas la bonne dimension ou si la galerie est vide).
+     * Produit matriciel empreintes x galerie en un seul passage : chaque ligne de la galerie
+     * est lue une fois et comparée à toutes les empreintes tant qu'elle est en cache.
+     * Un étudiant ne pouvant être qu'un seul des visages, seul le visage au meilleur score
+     * le conserve ; les autres n'ont pas de candidat.
+     */
+    public Match[] matchBatch(float[][] probes, int count) {
+        Match[] matches = new Match[count];
+        if (students.length == 0) {
+            return matches;
+        }
+        // Empreintes normalisées de bonne dimension, avec leur position dans probes
+        float[][] queries = new float[count][];
+        int[] queryIndex = new int[count];
+        int queryCount = 0;
+        for (int p = 0; p < count; p++) {
+            if (probes[p] != null && probes[p].length == dimension) {
+                float[] query = probes[p].clone();
+                normalize(query, 0, dimension);
+                queries[queryCount] = query;
+                queryIndex[queryCount++] = p;
+            }
+        }
+
+        float[] bestScores = new float[count];
+        int[] bestRows = new int[count];
+        Arrays.fill(bestScores, Float.NEGATIVE_INFINITY);
+        Arrays.fill(bestRows, -1);
+        float[] scores = new float[4];
+        for (int row = 0, offset = 0; row < students.length; row++, offset += dimension) {
+            int v = 0;
+            // Empreintes par groupes de 4 : chaque valeur de la galerie est chargée une fois pour 4 visages
+            for (; v + 3 < queryCount; v += 4) {
+                dot4(queries[v], queries[v + 1], queries[v + 2], queries[v + 3], gallery, offset, dimension, scores);
+                for (int j = 0; j < 4; j++) {
+                    keepBest(bestScores, bestRows, queryIndex[v + j], scores[j], row);
+                }
+            }
+            for (; v < queryCount; v++) {
+                keepBest(bestScores, bestRows, queryIndex[v], dot(queries[v], gallery, offset, dimension), row);
+            }
+        }
+
+        for (int p = 0; p < count; p++) {
+            if (bestRows[p] < 0) {
+                continue;
+            }
+            boolean best = true;
+            for (int other = 0; other < count && best; other++) {
+                best = other == p || bestRows[other] != bestRows[p] || bestScores[other] < bestScores[p]
+                        || (bestScores[other] == bestScores[p] && other > p);
+            }
+            if (best) {
+                matches[p] = new Match(students[bestRows[p]], bestScores[p]);
+            }
+        }
+        return matches;
+    }
+
+    private static void keepBest(float[] bestScores, int[] bestRows, int probe, float score, int row) {
+        if (score > bestScores[probe]) {
+            bestScores[probe] = score;
+            bestRows[probe] = row;
+        }
+    }
+
+    /**
+     * Produits scalaires de 4 empreintes avec la même ligne de la galerie
+     */
+    static void dot4(float[] q0, float[] q1, float[] q2, float[] q3,
+                     float[] gallery, int offset, int dimension, float[] scores) {
+        float sum0 = 0f, sum1 = 0f, sum2 = 0f, sum3 = 0f;
+        for (int i = 0; i < dimension; i++) {
+            float value = gallery[offset + i];
+            sum0 += q0[i] * value;
+            sum1 += q1[i] * value;
+            sum2 += q2[i] * value;
+            sum3 += q3[i] * value;
+        }
+        scores[0] = sum0;
+        scores[1] = sum1;
+        scores[2] = sum2;
+        scores[3] = sum3;
+    }
+
+    /**
+     * Produit scalaire déroulé par 4 avec accumulateurs indépendants
+     * (boucle vectorisable par le compilateur, pas de dépendance entre itérations)
+     */
+    static float dot(float[] query, float[] gallery, int offset, int dimension) {
+        float sum0 = 0f, sum1 = 0f, sum2 = 0f, sum3 = 0f;
+        int i = 0;
+        int limit = dimension - 3;
+        for (; i < limit; i += 4) {
+            sum0 += query[i] * gallery[offset + i];
+            sum1 += query[i + 1] * gallery[offset + i + 1];
+            sum2 += query[i + 2] * gallery[offset + i + 2];
+            sum3 += query[i + 3] * gallery[offset + i + 3];
+        }
+        for (; i < dimension; i++) {
+            sum0 += query[i] * gallery[offset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static void normalize(float[] values, int offset, int length) {
+        float squares = 0f;
+        for (int i = offset; i < offset + length; i++) {
+            squares += values[i] * values[i];
+        }
+        if (squares <= 0f) {
+            return;
+        }
+        float scale = (float) (1.0 / Math.sqrt(squares));
+        for (int i = offset; i < offset + length; i++) {
+            values[i] *= scale;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.example.attendancesystem.services;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.FaceDetector;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.example.attendancesystem.utils.LatencyHistogram;
+import com.example.attendancesystem.utils.YuvToRgbConverter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Analyse des images de la caméra pour le pointage par reconnaissance faciale :
+ * conversion YUV -> RGB, détection des visages sur une copie réduite, puis calcul des empreintes
+ * de tous les visages immobiles de l'image en un seul lot, comparées ensemble à la galerie
+ * de la séance. Chaque visage est suivi d'une image à l'autre ; un étudiant n'est signalé
+ * qu'après plusieurs reconnaissances concordantes du même visage, et les étudiants déjà
+ * présents ne sont plus analysés. Un visage absent de la galerie peut être identifié dans
+ * l'index de tous les étudiants (setSchoolIndex) pour signaler un étudiant non inscrit.
+ * À utiliser avec ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST sur un exécuteur à un seul thread :
+ * les tampons sont réutilisés d'une image à l'autre. Les événements sont livrés sur le thread principal.
+ */
+public class FaceFrameAnalyzer implements ImageAnalysis.Analyzer {
+    private static final String TAG = "FaceFrameAnalyzer";
+
+    private static final int DETECTION_WIDTH = 320;
+    // Visages analysés par image (une rangée d'étudiants)
+    private static final int MAX_FACES = 8;
+    // Images consécutives avec un visage immobile avant de calculer l'empreinte
+    private static final int STABLE_FRAMES = 3;
+    // Déplacement maximal du visage entre deux images (fraction de l'écart entre les yeux)
+    private static final float STABLE_MOTION = 0.25f;
+    private static final float STABLE_SCALE_CHANGE = 0.15f;
+    // Au-delà de ce déplacement, le visage n'est plus associé au même suivi
+    private static final float TRACK_MOTION = 1f;
+    // Reconnaissances concordantes avant de signaler un étudiant
+    private static final int CONFIRMATIONS = 2;
+    // Cadre du visage autour du point entre les yeux (en écarts entre les yeux)
+    private static final float FACE_BOX_SCALE = 2.4f;
+    private static final float FACE_CENTER_OFFSET = 0.3f;
+    private static final int REPORT_INTERVAL_FRAMES = 150;
+
+    public interface Listener {
+        void onFaceStateChanged(int faceCount, boolean stable);
+
+        /**
+         * Étudiants reconnus dans une même image (jamais vide)
+         */
+        void onStudentsRecognized(List<FaceEmbeddingMatcher.Match> matches, long processingTimeMs);
+
+        /**
+         * Étudiants absents de la galerie de la séance mais reconnus dans l'index de
+         * l'établissement (setSchoolIndex), signalés une seule fois
+         */
+        void onUnenrolledStudentsRecognized(List<String> emails);
+    }
+
+    /**
+     * Suivi d'un visage d'une image à l'autre
+     */
+    private static class Track {
+        final PointF center = new PointF();
+        float eyesDistance;
+        int stableFrames;
+        String candidateEmail;
+        int confirmations;
+        // Étudiant signalé ou déjà présent : plus d'empreinte pour ce visage
+        boolean done;
+        boolean seen;
+    }
+
+    private final FaceEmbeddingMatcher matcher;
+    private final FaceEmbedder embedder;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Étudiants déjà pointés (séance et images précédentes)
+    private final Set<String> presentEmails = ConcurrentHashMap.newKeySet();
+    // Index de tous les étudiants, pour identifier les visages absents de la galerie
+    private volatile FaceEmbeddingIndex schoolIndex;
+
+    // Tampons réutilisés
+    private final YuvToRgbConverter converter = new YuvToRgbConverter();
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix detectionMatrix = new Matrix();
+    private final FaceDetector.Face[] detectedFaces = new FaceDetector.Face[MAX_FACES];
+    private final PointF midPoint = new PointF();
+    private final Rect faceSource = new Rect();
+    private final RectF faceTarget = new RectF();
+    private final Bitmap[] faceBitmaps = new Bitmap[MAX_FACES];
+    private final Canvas[] faceCanvases = new Canvas[MAX_FACES];
+    private final Track[] batchTracks = new Track[MAX_FACES];
+    private Bitmap detectionBitmap;
+    private Canvas detectionCanvas;
+    private FaceDetector detector;
+
+    // Suivi des visages
+    private final List<Track> tracks = new ArrayList<>(MAX_FACES);
+    private int lastFaceCount = -1;
+    private boolean lastStable;
+
+    // Latences par étape et débit
+    private final LatencyHistogram conversionLatency = new LatencyHistogram("conversion");
+    private final LatencyHistogram detectionLatency = new LatencyHistogram("détection");
+    private final LatencyHistogram embeddingLatency = new LatencyHistogram("empreinte");
+    private final LatencyHistogram matchingLatency = new LatencyHistogram("comparaison");
+    private final LatencyHistogram frameLatency = new LatencyHistogram("image");
+    private int frames;
+    private long recognizedFaces;
+    private long recognitionNanos;
+    private long reportStart = SystemClock.elapsedRealtimeNanos();
+
+    /**
+     * @param embedder modèle d'empreinte (FaceEmbedders.create)
+     * @param alreadyPresent étudiants déjà pointés, ignorés par la reconnaissance
+     */
+    public FaceFrameAnalyzer(FaceEmbeddingMatcher matcher, FaceEmbedder embedder,
+                             Collection<String> alreadyPresent, Listener listener) {
+        this.matcher = matcher;
+        this.embedder = embedder;
+        this.listener = listener;
+        if (alreadyPresent != null) {
+            presentEmails.addAll(alreadyPresent);
+        }
+        int size = embedder.getInputSize();
+        faceTarget.set(0, 0, size, size);
+    }
+
+    /**
+     * Index de l'établissement (chargé après le démarrage de la caméra), ou null
+     */
+    public void setSchoolIndex(FaceEmbeddingIndex index) {
+        schoolIndex = index;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            process(image, start);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Erreur d'analyse de l'image", e);
+        } finally {
+            // Libérer l'image permet à CameraX de livrer la plus récente
+            image.close();
+        }
+        frameLatency.recordNanos(SystemClock.elapsedRealtimeNanos() - start);
+        if (++frames % REPORT_INTERVAL_FRAMES == 0) {
+            logLatencies();
+        }
+    }
+
+    private void process(ImageProxy image, long start) {
+        long stageStart = start;
+        Bitmap frame = converter.convert(image);
+        stageStart = record(conversionLatency, stageStart);
+
+        int found = detectFaces(frame);
+        stageStart = record(detectionLatency, stageStart);
+
+        // Associer chaque visage détecté au suivi le plus proche ; ceux qui ont disparu sont oubliés
+        for (Track track : tracks) {
+            track.seen = false;
+        }
+        float scale = frame.getWidth() / (float) detectionBitmap.getWidth();
+        boolean anyStable = false;
+        int batchSize = 0;
+        for (int i = 0; i < found; i++) {
+            FaceDetector.Face face = detectedFaces[i];
+            face.getMidPoint(midPoint);
+            Track track = updateTrack(midPoint.x * scale, midPoint.y * scale, face.eyesDistance() * scale);
+            boolean stable = track.stableFrames >= STABLE_FRAMES;
+            anyStable |= stable;
+            // Empreinte uniquement pour un visage stable, pas encore confirmé
+            if (stable && !track.done) {
+                batchTracks[batchSize++] = track;
+            }
+        }
+        removeUnseenTracks();
+        notifyFaceState(found, anyStable);
+        if (batchSize == 0) {
+            return;
+        }
+
+        long batchStart = stageStart;
+        for (int i = 0; i < batchSize; i++) {
+            cropFace(frame, batchTracks[i], i);
+        }
+        float[][] embeddings = embedder.embedBatch(faceBitmaps, batchSize);
+        stageStart = record(embeddingLatency, stageStart);
+
+        FaceEmbeddingMatcher.Match[] matches = matcher.matchBatch(embeddings, batchSize);
+        long now = record(matchingLatency, stageStart);
+        recognizedFaces += batchSize;
+        recognitionNanos += now - batchStart;
+
+        long processingTimeMs = (now - start) / 1_000_000;
+        List<FaceEmbeddingMatcher.Match> confirmed = new ArrayList<>();
+        List<String> unenrolled = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            FaceEmbeddingMatcher.Match match = matches[i];
+            if (match != null && match.isAccepted()) {
+                if (confirm(batchTracks[i], match.getStudent().getEmail())) {
+                    confirmed.add(match);
+                }
+            } else {
+                String email = searchSchoolIndex(embeddings[i], matches, batchSize);
+                if (confirm(batchTracks[i], email)) {
+                    unenrolled.add(email);
+                }
+            }
+            batchTracks[i] = null;
+        }
+        if (!confirmed.isEmpty()) {
+            mainHandler.post(() -> listener.onStudentsRecognized(confirmed, processingTimeMs));
+        }
+        if (!unenrolled.isEmpty()) {
+            mainHandler.post(() -> listener.onUnenrolledStudentsRecognized(unenrolled));
+        }
+    }
+
+    /**
+     * Visage non reconnu dans la galerie : étudiant de l'établissement le plus proche
+     * (null sans index, sans candidat accepté ou si l'étudiant est attribué à un autre visage de l'image)
+     */
+    private String searchSchoolIndex(float[] embedding, FaceEmbeddingMatcher.Match[] matches, int count) {
+        FaceEmbeddingIndex index = schoolIndex;
+        if (index == null || embedding == null) {
+            return null;
+        }
+        List<FaceEmbeddingIndex.Match> found = index.search(embedding, 1, FaceEmbeddingIndex.DEFAULT_PROBES);
+        if (found.isEmpty() || !found.get(0).isAccepted()) {
+            return null;
+        }
+        String email = found.get(0).getEmail();
+        for (int i = 0; i < count; i++) {
+            if (matches[i] != null && email.equals(matches[i].getStudent().getEmail())) {
+                return null;
+            }
+        }
+        return email;
+    }
+
+    /**
+     * Détection sur une copie réduite en RGB_565 (format exigé par FaceDetector)
+     */
+    private int detectFaces(Bitmap frame) {
+        int width = DETECTION_WIDTH;
+        int height = Math.round(frame.getHeight() * (DETECTION_WIDTH / (float) frame.getWidth())) & ~1;
+        if (detectionBitmap == null || detectionBitmap.getHeight() != height) {
+            detectionBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+            detectionCanvas = new Canvas(detectionBitmap);
+            detector = new FaceDetector(width, height, MAX_FACES);
+        }
+        float scale = width / (float) frame.getWidth();
+        detectionMatrix.setScale(scale, scale);
+        detectionCanvas.drawBitmap(frame, detectionMatrix, scalePaint);
+        return detector.findFaces(detectionBitmap, detectedFaces);
+    }
+
+    /**
+     * Suivi le plus proche non encore associé dans cette image, ou nouveau suivi
+     */
+    private Track updateTrack(float centerX, float centerY, float eyesDistance) {
+        Track nearest = null;
+        double nearestDistance = TRACK_MOTION * eyesDistance;
+        for (Track track : tracks) {
+            double distance = Math.hypot(centerX - track.center.x, centerY - track.center.y);
+            if (!track.seen && distance < nearestDistance) {
+                nearest = track;
+                nearestDistance = distance;
+            }
+        }
+        if (nearest == null) {
+            nearest = new Track();
+            tracks.add(nearest);
+        }
+
+        Track track = nearest;
+        boolean steady = track.eyesDistance > 0
+                && Math.hypot(centerX - track.center.x, centerY - track.center.y) < STABLE_MOTION * eyesDistance
+                && Math.abs(eyesDistance - track.eyesDistance) < STABLE_SCALE_CHANGE * track.eyesDistance;
+        if (!steady) {
+            // Nouveau visage ou mouvement : la confirmation repart de zéro
+            track.stableFrames = 0;
+            if (!track.done) {
+                track.candidateEmail = null;
+                track.confirmations = 0;
+            }
+        }
+        track.stableFrames++;
+        track.center.set(centerX, centerY);
+        track.eyesDistance = eyesDistance;
+        track.seen = true;
+        return track;
+    }
+
+    private void removeUnseenTracks() {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            if (!tracks.get(i).seen) {
+                tracks.remove(i);
+            }
+        }
+    }
+
+    private void cropFace(Bitmap frame, Track track, int slot) {
+        if (faceBitmaps[slot] == null) {
+            int size = embedder.getInputSize();
+            faceBitmaps[slot] = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            faceCanvases[slot] = new Canvas(faceBitmaps[slot]);
+        }
+        faceBox(track.center.x, track.center.y, track.eyesDistance, frame.getWidth(), frame.getHeight(), faceSource);
+        faceCanvases[slot].drawBitmap(frame, faceSource, faceTarget, scalePaint);
+    }
+
+    /**
+     * Cadre carré du visage dans l'image, à partir du point entre les yeux
+     */
+    static void faceBox(float centerX, float centerY, float eyesDistance, int width, int height, Rect box) {
+        float half = FACE_BOX_SCALE * eyesDistance / 2;
+        float faceCenterY = centerY + FACE_CENTER_OFFSET * eyesDistance;
+        box.left = Math.max(0, Math.round(centerX - half));
+        box.top = Math.max(0, Math.round(faceCenterY - half));
+        box.right = Math.min(width, Math.round(centerX + half));
+        box.bottom = Math.min(height, Math.round(faceCenterY + half));
+    }
+
+    /**
+     * Compter une reconnaissance pour le visage suivi (email null : aucun étudiant) ; vrai quand
+     * l'étudiant atteint CONFIRMATIONS reconnaissances identiques et n'était pas encore signalé
+     */
+    private boolean confirm(Track track, String email) {
+        if (email == null) {
+            track.candidateEmail = null;
+            track.confirmations = 0;
+            return false;
+        }
+        if (presentEmails.contains(email)) {
+            // Déjà pointé : inutile de recalculer l'empreinte de ce visage
+            track.done = true;
+            return false;
+        }
+        if (email.equals(track.candidateEmail)) {
+            track.confirmations++;
+        } else {
+            track.candidateEmail = email;
+            track.confirmations = 1;
+        }
+        if (track.confirmations < CONFIRMATIONS) {
+            return false;
+        }
+        track.done = true;
+        return presentEmails.add(email);
+    }
+
+    /**
+     * Prévenir l'écran seulement quand l'état change (pas un message par image)
+     */
+    private void notifyFaceState(int faceCount, boolean stable) {
+        if (faceCount != lastFaceCount || stable != lastStable) {
+            lastFaceCount = faceCount;
+            lastStable = stable;
+            mainHandler.post(() -> listener.onFaceStateChanged(faceCount, stable));
+        }
+    }
+
+    private static long record(LatencyHistogram histogram, long stageStart) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        histogram.recordNanos(now - stageStart);
+        return now;
+    }
+
+    private void logLatencies() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{conversionLatency, detectionLatency,
+                embeddingLatency, matchingLatency, frameLatency}) {
+            Log.d(TAG, histogram.summary());
+            histogram.reset();
+        }
+        long now = SystemClock.elapsedRealtimeNanos();
+        double elapsedSeconds = (now - reportStart) / 1e9;
+        Log.d(TAG, String.format(Locale.US, "débit: %d visages analysés, %.1f visages/s (%.1f visages/s de calcul)",
+                recognizedFaces, recognizedFaces / elapsedSeconds,
+                recognitionNanos > 0 ? recognizedFaces / (recognitionNanos / 1e9) : 0.0));
+        recognizedFaces = 0;
+        recognitionNanos = 0;
+        reportStart = now;
+    }
+}
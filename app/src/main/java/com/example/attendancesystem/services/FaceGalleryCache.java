@@ -0,0 +1,102 @@
+package com.example.attendancesystem.services;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.attendancesystem.models.Session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Galeries de reconnaissance faciale des dernières séances, gardées en mémoire (LRU borné
+ * en octets) : démarrer une séance ou rouvrir la reconnaissance ne relit pas les empreintes.
+ * Une galerie est identifiée par la séance et sa liste d'inscrits ; un chargement en cours
+ * est partagé entre les demandes. À utiliser depuis le thread principal.
+ */
+class FaceGalleryCache {
+    private static final String TAG = "FaceGalleryCache";
+
+    // Environ 4 galeries de 1000 empreintes de dimension 512
+    private static final int MAX_BYTES = 8 * 1024 * 1024;
+
+    interface Loader {
+        void load(Session session, FirebaseManager.DataCallback<FaceEmbeddingMatcher> callback);
+    }
+
+    private final Loader loader;
+    private final Map<String, List<FirebaseManager.DataCallback<FaceEmbeddingMatcher>>> pendingLoads = new HashMap<>();
+    private final LruCache<String, FaceEmbeddingMatcher> galleries = new LruCache<String, FaceEmbeddingMatcher>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, FaceEmbeddingMatcher matcher) {
+            return (int) Math.min(Integer.MAX_VALUE, matcher.getMemoryBytes());
+        }
+    };
+
+    FaceGalleryCache(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Galerie de la séance : immédiate si elle est en cache, sinon chargée
+     */
+    void get(Session session, FirebaseManager.DataCallback<FaceEmbeddingMatcher> callback) {
+        String key = keyOf(session);
+        FaceEmbeddingMatcher cached = galleries.get(key);
+        if (cached != null) {
+            callback.onSuccess(cached);
+            return;
+        }
+
+        List<FirebaseManager.DataCallback<FaceEmbeddingMatcher>> waiting = pendingLoads.get(key);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pendingLoads.put(key, waiting);
+
+        loader.load(session, new FirebaseManager.DataCallback<FaceEmbeddingMatcher>() {
+            @Override
+            public void onSuccess(FaceEmbeddingMatcher matcher) {
+                galleries.put(key, matcher);
+                Log.d(TAG, "Galerie " + session.getSessionId() + " en cache: " + matcher.size()
+                        + " empreintes, " + matcher.getMemoryBytes() / 1024 + " Ko");
+                for (FirebaseManager.DataCallback<FaceEmbeddingMatcher> waitingCallback : pendingLoads.remove(key)) {
+                    waitingCallback.onSuccess(matcher);
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                for (FirebaseManager.DataCallback<FaceEmbeddingMatcher> waitingCallback : pendingLoads.remove(key)) {
+                    waitingCallback.onFailure(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Charger la galerie en arrière-plan, sans attendre le résultat
+     */
+    void preload(Session session) {
+        get(session, new FirebaseManager.DataCallback<FaceEmbeddingMatcher>() {
+            @Override
+            public void onSuccess(FaceEmbeddingMatcher matcher) {
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.w(TAG, "Préchargement impossible pour " + session.getSessionId() + ": " + error);
+            }
+        });
+    }
+
+    private static String keyOf(Session session) {
+        List<String> enrolled = session.getEnrolledStudentEmails();
+        return session.getSessionId() + "|" + (enrolled != null ? enrolled.hashCode() : 0);
+    }
+}
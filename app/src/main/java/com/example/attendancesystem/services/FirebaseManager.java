@@ -2,9 +2,13 @@ package com.example.attendancesystem.services;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
 
 import com.example.attendancesystem.models.Course;
 import com.example.attendancesystem.models.Field;
@@ -14,33 +18,52 @@ import com.example.attendancesystem.models.Student;
 import com.example.attendancesystem.models.Teacher;
 import com.example.attendancesystem.models.Admin;
 import com.example.attendancesystem.models.Attendance;
+import com.example.attendancesystem.models.AttendanceRollup;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FirebaseManager {
     private static final String TAG = "FirebaseManager";
@@ -50,6 +73,34 @@ public class FirebaseManager {
     private FirebaseFirestore db;
     private FirebaseStorage storage;
 
+    // File d'écriture groupée des présences
+    private AttendanceBatchWriter attendanceBatchWriter;
+    private LiveSessionQueries liveSessionQueries;
+    private CollectionSync collectionSync;
+    // Écritures de présences, sessions et justifications, journal des bilans d'assiduité
+    private WriteOutbox writeOutbox;
+    // Galeries de reconnaissance faciale des séances récentes
+    private final FaceGalleryCache faceGalleries = new FaceGalleryCache(this::loadSessionFaceGallery);
+    // Index de toutes les empreintes (terminaux non rattachés à une séance), ouvert au premier usage
+    private FaceEmbeddingIndex faceIndex;
+    // Bilans d'assiduité en cours de reconstruction depuis l'historique
+    private final Set<String> rollupBackfills = ConcurrentHashMap.newKeySet();
+
+    // Conversion des résultats de requêtes hors du thread principal
+    private static final int MAPPING_THREADS = 2;
+    private final ExecutorService mappingExecutor = Executors.newFixedThreadPool(MAPPING_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Taille du cache local persistant de Firestore
+    private static final long LOCAL_CACHE_SIZE_BYTES = 100L * 1024 * 1024;
+    private static final String OUTBOX_JOURNAL_FILE = "write_outbox.jsonl";
+    private static final String FACE_INDEX_FILE = "face_index.bin";
+    // Synchronisation de l'index : profils relus en deçà du watermark (horodatages égaux ou
+    // écrits avec l'horloge d'un autre appareil) ; les relire ne change pas l'index
+    private static final long FACE_INDEX_SKEW_MARGIN_MS = 10 * 60 * 1000;
+    // Nombre maximal de valeurs d'un filtre whereIn
+    private static final int FIRESTORE_IN_LIMIT = 30;
+
     // Collections Firestore selon la nouvelle architecture
     private static final String STUDENTS_COLLECTION = "students";
     private static final String FIELDS_COLLECTION = "fields";
@@ -60,6 +111,9 @@ public class FirebaseManager {
     private static final String SESSIONS_COLLECTION = "sessions";
     private static final String JUSTIFICATIONS_COLLECTION = "justifications";
     private static final String REPORTS_COLLECTION = "reports";
+    private static final String ATTENDANCE_ROLLUPS_COLLECTION = "attendanceRollups";
+    // Traces des comptes étudiants supprimés (email, lastUpdatedAt), lues par getSchoolFaceIndex
+    private static final String DELETED_STUDENTS_COLLECTION = "deletedStudents";
 
     // Singleton pattern
     private static FirebaseManager instance;
@@ -88,7 +142,32 @@ public class FirebaseManager {
     private FirebaseManager() {
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
+        configureLocalCache();
         storage = FirebaseStorage.getInstance();
+        attendanceBatchWriter = new AttendanceBatchWriter(db, ATTENDANCE_COLLECTION);
+        liveSessionQueries = new LiveSessionQueries(db, SESSIONS_COLLECTION);
+        collectionSync = new CollectionSync(db);
+        writeOutbox = new WriteOutbox(db,
+                new File(FirebaseApp.getInstance().getApplicationContext().getFilesDir(), OUTBOX_JOURNAL_FILE),
+                ATTENDANCE_ROLLUPS_COLLECTION);
+    }
+
+    /**
+     * Cache local persistant (doit être configuré avant toute lecture ou écriture) :
+     * les lectures synchronisées sont servies par ce cache et les écritures y sont
+     * appliquées immédiatement, puis envoyées au serveur dès que le réseau est disponible.
+     */
+    private void configureLocalCache() {
+        try {
+            db.setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                    .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                            .setSizeBytes(LOCAL_CACHE_SIZE_BYTES)
+                            .build())
+                    .build());
+        } catch (IllegalStateException e) {
+            // Firestore déjà utilisé avant FirebaseManager : réglages par défaut (cache persistant)
+            Log.w(TAG, "Réglages du cache Firestore non appliqués", e);
+        }
     }
 
     public static synchronized FirebaseManager getInstance() {
@@ -176,6 +255,84 @@ public class FirebaseManager {
 
     // =================== INTERFACE GÉNÉRIQUE POUR LES CALLBACKS ===================
 
+    /**
+     * Page de résultats avec le curseur à passer pour obtenir la suivante
+     */
+    public static class Page<T> {
+        private final List<T> items;
+        private final DocumentSnapshot cursor;
+        private final boolean hasMore;
+
+        public Page(List<T> items, DocumentSnapshot cursor, boolean hasMore) {
+            this.items = items;
+            this.cursor = cursor;
+            this.hasMore = hasMore;
+        }
+
+        public List<T> getItems() { return items; }
+        public DocumentSnapshot getCursor() { return cursor; }
+        public boolean hasMore() { return hasMore; }
+    }
+
+    private interface DocumentMapper<T> {
+        T map(DocumentSnapshot document);
+    }
+
+    private interface SnapshotMapper<R> {
+        R map(QuerySnapshot snapshot);
+    }
+
+    /**
+     * Livrer le résultat d'une requête : la conversion des documents (et tout filtrage ou tri)
+     * s'exécute sur le pool de conversion, seul le résultat final est posté sur le thread principal.
+     * Les temps de conversion et de livraison sur le thread principal sont journalisés.
+     */
+    private <R> void deliverInBackground(Task<QuerySnapshot> query, String label, String errorPrefix,
+                                         SnapshotMapper<R> mapper, DataCallback<R> callback) {
+        query.addOnCompleteListener(mappingExecutor, task -> {
+            if (isCancelled(callback)) {
+                Log.d(TAG, label + ": écran détruit, conversion ignorée");
+                return;
+            }
+            if (!task.isSuccessful()) {
+                Exception e = task.getException();
+                Log.w(TAG, label + ": échec de la requête", e);
+                String error = errorPrefix + (e != null ? e.getMessage() : "Unknown error");
+                mainHandler.post(() -> callback.onFailure(error));
+                return;
+            }
+            long start = SystemClock.elapsedRealtime();
+            R result = mapper.map(task.getResult());
+            long mappingMs = SystemClock.elapsedRealtime() - start;
+            int documents = task.getResult().size();
+            mainHandler.post(() -> {
+                long deliveryStart = SystemClock.elapsedRealtime();
+                callback.onSuccess(result);
+                Log.d(TAG, label + ": " + documents + " documents convertis en " + mappingMs
+                        + " ms hors du thread principal, livrés en "
+                        + (SystemClock.elapsedRealtime() - deliveryStart) + " ms sur le thread principal");
+            });
+        });
+    }
+
+    /**
+     * Convertir les documents d'un résultat (les documents illisibles ou convertis en null sont ignorés)
+     */
+    private static <T> List<T> mapDocuments(List<DocumentSnapshot> documents, DocumentMapper<T> mapper) {
+        List<T> items = new ArrayList<>(documents.size());
+        for (DocumentSnapshot document : documents) {
+            try {
+                T item = mapper.map(document);
+                if (item != null) {
+                    items.add(item);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error deserializing document: " + document.getId(), e);
+            }
+        }
+        return items;
+    }
+
     /**
      * Interface pour les callbacks de données
      */
@@ -184,6 +341,57 @@ public class FirebaseManager {
         void onFailure(String error);
     }
 
+    /**
+     * Rattacher un callback au cycle de vie d'un écran : à sa destruction, le résultat
+     * est ignoré et l'activité n'est plus retenue par la requête en cours.
+     * À appeler sur le thread principal, ex. getStudentByEmail(email, FirebaseManager.bind(this, callback))
+     */
+    public static <T> DataCallback<T> bind(LifecycleOwner owner, DataCallback<T> callback) {
+        return new LifecycleBoundCallback<>(owner, callback);
+    }
+
+    private static boolean isCancelled(DataCallback<?> callback) {
+        return callback instanceof LifecycleBoundCallback && !((LifecycleBoundCallback<?>) callback).isActive();
+    }
+
+    /**
+     * Appel d'une méthode à callback de FirebaseManager, ex. cb -> manager.getAllFields(cb)
+     */
+    public interface Operation<T> {
+        void run(DataCallback<T> callback);
+    }
+
+    /**
+     * Échec d'une opération lancée via asTask() (message transmis à onFailure)
+     */
+    public static class OperationException extends Exception {
+        public OperationException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Version Task de n'importe quelle opération à callback : les chargements indépendants
+     * sont lancés ensemble puis combinés (Tasks.whenAllSuccess, onSuccessTask...),
+     * le temps d'attente devient celui de la requête la plus lente.
+     * Les listeners ajoutés sans exécuteur s'exécutent sur le thread principal.
+     */
+    public static <T> Task<T> asTask(Operation<T> operation) {
+        TaskCompletionSource<T> source = new TaskCompletionSource<>();
+        operation.run(new DataCallback<T>() {
+            @Override
+            public void onSuccess(T data) {
+                source.trySetResult(data);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                source.trySetException(new OperationException(error));
+            }
+        });
+        return source.getTask();
+    }
+
     // =================== GESTION DES ÉTUDIANTS ===================
 
     /**
@@ -255,9 +463,7 @@ public class FirebaseManager {
      * Récupérer un enseignant par son email
      */
     public void getTeacherByEmail(String email, DataCallback<Teacher> callback) {
-        db.collection(TEACHERS_COLLECTION)
-                .document(email)
-                .get()
+        collectionSync.readDocument(db.collection(TEACHERS_COLLECTION).document(email))
                 .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
                     @Override
                     public void onComplete(@NonNull Task<DocumentSnapshot> task) {
@@ -326,9 +532,7 @@ public class FirebaseManager {
      * Récupérer un administrateur par son email
      */
     public void getAdminByEmail(String email, DataCallback<Admin> callback) {
-        db.collection(ADMINS_COLLECTION)
-                .document(email)
-                .get()
+        collectionSync.readDocument(db.collection(ADMINS_COLLECTION).document(email))
                 .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
                     @Override
                     public void onComplete(@NonNull Task<DocumentSnapshot> task) {
@@ -371,42 +575,33 @@ public class FirebaseManager {
     // =================== DÉTECTION AUTOMATIQUE DU TYPE D'UTILISATEUR ===================
 
     /**
-     * Déterminer le type d'utilisateur par email et récupérer ses données
+     * Déterminer le type d'utilisateur par email et récupérer ses données.
+     * Les trois collections sont interrogées en parallèle ; une fois toutes les réponses reçues,
+     * la première trouvée dans l'ordre étudiants, enseignants, administrateurs l'emporte
+     * (même priorité que les recherches successives, quel que soit l'ordre des réponses).
      */
     public void getUserByEmail(String email, DataCallback<Object> callback) {
-        // Essayer d'abord dans la collection students
-        getStudentByEmail(email, new DataCallback<Student>() {
-            @Override
-            public void onSuccess(Student student) {
-                callback.onSuccess(student);
-            }
-
-            @Override
-            public void onFailure(String error) {
-                // Si pas trouvé dans students, essayer teachers
-                getTeacherByEmail(email, new DataCallback<Teacher>() {
-                    @Override
-                    public void onSuccess(Teacher teacher) {
-                        callback.onSuccess(teacher);
-                    }
-
-                    @Override
-                    public void onFailure(String error) {
-                        // Si pas trouvé dans teachers, essayer admins
-                        getAdminByEmail(email, new DataCallback<Admin>() {
-                            @Override
-                            public void onSuccess(Admin admin) {
-                                callback.onSuccess(admin);
-                            }
+        String[] collections = {STUDENTS_COLLECTION, TEACHERS_COLLECTION, ADMINS_COLLECTION};
+        Class<?>[] types = {Student.class, Teacher.class, Admin.class};
+        List<Task<DocumentSnapshot>> lookups = new ArrayList<>(collections.length);
+        for (String collection : collections) {
+            lookups.add(collectionSync.readDocument(db.collection(collection).document(email)));
+        }
 
-                            @Override
-                            public void onFailure(String error) {
-                                callback.onFailure("Utilisateur non trouvé dans aucune collection");
-                            }
-                        });
-                    }
-                });
+        Tasks.whenAllComplete(lookups).addOnCompleteListener(done -> {
+            for (int i = 0; i < lookups.size(); i++) {
+                Task<DocumentSnapshot> lookup = lookups.get(i);
+                if (!lookup.isSuccessful() || !lookup.getResult().exists()) {
+                    continue;
+                }
+                Object user = lookup.getResult().toObject(types[i]);
+                if (user != null) {
+                    Log.d(TAG, "Utilisateur " + email + " trouvé dans " + collections[i]);
+                    callback.onSuccess(user);
+                    return;
+                }
             }
+            callback.onFailure("Utilisateur non trouvé dans aucune collection");
         });
     }
 
@@ -438,79 +633,68 @@ public class FirebaseManager {
     // =================== GESTION DES PRÉSENCES ===================
 
     /**
-     * Enregistrer une présence
+     * Enregistrer une présence (ID généré côté client, une seule écriture).
+     * Visible tout de suite dans le cache local, même hors connexion : onSuccess est appelé dès
+     * l'écriture locale, onFailure ensuite si le serveur la refuse.
      */
     public void saveAttendance(Attendance attendance, DataCallback<String> callback) {
-        db.collection(ATTENDANCE_COLLECTION)
-                .add(attendance.toMap())
-                .addOnSuccessListener(documentReference -> {
-                    String attendanceId = documentReference.getId();
-                    attendance.setAttendanceId(attendanceId);
+        DocumentReference documentReference = db.collection(ATTENDANCE_COLLECTION).document();
+        String attendanceId = documentReference.getId();
+        attendance.setAttendanceId(attendanceId);
 
-                    // Mettre à jour avec l'ID généré
-                    documentReference.update("attendanceId", attendanceId);
+        writeOutbox.set(documentReference, attendance.toMap(), new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void data) {
+                Log.d(TAG, "Présence enregistrée: " + attendanceId);
+                callback.onSuccess(attendanceId);
+            }
 
-                    Log.d(TAG, "Présence enregistrée: " + attendanceId);
-                    callback.onSuccess(attendanceId);
-                })
-                .addOnFailureListener(e -> {
-                    Log.w(TAG, "Erreur enregistrement présence", e);
-                    callback.onFailure(e.getMessage());
-                });
+            @Override
+            public void onFailure(String error) {
+                callback.onFailure(error);
+            }
+        });
+    }
+
+    /**
+     * Ajouter une présence à la file d'écriture groupée (pointages en rafale).
+     * Retourne l'ID attribué ; le callback est appelé à la validation du lot.
+     */
+    public String queueAttendance(Attendance attendance, DataCallback<String> callback) {
+        return attendanceBatchWriter.enqueue(attendance, callback);
+    }
+
+    /**
+     * Envoyer immédiatement les présences en attente dans la file
+     */
+    public void flushAttendanceQueue() {
+        attendanceBatchWriter.flush();
     }
 
     /**
      * Récupérer l'historique de présence d'un étudiant
      */
     public void getStudentAttendanceHistory(String studentEmail, DataCallback<List<Attendance>> callback) {
-        db.collection(ATTENDANCE_COLLECTION)
-                .whereEqualTo("studentEmail", studentEmail)
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        if (task.isSuccessful()) {
-                            List<Attendance> attendanceList = new ArrayList<>();
-                            for (DocumentSnapshot document : task.getResult()) {
-                                Attendance attendance = document.toObject(Attendance.class);
-                                if (attendance != null) {
-                                    attendance.setAttendanceId(document.getId());
-                                    attendanceList.add(attendance);
-                                }
-                            }
-                            Log.d(TAG, "Historique récupéré: " + attendanceList.size() + " entrées");
-                            callback.onSuccess(attendanceList);
-                        } else {
-                            callback.onFailure(task.getException().getMessage());
-                        }
-                    }
-                });
+        deliverInBackground(db.collection(ATTENDANCE_COLLECTION)
+                        .whereEqualTo("studentEmail", studentEmail)
+                        .orderBy("timestamp", Query.Direction.DESCENDING)
+                        .get(),
+                "getStudentAttendanceHistory", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), Attendance::fromSnapshot),
+                callback);
     }
 
     /**
      * Récupérer les présences d'un cours
      */
     public void getCourseAttendance(String courseId, DataCallback<List<Attendance>> callback) {
-        db.collection(ATTENDANCE_COLLECTION)
-                .whereEqualTo("courseId", courseId)
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Attendance> attendanceList = new ArrayList<>();
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Attendance attendance = document.toObject(Attendance.class);
-                            if (attendance != null) {
-                                attendance.setAttendanceId(document.getId());
-                                attendanceList.add(attendance);
-                            }
-                        }
-                        callback.onSuccess(attendanceList);
-                    } else {
-                        callback.onFailure(task.getException().getMessage());
-                    }
-                });
+        deliverInBackground(db.collection(ATTENDANCE_COLLECTION)
+                        .whereEqualTo("courseId", courseId)
+                        .orderBy("timestamp", Query.Direction.DESCENDING)
+                        .get(),
+                "getCourseAttendance", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), Attendance::fromSnapshot),
+                callback);
     }
 
     // =================== GESTION DES FICHIERS AVEC GOOGLE DRIVE ===================
@@ -522,6 +706,9 @@ public class FirebaseManager {
         void onProgress(int progress);
         void onSuccess(String fileUrl);
         void onFailure(String error);
+
+        /** Upload annulé (un upload plus récent pour le même utilisateur n'en déclenche pas) */
+        default void onCancelled() {}
     }
 
     /**
@@ -538,19 +725,36 @@ public class FirebaseManager {
             return;
         }
 
-        driveService.uploadProfilePhoto(userEmail, userType, imageUri,
+        loadProfileFiles(driveService, userEmail, userType, knownFiles ->
+                driveService.uploadProfilePhoto(userEmail, userType, imageUri, knownFiles,
                 new GoogleDriveService.UploadCallback() {
+                    private String thumbnailUrl;
+                    private GoogleDriveService.ProfileFiles files;
+
                     @Override
                     public void onProgress(int progress) {
                         callback.onProgress(progress);
                     }
 
+                    @Override
+                    public void onThumbnailUploaded(String thumbnailUrl) {
+                        this.thumbnailUrl = thumbnailUrl;
+                    }
+
+                    @Override
+                    public void onFilesStored(GoogleDriveService.ProfileFiles files) {
+                        this.files = files;
+                    }
+
                     @Override
                     public void onSuccess(String fileUrl) {
-                        // Mettre à jour le profil utilisateur avec l'URL de la photo
-                        updateUserProfileImage(userEmail, userType, fileUrl, new DataCallback<Void>() {
+                        // Mettre à jour le profil utilisateur avec l'URL de la photo et de la miniature
+                        updateUserProfileImage(userEmail, userType, fileUrl, thumbnailUrl, files, new DataCallback<Void>() {
                             @Override
                             public void onSuccess(Void aVoid) {
+                                if ("student".equals(userType) && FaceEmbedders.isAvailable()) {
+                                    updateFaceEmbedding(userEmail, imageUri, context.getApplicationContext());
+                                }
                                 callback.onSuccess(fileUrl);
                             }
 
@@ -565,22 +769,103 @@ public class FirebaseManager {
                     public void onFailure(String error) {
                         callback.onFailure(error);
                     }
+
+                    @Override
+                    public void onCancelled() {
+                        callback.onCancelled();
+                    }
+                }));
+    }
+
+    /**
+     * Empreinte faciale de l'étudiant recalculée depuis sa nouvelle photo avec le modèle
+     * enregistré (FaceEmbedders), si un visage est détecté ; l'empreinte précédente est
+     * conservée sinon. lastUpdatedAt à l'heure du serveur : prise en compte par getSchoolFaceIndex.
+     */
+    private void updateFaceEmbedding(String studentEmail, Uri imageUri, Context context) {
+        mappingExecutor.execute(() -> {
+            float[] embedding = ProfileFaceEmbedding.compute(context, imageUri);
+            if (embedding == null) {
+                return;
+            }
+            List<Double> values = new ArrayList<>(embedding.length);
+            for (float value : embedding) {
+                values.add((double) value);
+            }
+            db.collection(STUDENTS_COLLECTION).document(studentEmail)
+                    .update("faceEmbedding", values, "lastUpdatedAt", FieldValue.serverTimestamp())
+                    .addOnSuccessListener(aVoid -> Log.d(TAG, "Empreinte faciale mise à jour pour " + studentEmail))
+                    .addOnFailureListener(e -> Log.w(TAG, "Erreur mise à jour empreinte faciale", e));
+        });
+    }
+
+    /**
+     * Identifiants Drive des fichiers de profil : cache local de GoogleDriveService,
+     * sinon champs du document utilisateur (null si aucun n'est connu)
+     */
+    private void loadProfileFiles(GoogleDriveService driveService, String userEmail, String userType,
+                                  ProfileFilesCallback callback) {
+        GoogleDriveService.ProfileFiles cached = driveService.getCachedProfileFiles(userEmail, userType);
+        String collection = getCollectionForUserType(userType);
+        if (cached != null || collection == null) {
+            callback.onLoaded(cached);
+            return;
+        }
+
+        db.collection(collection).document(userEmail).get()
+                .addOnSuccessListener(document -> {
+                    String photoFileId = document.getString("profileImageFileId");
+                    if (photoFileId == null || photoFileId.isEmpty()) {
+                        callback.onLoaded(null);
+                    } else {
+                        callback.onLoaded(new GoogleDriveService.ProfileFiles(
+                                photoFileId, document.getString("profileThumbnailFileId"),
+                                document.getString("profileImageRevision"),
+                                document.getString("profileImageHash")));
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Fichiers de profil inconnus pour " + userEmail, e);
+                    callback.onLoaded(null);
                 });
     }
 
+    private interface ProfileFilesCallback {
+        void onLoaded(GoogleDriveService.ProfileFiles files);
+    }
+
     /**
-     * Mettre à jour l'URL de l'image de profil dans Firestore
+     * Mettre à jour l'URL de l'image de profil (et de sa miniature) dans Firestore,
+     * avec les identifiants des fichiers Drive (files == null : identifiants effacés)
      */
-    private void updateUserProfileImage(String userEmail, String userType, String imageUrl, DataCallback<Void> callback) {
+    private void updateUserProfileImage(String userEmail, String userType, String imageUrl,
+                                        String thumbnailUrl, GoogleDriveService.ProfileFiles files,
+                                        DataCallback<Void> callback) {
         String collection = getCollectionForUserType(userType);
         if (collection == null) {
             callback.onFailure("Type d'utilisateur non reconnu: " + userType);
             return;
         }
 
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("profileImageUrl", imageUrl);
+        updates.put("profileThumbnailUrl", thumbnailUrl != null ? thumbnailUrl : "");
+        updates.put("profileImageFileId", files != null ? files.getPhotoFileId() : "");
+        updates.put("profileThumbnailFileId", files != null ? files.getThumbnailFileId() : "");
+        // Révision : invalide les avatars en cache (l'URL ne change pas quand la photo est remplacée).
+        // Révision inconnue (photo inchangée, fichiers lus dans un ancien profil) : celle du profil est conservée.
+        if (files == null) {
+            updates.put("profileImageRevision", String.valueOf(System.currentTimeMillis()));
+        } else if (files.getRevision() != null) {
+            updates.put("profileImageRevision", files.getRevision());
+        }
+        updates.put("profileImageHash", files != null && files.getContentHash() != null
+                ? files.getContentHash() : "");
+        updates.put("lastUpdatedAt", FieldValue.serverTimestamp());
+
         db.collection(collection)
                 .document(userEmail)
-                .update("profileImageUrl", imageUrl, "lastUpdatedAt", com.google.firebase.Timestamp.now())
+                .update(updates)
                 .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "URL de l'image mise à jour pour " + userEmail);
                     callback.onSuccess(null);
@@ -616,18 +901,20 @@ public class FirebaseManager {
             return;
         }
 
-        driveService.deleteProfilePhoto(userEmail, userType, new GoogleDriveService.DriveCallback<Void>() {
+        loadProfileFiles(driveService, userEmail, userType, knownFiles ->
+                driveService.deleteProfilePhoto(userEmail, userType, knownFiles,
+                        new GoogleDriveService.DriveCallback<Void>() {
             @Override
             public void onSuccess(Void result) {
                 // Mettre à jour le profil utilisateur (vider l'URL)
-                updateUserProfileImage(userEmail, userType, "", callback);
+                updateUserProfileImage(userEmail, userType, "", "", null, callback);
             }
 
             @Override
             public void onFailure(String error) {
                 callback.onFailure(error);
             }
-        });
+        }));
     }
 
     public void saveSession(Session session, DataCallback<String> callback) {
@@ -636,6 +923,7 @@ public class FirebaseManager {
                 .addOnSuccessListener(documentReference -> {
                     String sessionId = documentReference.getId();
                     session.setSessionId(sessionId);
+                    session.beginChangeTracking();
 
                     // Mettre à jour avec l'ID généré
                     documentReference.update("sessionId", sessionId);
@@ -650,7 +938,12 @@ public class FirebaseManager {
     }
 
     /**
-     * Mettre à jour une session
+     * Mettre à jour une session (appliquée tout de suite au cache local, utilisable hors connexion :
+     * onSuccess dès l'écriture locale, onFailure ensuite si le serveur la refuse).
+     * Si la session suit ses modifications, seules les différences des listes sont envoyées
+     * (arrayUnion/arrayRemove, statistiques recalculées à la lecture), sinon l'état complet.
+     * À la clôture, la session est ensuite ajoutée au bilan de chaque étudiant inscrit ;
+     * les corrections de présence faites après la clôture y sont reportées de la même façon.
      */
     public void updateSession(Session session, DataCallback<Void> callback) {
         if (session.getSessionId() == null) {
@@ -658,17 +951,65 @@ public class FirebaseManager {
             return;
         }
 
-        db.collection(SESSIONS_COLLECTION)
-                .document(session.getSessionId())
-                .update(session.toMap())
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Session mise à jour: " + session.getSessionId());
-                    callback.onSuccess(null);
-                })
-                .addOnFailureListener(e -> {
-                    Log.w(TAG, "Erreur mise à jour session", e);
-                    callback.onFailure(e.getMessage());
-                });
+        boolean isDelta = session.canWriteDelta();
+        Map<String, Object> delta = isDelta ? session.toDeltaMap() : null;
+        List<String> rollupStudents = session.takeRollupStudents();
+        boolean withRollup = !rollupStudents.isEmpty();
+        // Les modifications suivantes seront comptées à partir de cet envoi
+        session.beginChangeTracking();
+
+        DocumentReference sessionRef = db.collection(SESSIONS_COLLECTION).document(session.getSessionId());
+        writeOutbox.update(sessionRef, isDelta ? delta : session.toUpdateMap(), new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void data) {
+                Log.d(TAG, "Session mise à jour" + (isDelta ? " (delta)" : "") + ": " + session.getSessionId());
+                callback.onSuccess(null);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                callback.onFailure(error);
+            }
+        });
+        if (withRollup) {
+            writeOutbox.rollup(session.getSessionId(), session.getCourseId(), getRollupDate(session),
+                    getRollupStatuses(session, rollupStudents));
+        }
+    }
+
+    private static Date getRollupDate(Session session) {
+        Timestamp sessionTime = session.getEndTime() != null ? session.getEndTime() : session.getStartTime();
+        return sessionTime != null ? sessionTime.toDate() : new Date();
+    }
+
+    /**
+     * Statut des étudiants donnés pour le bilan d'assiduité
+     */
+    private static Map<String, String> getRollupStatuses(Session session, List<String> studentEmails) {
+        Map<String, String> statuses = new HashMap<>();
+        for (String studentEmail : studentEmails) {
+            statuses.put(studentEmail, session.isStudentPresent(studentEmail)
+                    ? AttendanceRollup.PRESENT : AttendanceRollup.ABSENT);
+        }
+        return statuses;
+    }
+
+    /**
+     * Convertir un document en Session et démarrer le suivi de ses modifications
+     */
+    static Session toSession(DocumentSnapshot document) {
+        Session session = Session.fromSnapshot(document);
+        if (session != null) {
+            session.beginChangeTracking();
+        }
+        return session;
+    }
+
+    /**
+     * Sessions en direct partagées par les tableaux de bord (un listener par requête)
+     */
+    public LiveSessionQueries getLiveSessions() {
+        return liveSessionQueries;
     }
 
     // Add these NEW methods to your FirebaseManager.java (replace the existing session methods)
@@ -690,31 +1031,17 @@ public class FirebaseManager {
         Timestamp startOfNextDay = new Timestamp(calendar.getTime());
 
         // Rechercher les sessions pour ce département, filière et année
-        db.collection(SESSIONS_COLLECTION)
-                .whereEqualTo("department", department)
-                .whereEqualTo("field", field)
-                .whereArrayContains("targetYears", year)
-                .whereGreaterThanOrEqualTo("startTime", startOfDay)
-                .whereLessThan("startTime", startOfNextDay)
-                .orderBy("startTime")
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Session> sessions = new ArrayList<>();
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                                sessions.add(session);
-                            }
-                        }
-                        Log.d(TAG, "Found " + sessions.size() + " sessions today for " + field + " " + year);
-                        callback.onSuccess(sessions);
-                    } else {
-                        Log.e(TAG, "Error getting today's sessions", task.getException());
-                        callback.onFailure(task.getException().getMessage());
-                    }
-                });
+        deliverInBackground(db.collection(SESSIONS_COLLECTION)
+                        .whereEqualTo("department", department)
+                        .whereEqualTo("field", field)
+                        .whereArrayContains("targetYears", year)
+                        .whereGreaterThanOrEqualTo("startTime", startOfDay)
+                        .whereLessThan("startTime", startOfNextDay)
+                        .orderBy("startTime")
+                        .get(),
+                "getTodaySessionsForStudent", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), FirebaseManager::toSession),
+                callback);
     }
 
     /**
@@ -737,10 +1064,7 @@ public class FirebaseManager {
                         QuerySnapshot querySnapshot = task.getResult();
                         if (!querySnapshot.isEmpty()) {
                             DocumentSnapshot document = querySnapshot.getDocuments().get(0);
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                            }
+                            Session session = toSession(document);
                             Log.d(TAG, "Next session found: " + (session != null ? session.getCourseName() : "null"));
                             callback.onSuccess(session);
                         } else {
@@ -768,29 +1092,15 @@ public class FirebaseManager {
         calendar.add(Calendar.DAY_OF_MONTH, 1);
         Timestamp startOfNextDay = new Timestamp(calendar.getTime());
 
-        db.collection(SESSIONS_COLLECTION)
-                .whereEqualTo("teacherEmail", teacherEmail)
-                .whereGreaterThanOrEqualTo("startTime", startOfDay)
-                .whereLessThan("startTime", startOfNextDay)
-                .orderBy("startTime")
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Session> sessions = new ArrayList<>();
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                                sessions.add(session);
-                            }
-                        }
-                        Log.d(TAG, "Found " + sessions.size() + " sessions today for teacher: " + teacherEmail);
-                        callback.onSuccess(sessions);
-                    } else {
-                        Log.e(TAG, "Error getting teacher's today sessions", task.getException());
-                        callback.onFailure(task.getException().getMessage());
-                    }
-                });
+        deliverInBackground(db.collection(SESSIONS_COLLECTION)
+                        .whereEqualTo("teacherEmail", teacherEmail)
+                        .whereGreaterThanOrEqualTo("startTime", startOfDay)
+                        .whereLessThan("startTime", startOfNextDay)
+                        .orderBy("startTime")
+                        .get(),
+                "getTodaySessionsForTeacher", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), FirebaseManager::toSession),
+                callback);
     }
 
     /**
@@ -811,10 +1121,7 @@ public class FirebaseManager {
                         QuerySnapshot querySnapshot = task.getResult();
                         if (!querySnapshot.isEmpty()) {
                             DocumentSnapshot document = querySnapshot.getDocuments().get(0);
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                            }
+                            Session session = toSession(document);
                             Log.d(TAG, "Next session found for teacher: " + (session != null ? session.getCourseName() : "null"));
                             callback.onSuccess(session);
                         } else {
@@ -842,71 +1149,152 @@ public class FirebaseManager {
         calendar.add(Calendar.DAY_OF_MONTH, 1);
         Timestamp startOfNextDay = new Timestamp(calendar.getTime());
 
-        db.collection(SESSIONS_COLLECTION)
-                .whereEqualTo("teacherEmail", teacherEmail)
-                .whereEqualTo("status", "scheduled")
-                .whereGreaterThanOrEqualTo("startTime", startOfDay)
-                .whereLessThan("startTime", startOfNextDay)
-                .orderBy("startTime")
+        deliverInBackground(db.collection(SESSIONS_COLLECTION)
+                        .whereEqualTo("teacherEmail", teacherEmail)
+                        .whereEqualTo("status", "scheduled")
+                        .whereGreaterThanOrEqualTo("startTime", startOfDay)
+                        .whereLessThan("startTime", startOfNextDay)
+                        .orderBy("startTime")
+                        .get(),
+                "getTodayScheduledSessionsForTeacher", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), FirebaseManager::toSession),
+                callback);
+    }
+
+    /**
+     * Obtenir les statistiques d'assiduité d'un étudiant (par département et filière)
+     */
+    public void getStudentAttendanceStatistics(String studentEmail, String department, String field, String year, DataCallback<AttendanceStats> callback) {
+        getStatisticsFromRollup(studentEmail, callback,
+                () -> computeStatisticsFromSessions(studentEmail, department, field, year, callback));
+    }
+
+    /**
+     * Statistiques des 30 derniers jours lues dans le bilan de l'étudiant (un seul document).
+     * Tant que le bilan n'a pas été rempli avec l'historique de l'étudiant, on recalcule
+     * à partir des sessions et on lance ce rattrapage.
+     */
+    private void getStatisticsFromRollup(String studentEmail, DataCallback<AttendanceStats> callback, Runnable fallback) {
+        db.collection(ATTENDANCE_ROLLUPS_COLLECTION)
+                .document(studentEmail)
                 .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Session> sessions = new ArrayList<>();
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                                sessions.add(session);
+                .addOnSuccessListener(documentSnapshot -> {
+                    AttendanceRollup rollup = documentSnapshot.exists()
+                            ? documentSnapshot.toObject(AttendanceRollup.class) : null;
+                    if (rollup == null || !rollup.isBackfilled()) {
+                        backfillRollup(studentEmail);
+                        fallback.run();
+                        return;
+                    }
+                    int totalSessions = (int) rollup.countSince(30, AttendanceRollup.TOTAL);
+                    int attendedSessions = (int) rollup.countSince(30, AttendanceRollup.PRESENT);
+                    Log.d(TAG, "Attendance stats (bilan) for " + studentEmail + ": " + attendedSessions + "/" + totalSessions);
+                    callback.onSuccess(new AttendanceStats(totalSessions, attendedSessions));
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Bilan d'assiduité indisponible, calcul à partir des sessions", e);
+                    fallback.run();
+                });
+    }
+
+    /**
+     * Remplir une fois le bilan d'un étudiant avec son historique : sessions clôturées où il est
+     * inscrit et justifications approuvées. Les séances déjà comptées dans le bilan gardent leur
+     * statut (plus récent) ; le document est ensuite réécrit en entier et marqué backfilled
+     * (tout l'historique est compté, seules les séances récentes restent enregistrées).
+     */
+    private void backfillRollup(String studentEmail) {
+        if (!rollupBackfills.add(studentEmail)) {
+            return; // Déjà en cours
+        }
+        Task<QuerySnapshot> sessions = db.collection(SESSIONS_COLLECTION)
+                .whereArrayContains("enrolledStudentEmails", studentEmail)
+                .whereEqualTo("status", "completed")
+                .get();
+        Task<QuerySnapshot> justifications = db.collection(JUSTIFICATIONS_COLLECTION)
+                .whereEqualTo("studentEmail", studentEmail)
+                .whereEqualTo("status", "approved")
+                .get();
+        DocumentReference rollupRef = db.collection(ATTENDANCE_ROLLUPS_COLLECTION).document(studentEmail);
+
+        Tasks.whenAllSuccess(sessions, justifications)
+                .onSuccessTask(mappingExecutor, results -> {
+                    Map<String, Map<String, Object>> history = rollupHistory(studentEmail,
+                            sessions.getResult(), justifications.getResult());
+                    return db.runTransaction(transaction -> {
+                        DocumentSnapshot current = transaction.get(rollupRef);
+                        if (Boolean.TRUE.equals(current.getBoolean("backfilled"))) {
+                            return null;
+                        }
+                        Map<String, Map<String, Object>> entries = new HashMap<>(history);
+                        for (Map.Entry<String, Map<String, Object>> recorded : AttendanceRollup.sessionsIn(current).entrySet()) {
+                            Map<String, Object> fromHistory = history.get(recorded.getKey());
+                            // Statut déjà compté, sauf une absence couverte par une justification approuvée
+                            boolean justified = fromHistory != null
+                                    && AttendanceRollup.JUSTIFIED.equals(AttendanceRollup.entryStatus(fromHistory))
+                                    && AttendanceRollup.ABSENT.equals(AttendanceRollup.entryStatus(recorded.getValue()));
+                            if (!justified) {
+                                entries.put(recorded.getKey(), recorded.getValue());
                             }
                         }
-                        Log.d(TAG, "Found " + sessions.size() + " scheduled sessions today for teacher: " + teacherEmail);
-                        callback.onSuccess(sessions);
+                        transaction.set(rollupRef, AttendanceRollup.rebuild(studentEmail, entries, new Date()));
+                        return null;
+                    });
+                })
+                .addOnCompleteListener(task -> {
+                    rollupBackfills.remove(studentEmail);
+                    if (task.isSuccessful()) {
+                        Log.d(TAG, "Bilan d'assiduité rempli: " + studentEmail);
                     } else {
-                        Log.e(TAG, "Error getting teacher's scheduled sessions", task.getException());
-                        callback.onFailure(task.getException().getMessage());
+                        Log.w(TAG, "Rattrapage du bilan impossible: " + studentEmail, task.getException());
                     }
                 });
     }
 
     /**
-     * Obtenir les statistiques d'assiduité d'un étudiant (par département et filière)
+     * Entrées du bilan (sessionId -> statut, cours, jour) calculées à partir des sessions clôturées,
+     * les absences couvertes par une justification approuvée (même cours, même jour) étant justifiées
      */
-    public void getStudentAttendanceStatistics(String studentEmail, String department, String field, String year, DataCallback<AttendanceStats> callback) {
+    private static Map<String, Map<String, Object>> rollupHistory(String studentEmail, QuerySnapshot sessions,
+                                                                  QuerySnapshot justifications) {
+        Set<String> justifiedDays = new HashSet<>();
+        for (DocumentSnapshot document : justifications.getDocuments()) {
+            Justification justification = Justification.fromSnapshot(document);
+            if (justification != null && justification.getJustificationDate() != null) {
+                justifiedDays.add(justification.getCourseId() + "|"
+                        + AttendanceRollup.dayKey(justification.getJustificationDate()));
+            }
+        }
+
+        Map<String, Map<String, Object>> entries = new HashMap<>();
+        for (DocumentSnapshot document : sessions.getDocuments()) {
+            Session session = Session.fromSnapshot(document);
+            if (session == null || !session.isStudentEnrolled(studentEmail)) {
+                continue;
+            }
+            Date sessionDate = getRollupDate(session);
+            String status = session.isStudentPresent(studentEmail) ? AttendanceRollup.PRESENT
+                    : justifiedDays.contains(session.getCourseId() + "|" + AttendanceRollup.dayKey(sessionDate))
+                    ? AttendanceRollup.JUSTIFIED : AttendanceRollup.ABSENT;
+            entries.put(session.getSessionId(), AttendanceRollup.sessionEntry(session.getCourseId(), sessionDate, status));
+        }
+        return entries;
+    }
+
+    private void computeStatisticsFromSessions(String studentEmail, String department, String field, String year, DataCallback<AttendanceStats> callback) {
         // Calculer les statistiques des 30 derniers jours
         Calendar calendar = Calendar.getInstance();
         calendar.add(Calendar.DAY_OF_MONTH, -30);
         Timestamp thirtyDaysAgo = new Timestamp(calendar.getTime());
 
-        db.collection(SESSIONS_COLLECTION)
+        Query query = db.collection(SESSIONS_COLLECTION)
                 .whereEqualTo("department", department)
                 .whereEqualTo("field", field)
                 .whereArrayContains("targetYears", year)
                 .whereEqualTo("status", "completed")
-                .whereGreaterThanOrEqualTo("endTime", thirtyDaysAgo)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        int totalSessions = 0;
-                        int attendedSessions = 0;
-
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Session session = document.toObject(Session.class);
-                            if (session != null && session.getEnrolledStudentEmails().contains(studentEmail)) {
-                                totalSessions++;
-                                if (session.getPresentStudentEmails().contains(studentEmail)) {
-                                    attendedSessions++;
-                                }
-                            }
-                        }
-
-                        AttendanceStats stats = new AttendanceStats(totalSessions, attendedSessions);
-                        Log.d(TAG, "Attendance stats for " + studentEmail + ": " + attendedSessions + "/" + totalSessions);
-                        callback.onSuccess(stats);
-                    } else {
-                        Log.e(TAG, "Error getting attendance statistics", task.getException());
-                        callback.onFailure(task.getException().getMessage());
-                    }
-                });
+                .whereGreaterThanOrEqualTo("endTime", thirtyDaysAgo);
+        deliverInBackground(query.get(), "computeStatisticsFromSessions", "",
+                snapshot -> countAttendance(snapshot, studentEmail, true), callback);
     }
 
     /**
@@ -920,29 +1308,17 @@ public class FirebaseManager {
         calendar.add(Calendar.DAY_OF_MONTH, 7);
         Timestamp weekEnd = new Timestamp(calendar.getTime());
 
-        db.collection(SESSIONS_COLLECTION)
-                .whereEqualTo("department", department)
-                .whereEqualTo("field", field)
-                .whereArrayContains("targetYears", year)
-                .whereGreaterThanOrEqualTo("startTime", weekStart)
-                .whereLessThan("startTime", weekEnd)
-                .orderBy("startTime")
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Session> sessions = new ArrayList<>();
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                                sessions.add(session);
-                            }
-                        }
-                        callback.onSuccess(sessions);
-                    } else {
-                        callback.onFailure(task.getException().getMessage());
-                    }
-                });
+        deliverInBackground(db.collection(SESSIONS_COLLECTION)
+                        .whereEqualTo("department", department)
+                        .whereEqualTo("field", field)
+                        .whereArrayContains("targetYears", year)
+                        .whereGreaterThanOrEqualTo("startTime", weekStart)
+                        .whereLessThan("startTime", weekEnd)
+                        .orderBy("startTime")
+                        .get(),
+                "getWeeklySessionsForField", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), FirebaseManager::toSession),
+                callback);
     }
 
     /**
@@ -978,79 +1354,220 @@ public class FirebaseManager {
                     }
                 });
     }
-    // Add this method to your existing FirebaseManager.java class
 
     /**
-     * Obtenir une session active pour un enseignant
+     * Obtenir une session par son identifiant (null si elle n'existe pas)
      */
-    public void getActiveSessionForTeacher(String teacherEmail, DataCallback<Session> callback) {
-        Log.d(TAG, "Getting active session for teacher: " + teacherEmail);
+    public void getSessionById(String sessionId, DataCallback<Session> callback) {
+        db.collection(SESSIONS_COLLECTION).document(sessionId).get()
+                .addOnSuccessListener(document -> callback.onSuccess(document.exists() ? toSession(document) : null))
+                .addOnFailureListener(e -> callback.onFailure("Erreur lors du chargement de la session: " + e.getMessage()));
+    }
 
-        db.collection(SESSIONS_COLLECTION)
-                .whereEqualTo("teacherEmail", teacherEmail)
-                .whereEqualTo("status", "active")
-                .limit(1)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        QuerySnapshot querySnapshot = task.getResult();
-                        if (!querySnapshot.isEmpty()) {
-                            DocumentSnapshot document = querySnapshot.getDocuments().get(0);
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                session.setSessionId(document.getId());
-                            }
-                            Log.d(TAG, "Active session found: " + (session != null ? session.getCourseName() : "null"));
-                            callback.onSuccess(session);
-                        } else {
-                            Log.d(TAG, "No active session found for teacher: " + teacherEmail);
-                            callback.onSuccess(null);
-                        }
+    /**
+     * Galerie de reconnaissance faciale d'une séance (mise en cache pour les séances récentes)
+     */
+    public void getSessionFaceGallery(Session session, DataCallback<FaceEmbeddingMatcher> callback) {
+        faceGalleries.get(session, callback);
+    }
+
+    /**
+     * Au démarrage d'une séance : préparer sa galerie et celle de la séance suivante de l'enseignant
+     * (rien sans modèle d'empreinte enregistré)
+     */
+    public void preloadFaceGalleries(Session startedSession) {
+        if (!FaceEmbedders.isAvailable()) {
+            return;
+        }
+        faceGalleries.preload(startedSession);
+        getNextSessionForTeacher(startedSession.getTeacherEmail(), new DataCallback<Session>() {
+            @Override
+            public void onSuccess(Session next) {
+                if (next != null && !next.getSessionId().equals(startedSession.getSessionId())) {
+                    faceGalleries.preload(next);
+                }
+            }
+
+            @Override
+            public void onFailure(String error) {
+                Log.w(TAG, "Séance suivante introuvable, pas de préchargement: " + error);
+            }
+        });
+    }
+
+    /**
+     * Empreintes des inscrits de la séance (par lots de FIRESTORE_IN_LIMIT identifiants) ;
+     * sans liste d'inscrits, étudiants actifs de la filière et des années concernées.
+     * La galerie est construite hors du thread principal.
+     */
+    private void loadSessionFaceGallery(Session session, DataCallback<FaceEmbeddingMatcher> callback) {
+        List<String> enrolled = session.getEnrolledStudentEmails();
+        if (enrolled == null || enrolled.isEmpty()) {
+            Query query = db.collection(STUDENTS_COLLECTION)
+                    .whereEqualTo("department", session.getDepartment())
+                    .whereEqualTo("field", session.getField())
+                    .whereEqualTo("isActive", true);
+            List<String> years = session.getTargetYears();
+            if (years != null && !years.isEmpty()) {
+                query = query.whereIn("year", years);
+            }
+            deliverInBackground(query.get(), "loadSessionFaceGallery",
+                    "Erreur lors du chargement des empreintes: ",
+                    snapshot -> FaceEmbeddingMatcher.fromStudents(
+                            mapDocuments(snapshot.getDocuments(), document -> document.toObject(Student.class))),
+                    callback);
+            return;
+        }
+
+        List<Task<QuerySnapshot>> chunks = new ArrayList<>();
+        for (int i = 0; i < enrolled.size(); i += FIRESTORE_IN_LIMIT) {
+            List<String> emails = new ArrayList<>(enrolled.subList(i, Math.min(i + FIRESTORE_IN_LIMIT, enrolled.size())));
+            chunks.add(db.collection(STUDENTS_COLLECTION).whereIn(FieldPath.documentId(), emails).get());
+        }
+        Tasks.<QuerySnapshot>whenAllSuccess(chunks).addOnCompleteListener(mappingExecutor, task -> {
+            if (!task.isSuccessful()) {
+                Exception e = task.getException();
+                Log.w(TAG, "loadSessionFaceGallery: échec de la requête", e);
+                String error = "Erreur lors du chargement des empreintes: " + (e != null ? e.getMessage() : "Unknown error");
+                mainHandler.post(() -> callback.onFailure(error));
+                return;
+            }
+            List<Student> students = new ArrayList<>(enrolled.size());
+            for (QuerySnapshot snapshot : task.getResult()) {
+                students.addAll(mapDocuments(snapshot.getDocuments(), document -> document.toObject(Student.class)));
+            }
+            FaceEmbeddingMatcher matcher = FaceEmbeddingMatcher.fromStudents(students);
+            mainHandler.post(() -> callback.onSuccess(matcher));
+        });
+    }
+
+    /**
+     * Index de reconnaissance de tous les étudiants, mis à jour avec les profils modifiés
+     * depuis la dernière synchronisation (lastUpdatedAt >= watermark - FACE_INDEX_SKEW_MARGIN_MS)
+     * puis enregistré. Les profils déjà vus sont réappliqués (put et remove par email) ; les comptes
+     * supprimés sont retirés d'après leurs traces (deletedStudents) sur la même période.
+     * Hors connexion, l'index enregistré est renvoyé tel quel.
+     */
+    public void getSchoolFaceIndex(DataCallback<FaceEmbeddingIndex> callback) {
+        mappingExecutor.execute(() -> {
+            FaceEmbeddingIndex index = openFaceIndex();
+            long watermark = index.getWatermark();
+            long syncStart = System.currentTimeMillis();
+            List<Task<QuerySnapshot>> queries = new ArrayList<>();
+            if (watermark > 0) {
+                Timestamp since = new Timestamp(new Date(watermark - FACE_INDEX_SKEW_MARGIN_MS));
+                queries.add(db.collection(STUDENTS_COLLECTION).whereGreaterThanOrEqualTo("lastUpdatedAt", since).get());
+                queries.add(db.collection(DELETED_STUDENTS_COLLECTION).whereGreaterThanOrEqualTo("lastUpdatedAt", since).get());
+            } else {
+                queries.add(db.collection(STUDENTS_COLLECTION).get());
+            }
+            Tasks.<QuerySnapshot>whenAllSuccess(queries).addOnCompleteListener(mappingExecutor, task -> {
+                if (!task.isSuccessful()) {
+                    Log.w(TAG, "getSchoolFaceIndex: synchronisation impossible, index local utilisé", task.getException());
+                    mainHandler.post(() -> callback.onSuccess(index));
+                    return;
+                }
+                long latest = watermark;
+                // Suppressions d'abord ; un compte recréé ensuite avec le même email est réindexé
+                Map<String, Long> deletedAt = new HashMap<>();
+                List<DocumentSnapshot> deletions = task.getResult().size() > 1
+                        ? task.getResult().get(1).getDocuments() : Collections.emptyList();
+                for (DocumentSnapshot deletion : deletions) {
+                    String email = deletion.getString("email");
+                    Timestamp deletionTime = deletion.getTimestamp("lastUpdatedAt");
+                    if (email == null || deletionTime == null) {
+                        continue;
+                    }
+                    index.remove(email);
+                    deletedAt.merge(email, deletionTime.toDate().getTime(), Math::max);
+                    latest = Math.max(latest, deletionTime.toDate().getTime());
+                }
+                List<Student> students = mapDocuments(task.getResult().get(0).getDocuments(),
+                        document -> document.toObject(Student.class));
+                for (Student student : students) {
+                    List<Double> embedding = student.getFaceEmbedding();
+                    Long deletionTime = deletedAt.get(student.getEmail());
+                    boolean deletedSince = deletionTime != null && (student.getLastUpdatedAt() == null
+                            || student.getLastUpdatedAt().toDate().getTime() < deletionTime);
+                    if (!deletedSince && student.isActive() && embedding != null && !embedding.isEmpty()) {
+                        index.put(student.getEmail(), toFloatArray(embedding));
                     } else {
-                        Log.e(TAG, "Error getting active session", task.getException());
-                        callback.onFailure(task.getException().getMessage());
+                        index.remove(student.getEmail());
                     }
-                });
+                    if (student.getLastUpdatedAt() != null) {
+                        latest = Math.max(latest, student.getLastUpdatedAt().toDate().getTime());
+                    }
+                }
+                // Horodatage en avance (horloge d'un autre appareil) : ne pas sauter les modifications à venir
+                index.setWatermark(Math.min(latest, syncStart));
+                try {
+                    index.save();
+                } catch (IOException e) {
+                    Log.w(TAG, "Enregistrement de l'index des empreintes impossible", e);
+                }
+                Log.d(TAG, "getSchoolFaceIndex: " + students.size() + " profils modifiés, " + deletions.size()
+                        + " supprimés, " + index.size() + " empreintes");
+                mainHandler.post(() -> callback.onSuccess(index));
+            });
+        });
     }
+
+    private synchronized FaceEmbeddingIndex openFaceIndex() {
+        if (faceIndex == null) {
+            faceIndex = FaceEmbeddingIndex.open(
+                    new File(FirebaseApp.getInstance().getApplicationContext().getFilesDir(), FACE_INDEX_FILE));
+        }
+        return faceIndex;
+    }
+
+    private static float[] toFloatArray(List<Double> values) {
+        float[] array = new float[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i).floatValue();
+        }
+        return array;
+    }
+
     public void getStudentAttendanceStatistics(String studentEmail, DataCallback<AttendanceStats> callback) {
+        getStatisticsFromRollup(studentEmail, callback,
+                () -> computeStatisticsFromSessions(studentEmail, callback));
+    }
+
+    private void computeStatisticsFromSessions(String studentEmail, DataCallback<AttendanceStats> callback) {
         // Calculer les statistiques des 30 derniers jours
         Calendar calendar = Calendar.getInstance();
         calendar.add(Calendar.DAY_OF_MONTH, -30);
         Timestamp thirtyDaysAgo = new Timestamp(calendar.getTime());
 
-        db.collection(SESSIONS_COLLECTION)
+        Query query = db.collection(SESSIONS_COLLECTION)
                 .whereArrayContains("enrolledStudentEmails", studentEmail)
                 .whereEqualTo("status", "completed")
-                .whereGreaterThanOrEqualTo("endTime", thirtyDaysAgo)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        int totalSessions = 0;
-                        int attendedSessions = 0;
-
-                        for (DocumentSnapshot document : task.getResult()) {
-                            Session session = document.toObject(Session.class);
-                            if (session != null) {
-                                totalSessions++;
-                                if (session.getPresentStudentEmails().contains(studentEmail)) {
-                                    attendedSessions++;
-                                }
-                            }
-                        }
+                .whereGreaterThanOrEqualTo("endTime", thirtyDaysAgo);
+        deliverInBackground(query.get(), "computeStatisticsFromSessions", "",
+                snapshot -> countAttendance(snapshot, studentEmail, false), callback);
+    }
 
-                        AttendanceStats stats = new AttendanceStats(totalSessions, attendedSessions);
-                        callback.onSuccess(stats);
-                    } else {
-                        callback.onFailure(task.getException().getMessage());
-                    }
-                });
+    /**
+     * Compter les sessions terminées et celles où l'étudiant était présent
+     */
+    private static AttendanceStats countAttendance(QuerySnapshot snapshot, String studentEmail, boolean checkEnrolled) {
+        int totalSessions = 0;
+        int attendedSessions = 0;
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            Session session = Session.fromSnapshot(document);
+            if (session != null && (!checkEnrolled || session.isStudentEnrolled(studentEmail))) {
+                totalSessions++;
+                if (session.isStudentPresent(studentEmail)) {
+                    attendedSessions++;
+                }
+            }
+        }
+        return new AttendanceStats(totalSessions, attendedSessions);
     }
 
     // ---------------------------------------------- JUSTIFS
     public void getStudentByEmail(String email, DataCallback<Student> callback) {
-        db.collection(STUDENTS_COLLECTION)
-                .document(email)
-                .get()
+        collectionSync.readDocument(db.collection(STUDENTS_COLLECTION).document(email))
                 .addOnSuccessListener(documentSnapshot -> {
                     if (documentSnapshot.exists()) {
                         Student student = documentSnapshot.toObject(Student.class);
@@ -1069,25 +1586,21 @@ public class FirebaseManager {
     // This method needs to be implemented to fetch courses associated with the student
     // based on department, field, and year.
     public void getStudentCourses(String studentEmail, String department, String field, String year, DataCallback<List<Map<String, String>>> callback) {
-        db.collection("courses")
+        Query query = db.collection(COURSES_COLLECTION)
                 .whereEqualTo("department", department)
                 .whereEqualTo("field", field)
-                .whereArrayContains("targetYears", year) // Query if the student's year is in the course's targetYears
+                .whereArrayContains("targetYears", year); // Query if the student's year is in the course's targetYears
                 // Optional: You might also want to combine with enrolledStudentEmails if that's still a hard requirement
                 // .whereArrayContains("enrolledStudentEmails", studentEmail)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Map<String, String>> courses = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Map<String, String> course = new HashMap<>();
-                        course.put("id", document.getId());
-                        course.put("name", document.getString("courseName")); // Use "courseName"
-                        // Add other relevant course data if needed
-                        courses.add(course);
-                    }
-                    callback.onSuccess(courses);
-                })
-                .addOnFailureListener(e -> callback.onFailure("Error getting student courses: " + e.getMessage()));
+        deliverInBackground(collectionSync.read(COURSES_COLLECTION, query), "getStudentCourses", "Error getting student courses: ",
+                snapshot -> mapDocuments(snapshot.getDocuments(), document -> {
+                    Map<String, String> course = new HashMap<>();
+                    course.put("id", document.getId());
+                    course.put("name", document.getString("courseName")); // Use "courseName"
+                    // Add other relevant course data if needed
+                    return course;
+                }),
+                callback);
     }
 
 
@@ -1098,25 +1611,35 @@ public class FirebaseManager {
      * Can be extended with filtering if needed.
      */
     public void getAllJustifications(DataCallback<List<Justification>> callback) {
-        db.collection("justifications")
-                .orderBy("submittedAt", Query.Direction.DESCENDING) // Order by latest submitted
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Justification> justifications = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        try {
-                            Justification justification = document.toObject(Justification.class);
-                            // Assign the Firestore document ID to the Justification object
-                            justification.setJustificationId(document.getId());
-                            justifications.add(justification);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error deserializing justification document: " + document.getId(), e);
-                            // Handle corrupted documents gracefully, perhaps skip them
-                        }
+        deliverInBackground(db.collection(JUSTIFICATIONS_COLLECTION)
+                        .orderBy("submittedAt", Query.Direction.DESCENDING) // Order by latest submitted
+                        .get(),
+                "getAllJustifications", "Error getting all justifications: ",
+                snapshot -> mapDocuments(snapshot.getDocuments(), Justification::fromSnapshot),
+                callback);
+    }
+
+    /**
+     * Get a page of justifications, latest submitted first.
+     * status limite la page à un statut (null : tous) ; filtre appliqué par Firestore
+     * (index composite status + submittedAt, voir firestore.indexes.json).
+     */
+    public void getJustificationsPage(String status, DocumentSnapshot startAfter, int pageSize,
+                                      DataCallback<Page<Justification>> callback) {
+        Query query = db.collection(JUSTIFICATIONS_COLLECTION);
+        if (status != null) {
+            query = query.whereEqualTo("status", status);
+        }
+        loadPage(query.orderBy("submittedAt", Query.Direction.DESCENDING),
+                startAfter, pageSize,
+                document -> {
+                    Justification justification = Justification.fromSnapshot(document);
+                    if (justification != null) {
+                        justification.setJustificationId(document.getId());
                     }
-                    callback.onSuccess(justifications);
-                })
-                .addOnFailureListener(e -> callback.onFailure("Error getting all justifications: " + e.getMessage()));
+                    return justification;
+                },
+                callback);
     }
 
     /**
@@ -1133,6 +1656,9 @@ public class FirebaseManager {
                 .set(justification.toMap()) // Use toMap() to ensure all fields are set correctly
                 .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "Justification updated: " + justification.getJustificationId());
+                    if (justification.checkStatusIsApproved()) {
+                        applyJustifiedAbsence(justification);
+                    }
                     callback.onSuccess(null);
                 })
                 .addOnFailureListener(e -> {
@@ -1141,55 +1667,68 @@ public class FirebaseManager {
                 });
     }
 
+    /**
+     * Reporter une justification approuvée dans le bilan de l'étudiant : les absences aux séances
+     * du cours ce jour-là deviennent justifiées (sans effet si elles le sont déjà).
+     */
+    private void applyJustifiedAbsence(Justification justification) {
+        String studentEmail = justification.getStudentEmail();
+        String courseId = justification.getCourseId();
+        if (studentEmail == null || courseId == null || justification.getJustificationDate() == null) {
+            return;
+        }
+        String day = AttendanceRollup.dayKey(justification.getJustificationDate());
+        db.collection(SESSIONS_COLLECTION)
+                .whereArrayContains("absentStudentEmails", studentEmail)
+                .whereEqualTo("courseId", courseId)
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    for (DocumentSnapshot document : snapshot.getDocuments()) {
+                        Session session = Session.fromSnapshot(document);
+                        if (session == null || !day.equals(AttendanceRollup.dayKey(getRollupDate(session)))) {
+                            continue;
+                        }
+                        writeOutbox.rollup(session.getSessionId(), courseId, getRollupDate(session),
+                                Collections.singletonMap(studentEmail, AttendanceRollup.JUSTIFIED));
+                    }
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Bilan non mis à jour pour la justification "
+                        + justification.getJustificationId(), e));
+    }
+
     // Save a new justification (modified to use Justification model with justificationDate)
     /**
      * Sauvegarder une nouvelle justification dans Firestore.
      * Définit également l'ID du document généré sur l'objet Justification.
      */
     public void saveJustification(Justification justification, DataCallback<String> callback) {
-        db.collection("justifications")
-                .add(justification.toMap()) // Use toMap() for explicit control
-                .addOnSuccessListener(documentReference -> {
-                    // IMPORTANT: Set the generated Firestore document ID back to the Justification object
-                    justification.setJustificationId(documentReference.getId());
-                    Log.d(TAG, "Justification saved with ID: " + documentReference.getId());
-
-                    // Now, update the document to include its own ID as a field (optional but good practice)
-                    // This makes it easier to query by ID directly from the document itself if needed.
-                    db.collection("justifications")
-                            .document(documentReference.getId())
-                            .update("justificationId", documentReference.getId())
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "Justification ID field updated in Firestore for: " + documentReference.getId());
-                                callback.onSuccess(documentReference.getId());
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.w(TAG, "Error updating justificationId field in Firestore for: " + documentReference.getId(), e);
-                                // Even if this nested update fails, the document was added,
-                                // and the ID was set on the Java object, so we still call success.
-                                callback.onSuccess(documentReference.getId());
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.w(TAG, "Error adding justification", e);
-                    callback.onFailure("Error adding justification: " + e.getMessage());
-                });
+        // ID généré côté client : le document contient son propre ID dès la première écriture
+        DocumentReference documentReference = db.collection(JUSTIFICATIONS_COLLECTION).document();
+        justification.setJustificationId(documentReference.getId());
+
+        writeOutbox.set(documentReference, justification.toMap(), new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void data) {
+                Log.d(TAG, "Justification saved with ID: " + documentReference.getId());
+                callback.onSuccess(documentReference.getId());
+            }
+
+            @Override
+            public void onFailure(String error) {
+                callback.onFailure("Error adding justification: " + error);
+            }
+        });
     }
 
     // Get all justifications for a specific student (modified to use studentEmail)
     public void getStudentJustifications(String studentEmail, DataCallback<List<Justification>> callback) {
-        db.collection("justifications")
-                .whereEqualTo("studentEmail", studentEmail)
-                .orderBy("submittedAt", Query.Direction.DESCENDING) // Order by latest submitted
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Justification> justifications = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        justifications.add(document.toObject(Justification.class));
-                    }
-                    callback.onSuccess(justifications);
-                })
-                .addOnFailureListener(e -> callback.onFailure("Error getting student justifications: " + e.getMessage()));
+        deliverInBackground(db.collection(JUSTIFICATIONS_COLLECTION)
+                        .whereEqualTo("studentEmail", studentEmail)
+                        .orderBy("submittedAt", Query.Direction.DESCENDING) // Order by latest submitted
+                        .get(),
+                "getStudentJustifications", "Error getting student justifications: ",
+                snapshot -> mapDocuments(snapshot.getDocuments(), Justification::fromSnapshot),
+                callback);
     }
 
     // --- New/Modified: Attendance Operations (to be used by admin after justification approval) ---
@@ -1321,8 +1860,16 @@ public class FirebaseManager {
                         String userId = userDocument.getId(); // Get the Firestore document ID
 
                         // Delete the document
-                        db.collection(collectionPath).document(userId)
-                                .delete()
+                        WriteBatch batch = db.batch();
+                        batch.delete(db.collection(collectionPath).document(userId));
+                        if (STUDENTS_COLLECTION.equals(collectionPath)) {
+                            // Trace de suppression : retire l'étudiant des index de reconnaissance déjà synchronisés
+                            Map<String, Object> deletion = new HashMap<>();
+                            deletion.put("email", email);
+                            deletion.put("lastUpdatedAt", FieldValue.serverTimestamp());
+                            batch.set(db.collection(DELETED_STUDENTS_COLLECTION).document(userId), deletion);
+                        }
+                        batch.commit()
                                 .addOnSuccessListener(aVoid -> {
                                     Log.d(TAG, "User document deleted from Firestore: " + email + " (ID: " + userId + ")");
                                     callback.onSuccess(aVoid);
@@ -1345,46 +1892,119 @@ public class FirebaseManager {
      * Récupère tous les comptes étudiants.
      */
     public void getAllStudents(DataCallback<List<Student>> callback) {
-        db.collection(STUDENTS_COLLECTION)
-                .orderBy("fullName") // Order by name for display
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Student> students = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        try {
-                            Student student = document.toObject(Student.class);
-                            Log.d("FirebaseDebug", "Fetched Student: " + student.getEmail() + ", isActive: " + student.isActive());
-                            students.add(student);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error deserializing student document: " + document.getId(), e);
-                        }
-                    }
-                    callback.onSuccess(students);
-                })
-                .addOnFailureListener(e -> callback.onFailure("Erreur lors de la récupération des étudiants: " + e.getMessage()));
+        deliverInBackground(db.collection(STUDENTS_COLLECTION)
+                        .orderBy("fullName") // Order by name for display
+                        .get(),
+                "getAllStudents", "Erreur lors de la récupération des étudiants: ",
+                snapshot -> mapDocuments(snapshot.getDocuments(), document -> document.toObject(Student.class)),
+                callback);
     }
 
     /**
      * Récupère tous les comptes enseignants.
      */
     public void getAllTeachers(DataCallback<List<Teacher>> callback) {
-        db.collection(TEACHERS_COLLECTION)
-                .orderBy("fullName") // Order by name for display
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Teacher> teachers = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        try {
-                            Teacher teacher = document.toObject(Teacher.class);
-                            Log.d("FirebaseDebug", "Fetched Teacher: " + teacher.getEmail() + ", isActive: " + teacher.isActive());
-                            teachers.add(teacher);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error deserializing teacher document: " + document.getId(), e);
-                        }
+        deliverInBackground(db.collection(TEACHERS_COLLECTION)
+                        .orderBy("fullName") // Order by name for display
+                        .get(),
+                "getAllTeachers", "Erreur lors de la récupération des enseignants: ",
+                snapshot -> mapDocuments(snapshot.getDocuments(), document -> document.toObject(Teacher.class)),
+                callback);
+    }
+
+    /**
+     * Récupère une page de comptes étudiants (triés par nom).
+     * Passer null comme curseur pour la première page, puis page.getCursor().
+     */
+    public void getStudentsPage(DocumentSnapshot startAfter, int pageSize, DataCallback<Page<Student>> callback) {
+        loadPage(db.collection(STUDENTS_COLLECTION).orderBy("fullName"), startAfter, pageSize,
+                document -> document.toObject(Student.class), callback);
+    }
+
+    /**
+     * Récupère une page de comptes enseignants (triés par nom).
+     */
+    public void getTeachersPage(DocumentSnapshot startAfter, int pageSize, DataCallback<Page<Teacher>> callback) {
+        loadPage(db.collection(TEACHERS_COLLECTION).orderBy("fullName"), startAfter, pageSize,
+                document -> document.toObject(Teacher.class), callback);
+    }
+
+    /**
+     * Recherche de comptes côté serveur (étudiants puis enseignants), pour les termes
+     * absents des pages déjà chargées : début de l'email ou du nom complet.
+     * Firestore ne compare que des préfixes sensibles à la casse ; le nom est donc aussi
+     * cherché avec une majuscule initiale.
+     */
+    public void searchUsers(String prefix, int limitPerQuery, DataCallback<List<Object>> callback) {
+        String term = prefix.trim();
+        if (term.isEmpty()) {
+            callback.onSuccess(new ArrayList<>());
+            return;
+        }
+        String email = term.toLowerCase(Locale.ROOT);
+        String name = term.substring(0, 1).toUpperCase(Locale.ROOT) + term.substring(1);
+
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (String collection : Arrays.asList(STUDENTS_COLLECTION, TEACHERS_COLLECTION)) {
+            queries.add(prefixQuery(collection, "email", email, limitPerQuery));
+            queries.add(prefixQuery(collection, "fullName", term, limitPerQuery));
+            if (!name.equals(term)) {
+                queries.add(prefixQuery(collection, "fullName", name, limitPerQuery));
+            }
+        }
+        int studentQueries = queries.size() / 2;
+        Tasks.<QuerySnapshot>whenAllSuccess(queries).addOnCompleteListener(mappingExecutor, task -> {
+            if (!task.isSuccessful()) {
+                Exception e = task.getException();
+                Log.w(TAG, "searchUsers: échec de la requête", e);
+                String error = "Erreur de recherche: " + (e != null ? e.getMessage() : "Unknown error");
+                mainHandler.post(() -> callback.onFailure(error));
+                return;
+            }
+            // Un même compte peut correspondre à plusieurs requêtes (email et nom)
+            Map<String, Object> users = new LinkedHashMap<>();
+            List<QuerySnapshot> snapshots = task.getResult();
+            for (int i = 0; i < snapshots.size(); i++) {
+                Class<?> type = i < studentQueries ? Student.class : Teacher.class;
+                for (DocumentSnapshot document : snapshots.get(i).getDocuments()) {
+                    Object user = document.toObject(type);
+                    if (user != null && !users.containsKey(document.getId())) {
+                        users.put(document.getId(), user);
                     }
-                    callback.onSuccess(teachers);
-                })
-                .addOnFailureListener(e -> callback.onFailure("Erreur lors de la récupération des enseignants: " + e.getMessage()));
+                }
+            }
+            List<Object> results = new ArrayList<>(users.values());
+            mainHandler.post(() -> callback.onSuccess(results));
+        });
+    }
+
+    private Task<QuerySnapshot> prefixQuery(String collection, String field, String prefix, int limit) {
+        return db.collection(collection)
+                .orderBy(field)
+                .startAt(prefix)
+                .endAt(prefix + "\uf8ff")
+                .limit(limit)
+                .get();
+    }
+
+    /**
+     * Charger une page de la requête à partir du curseur.
+     * Un document de plus est demandé pour savoir s'il reste des résultats sans requête vide en fin de liste.
+     */
+    private <T> void loadPage(Query query, DocumentSnapshot startAfter, int pageSize,
+                              DocumentMapper<T> mapper, DataCallback<Page<T>> callback) {
+        if (startAfter != null) {
+            query = query.startAfter(startAfter);
+        }
+        deliverInBackground(query.limit(pageSize + 1).get(), "loadPage", "Erreur de chargement de la page: ",
+                snapshot -> {
+                    List<DocumentSnapshot> documents = snapshot.getDocuments();
+                    boolean hasMore = documents.size() > pageSize;
+                    int count = Math.min(documents.size(), pageSize);
+                    DocumentSnapshot cursor = count > 0 ? documents.get(count - 1) : startAfter;
+                    return new Page<>(mapDocuments(documents.subList(0, count), mapper), cursor, hasMore);
+                },
+                callback);
     }
 
     /**
@@ -1458,7 +2078,7 @@ public class FirebaseManager {
 
     public void createField(Field field, DataCallback<Void> callback) {
         db.collection("fields").document(field.getFieldId())
-                .set(field.toMap()) // Use toMap() which now includes weeklySchedule
+                .set(withUpdateTime(field.toMap())) // Use toMap() which now includes weeklySchedule
                 .addOnSuccessListener(aVoid -> callback.onSuccess(null))
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
@@ -1467,7 +2087,7 @@ public class FirebaseManager {
         // IMPORTANT: If you pass the whole `Field` object via `toMap()` then `updates` should be `field.toMap()`
         // If you are selectively updating, ensure `weeklySchedule` updates are handled correctly (e.g., replace the whole list)
         db.collection("fields").document(fieldId)
-                .update(updates)
+                .update(withUpdateTime(updates))
                 .addOnSuccessListener(aVoid -> callback.onSuccess(null))
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
@@ -1475,7 +2095,7 @@ public class FirebaseManager {
     // Modified to accept a Field object that includes the schedule
     public void modifyField(String fieldId, Field updatedField, DataCallback<Void> callback) {
         db.collection("fields").document(fieldId)
-                .set(updatedField.toMap()) // Use set with merge if you want to only update provided fields, or full set for replacement
+                .set(withUpdateTime(updatedField.toMap())) // Use set with merge if you want to only update provided fields, or full set for replacement
                 .addOnSuccessListener(aVoid -> callback.onSuccess(null))
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
@@ -1494,31 +2114,17 @@ public class FirebaseManager {
 
 
     public void getAllFields(DataCallback<List<Field>> callback) {
-        db.collection("fields")
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Field> fields = new ArrayList<>();
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            try {
-                                Field field = document.toObject(Field.class);
-                                fields.add(field);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error parsing field document: " + document.getId(), e);
-                            }
-                        }
-                        callback.onSuccess(fields);
-                    } else {
-                        callback.onFailure(task.getException() != null ? task.getException().getMessage() : "Unknown error");
-                    }
-                });
+        deliverInBackground(collectionSync.read(FIELDS_COLLECTION, db.collection(FIELDS_COLLECTION)),
+                "getAllFields", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), Field::fromSnapshot),
+                callback);
     }
 
     // --- Course Operations (UPDATED to handle courseScheduleEntry) ---
 
     public void createCourse(Course course, DataCallback<Void> callback) {
         db.collection("courses").document(course.getCourseId())
-                .set(course.toMap()) // Use toMap() which now includes courseScheduleEntry
+                .set(withUpdateTime(course.toMap())) // Use toMap() which now includes courseScheduleEntry
                 .addOnSuccessListener(aVoid -> callback.onSuccess(null))
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
@@ -1527,14 +2133,14 @@ public class FirebaseManager {
     public void modifyCourse(String courseId, Map<String, Object> updates, DataCallback<Void> callback) {
         // If using map, ensure 'courseScheduleEntry' is passed as a nested map
         db.collection("courses").document(courseId)
-                .update(updates)
+                .update(withUpdateTime(updates))
                 .addOnSuccessListener(aVoid -> callback.onSuccess(null))
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
 
     public void modifyCourse(String courseId, Course updatedCourse, DataCallback<Void> callback) {
         db.collection("courses").document(courseId)
-                .set(updatedCourse.toMap()) // Overwrite the document with the new course object
+                .set(withUpdateTime(updatedCourse.toMap())) // Overwrite the document with the new course object
                 .addOnSuccessListener(aVoid -> callback.onSuccess(null))
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
@@ -1547,25 +2153,21 @@ public class FirebaseManager {
                 .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
     }
 
+    /**
+     * Copie des données avec lastUpdatedAt à l'heure du serveur
+     * (permet la synchronisation incrémentale des cours et filières)
+     */
+    private static Map<String, Object> withUpdateTime(Map<String, Object> data) {
+        Map<String, Object> copy = new HashMap<>(data);
+        copy.put("lastUpdatedAt", FieldValue.serverTimestamp());
+        return copy;
+    }
+
     public void getAllCourses(DataCallback<List<Course>> callback) {
-        db.collection("courses")
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        List<Course> courses = new ArrayList<>();
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            try {
-                                Course course = document.toObject(Course.class);
-                                courses.add(course);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error parsing course document: " + document.getId(), e);
-                            }
-                        }
-                        callback.onSuccess(courses);
-                    } else {
-                        callback.onFailure(task.getException() != null ? task.getException().getMessage() : "Unknown error");
-                    }
-                });
+        deliverInBackground(collectionSync.read(COURSES_COLLECTION, db.collection(COURSES_COLLECTION)),
+                "getAllCourses", "",
+                snapshot -> mapDocuments(snapshot.getDocuments(), Course::fromSnapshot),
+                callback);
     }
     /**
      * Assigns a course to a teacher using a transaction for atomicity.
@@ -1590,7 +2192,7 @@ public class FirebaseManager {
                     courseUpdates.put("teacherEmail", teacherEmail);
                     courseUpdates.put("teacherName", teacherName);
                     courseUpdates.put("department", department);
-                    transaction.update(courseRef, courseUpdates);
+                    transaction.update(courseRef, withUpdateTime(courseUpdates));
 
                     return null;
                 })
@@ -1618,7 +2220,7 @@ public class FirebaseManager {
                     Map<String, Object> courseUpdates = new HashMap<>();
                     courseUpdates.put("teacherEmail", null);
                     courseUpdates.put("teacherName", null);
-                    transaction.update(courseRef, courseUpdates);
+                    transaction.update(courseRef, withUpdateTime(courseUpdates));
 
                     return null;
                 })
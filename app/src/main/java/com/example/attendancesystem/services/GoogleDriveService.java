@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.util.Log;
 
+import com.example.attendancesystem.utils.ProfileImagePreparer;
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
 import com.google.android.gms.auth.api.signin.GoogleSignInClient;
@@ -12,37 +13,63 @@ import com.google.android.gms.auth.api.signin.GoogleSignInOptions;
 import com.google.android.gms.common.api.Scope;
 import com.google.api.client.extensions.android.http.AndroidHttp;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.http.InputStreamContent;
 import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
 import com.google.api.services.drive.model.Permission;
 
-import com.google.api.client.http.ByteArrayContent;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GoogleDriveService {
     private static final String TAG = "GoogleDriveService";
     private static final String APPLICATION_NAME = "Face Attendance System";
     private static final String FOLDER_NAME = "FaceAttendancePhotos";
 
+    // Taille des blocs de l'upload résumable (multiple de 256 Ko imposé par Drive)
+    private static final int UPLOAD_CHUNK_SIZE = 2 * MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+    // Répartition de la progression : préparation, envoi de la photo, permissions
+    private static final int PREPARE_PROGRESS = 10;
+    private static final int UPLOAD_PROGRESS_END = 90;
+    private static final String SETUP_TASK_KEY = "setup";
+    // appProperties des fichiers de profil : empreinte de l'image source et variante
+    private static final String PROPERTY_SOURCE_HASH = "sourceSha256";
+    private static final String PROPERTY_VARIANT = "variant";
+    private static final String VARIANT_PHOTO = "photo";
+    private static final String VARIANT_THUMBNAIL = "thumbnail";
+
     private Context context;
     private Drive driveService;
     private GoogleSignInClient googleSignInClient;
     private String folderId;
-    private Executor executor;
+    private String accountKey; // Compte Google connecté (clé du cache des identifiants)
+    private final DriveFileCache fileCache;
+    private final DriveTaskScheduler scheduler;
 
     // Singleton pattern
     private static GoogleDriveService instance;
 
     private GoogleDriveService(Context context) {
         this.context = context.getApplicationContext();
-        this.executor = Executors.newFixedThreadPool(4);
+        this.scheduler = new DriveTaskScheduler();
+        this.fileCache = new DriveFileCache(this.context);
         initializeGoogleSignIn();
     }
 
@@ -59,6 +86,9 @@ public class GoogleDriveService {
     public interface DriveCallback<T> {
         void onSuccess(T result);
         void onFailure(String error);
+
+        /** Opération annulée par cancelProfilePhotoTask (pas d'appel si une opération plus récente la remplace) */
+        default void onCancelled() {}
     }
 
     /**
@@ -68,6 +98,93 @@ public class GoogleDriveService {
         void onProgress(int progress);
         void onSuccess(String fileUrl);
         void onFailure(String error);
+
+        /** Upload annulé par cancelProfilePhotoTask (pas d'appel si un upload plus récent le remplace) */
+        default void onCancelled() {}
+
+        /** Miniature envoyée (appelé avant onSuccess) */
+        default void onThumbnailUploaded(String thumbnailUrl) {}
+
+        /** Identifiants Drive de la photo et de la miniature (appelé avant onSuccess) */
+        default void onFilesStored(ProfileFiles files) {}
+    }
+
+    /**
+     * Identifiants Drive des fichiers de profil d'un utilisateur
+     */
+    public static class ProfileFiles {
+        private final String photoFileId;
+        private final String thumbnailFileId;
+        private final String revision;    // Révision Drive de la photo
+        private final String contentHash; // SHA-256 de l'image source
+
+        public ProfileFiles(String photoFileId, String thumbnailFileId) {
+            this(photoFileId, thumbnailFileId, null, null);
+        }
+
+        public ProfileFiles(String photoFileId, String thumbnailFileId, String revision, String contentHash) {
+            this.photoFileId = photoFileId;
+            this.thumbnailFileId = thumbnailFileId;
+            this.revision = revision;
+            this.contentHash = contentHash;
+        }
+
+        public String getPhotoFileId() { return photoFileId; }
+        public String getThumbnailFileId() { return thumbnailFileId; }
+        public String getRevision() { return revision; }
+        public String getContentHash() { return contentHash; }
+    }
+
+    /**
+     * Progression de l'envoi d'un fichier (fraction entre 0 et 1)
+     */
+    private interface UploadProgressListener {
+        void onProgress(double fraction);
+    }
+
+    /**
+     * Corps d'une tâche Drive ; les exceptions sont traitées par le scheduler
+     * (réessai sur limite de débit, sinon échec transmis au callback)
+     */
+    private interface DriveWork {
+        void run(DriveTaskScheduler.TaskHandle task) throws Exception;
+    }
+
+    private interface FailureListener {
+        void onFailure(String error);
+    }
+
+    private static DriveTaskScheduler.DriveTask driveTask(String operation, FailureListener failureListener,
+                                                          DriveWork work) {
+        return driveTask(operation, failureListener, null, work);
+    }
+
+    /**
+     * Tâche Drive ; cancelListener (peut être null) est prévenu d'une annulation explicite.
+     * Une tâche remplacée par une plus récente ne signale rien : c'est la nouvelle qui rendra compte.
+     */
+    private static DriveTaskScheduler.DriveTask driveTask(String operation, FailureListener failureListener,
+                                                          Runnable cancelListener, DriveWork work) {
+        return new DriveTaskScheduler.DriveTask() {
+            @Override
+            public void run(DriveTaskScheduler.TaskHandle handle) throws Exception {
+                work.run(handle);
+            }
+
+            @Override
+            public void onCancelled(boolean replaced) {
+                Log.d(TAG, (replaced ? "Remplacement de " : "Annulation de ") + operation);
+                if (!replaced && cancelListener != null) {
+                    cancelListener.run();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Erreur lors de " + operation, e);
+                failureListener.onFailure(e.getMessage());
+            }
+        };
     }
 
     /**
@@ -93,165 +210,475 @@ public class GoogleDriveService {
      * Configurer le service Drive après connexion réussie
      */
     public void setupDriveService(GoogleSignInAccount account, DriveCallback<Void> callback) {
-        executor.execute(() -> {
-            try {
-                GoogleAccountCredential credential = GoogleAccountCredential.usingOAuth2(
-                        context, Collections.singleton(DriveScopes.DRIVE_FILE));
-                credential.setSelectedAccount(account.getAccount());
-
-                driveService = new Drive.Builder(
-                        AndroidHttp.newCompatibleTransport(),
-                        new GsonFactory(),
-                        credential)
-                        .setApplicationName(APPLICATION_NAME)
-                        .build();
-
-                // Créer ou obtenir le dossier de stockage
-                createOrGetFolder(new DriveCallback<String>() {
-                    @Override
-                    public void onSuccess(String folderId) {
-                        GoogleDriveService.this.folderId = folderId;
-                        callback.onSuccess(null);
-                    }
+        scheduler.schedule(SETUP_TASK_KEY, DriveTaskScheduler.Priority.INTERACTIVE,
+                driveTask("la configuration du service Drive", callback::onFailure, task -> {
+            GoogleAccountCredential credential = GoogleAccountCredential.usingOAuth2(
+                    context, Collections.singleton(DriveScopes.DRIVE_FILE));
+            credential.setSelectedAccount(account.getAccount());
+
+            driveService = new Drive.Builder(
+                    AndroidHttp.newCompatibleTransport(),
+                    new GsonFactory(),
+                    withRetries(credential))
+                    .setApplicationName(APPLICATION_NAME)
+                    .build();
+            accountKey = account.getEmail();
+
+            // Dossier de stockage : identifiant mémorisé, sinon recherche ou création
+            String cachedFolderId = fileCache.getFolderId(accountKey);
+            if (cachedFolderId != null) {
+                folderId = cachedFolderId;
+            } else {
+                folderId = findOrCreateFolder();
+                fileCache.putFolderId(accountKey, folderId);
+            }
+            callback.onSuccess(null);
+        }));
+    }
 
-                    @Override
-                    public void onFailure(String error) {
-                        callback.onFailure(error);
-                    }
-                });
+    /**
+     * Ajouter aux requêtes Drive des réessais avec backoff exponentiel
+     * (erreurs réseau et erreurs serveur 5xx), après la gestion du jeton par le credential.
+     * Pendant un upload résumable, chaque bloc en échec est ainsi renvoyé à partir
+     * de l'octet confirmé par le serveur au lieu de relancer tout le fichier.
+     */
+    private static HttpRequestInitializer withRetries(HttpRequestInitializer credential) {
+        return request -> {
+            credential.initialize(request);
+
+            HttpUnsuccessfulResponseHandler authHandler = request.getUnsuccessfulResponseHandler();
+            HttpUnsuccessfulResponseHandler backOffHandler =
+                    new HttpBackOffUnsuccessfulResponseHandler(new ExponentialBackOff());
+            request.setUnsuccessfulResponseHandler((req, response, supportsRetry) ->
+                    (authHandler != null && authHandler.handleResponse(req, response, supportsRetry))
+                            || backOffHandler.handleResponse(req, response, supportsRetry));
+            request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(new ExponentialBackOff()));
+        };
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Erreur lors de la configuration du service Drive", e);
-                callback.onFailure(e.getMessage());
-            }
-        });
+    /**
+     * Rechercher ou créer le dossier de stockage des photos (appel bloquant)
+     */
+    private String findOrCreateFolder() throws IOException {
+        // Chercher si le dossier existe déjà
+        String query = "name='" + FOLDER_NAME + "' and mimeType='application/vnd.google-apps.folder' and trashed=false";
+        FileList result = driveService.files().list().setQ(query).execute();
+
+        if (result.getFiles().size() > 0) {
+            // Dossier existe déjà
+            String existingFolderId = result.getFiles().get(0).getId();
+            Log.d(TAG, "Dossier existant trouvé: " + existingFolderId);
+            return existingFolderId;
+        }
+
+        // Créer un nouveau dossier
+        File folderMetadata = new File();
+        folderMetadata.setName(FOLDER_NAME);
+        folderMetadata.setMimeType("application/vnd.google-apps.folder");
+
+        File folder = driveService.files().create(folderMetadata).execute();
+        Log.d(TAG, "Nouveau dossier créé: " + folder.getId());
+        return folder.getId();
     }
 
     /**
-     * Créer ou obtenir le dossier de stockage des photos
+     * Le dossier mémorisé n'existe plus : le rechercher à nouveau
      */
-    private void createOrGetFolder(DriveCallback<String> callback) {
-        executor.execute(() -> {
-            try {
-                // Chercher si le dossier existe déjà
-                String query = "name='" + FOLDER_NAME + "' and mimeType='application/vnd.google-apps.folder' and trashed=false";
-                FileList result = driveService.files().list().setQ(query).execute();
-
-                if (result.getFiles().size() > 0) {
-                    // Dossier existe déjà
-                    String existingFolderId = result.getFiles().get(0).getId();
-                    Log.d(TAG, "Dossier existant trouvé: " + existingFolderId);
-                    callback.onSuccess(existingFolderId);
-                } else {
-                    // Créer un nouveau dossier
-                    File folderMetadata = new File();
-                    folderMetadata.setName(FOLDER_NAME);
-                    folderMetadata.setMimeType("application/vnd.google-apps.folder");
-
-                    File folder = driveService.files().create(folderMetadata).execute();
-                    String newFolderId = folder.getId();
-
-                    Log.d(TAG, "Nouveau dossier créé: " + newFolderId);
-                    callback.onSuccess(newFolderId);
-                }
+    private void refreshFolder() throws IOException {
+        fileCache.removeFolderId(accountKey);
+        folderId = findOrCreateFolder();
+        fileCache.putFolderId(accountKey, folderId);
+    }
 
-            } catch (IOException e) {
-                Log.e(TAG, "Erreur lors de la création/recherche du dossier", e);
-                callback.onFailure(e.getMessage());
-            }
-        });
+    /**
+     * Fichiers de profil mémorisés sur cet appareil, ou null
+     */
+    public ProfileFiles getCachedProfileFiles(String userEmail, String userType) {
+        if (accountKey == null) {
+            return null;
+        }
+        return fileCache.getProfileFiles(accountKey, getProfileBaseName(userEmail, userType));
     }
 
     /**
      * Upload une photo de profil
      */
     public void uploadProfilePhoto(String userEmail, String userType, Uri imageUri, UploadCallback callback) {
+        uploadProfilePhoto(userEmail, userType, imageUri, null, callback);
+    }
+
+    /**
+     * Upload une photo de profil en remplaçant les fichiers existants (files().update),
+     * ce qui conserve leurs identifiants, leurs URLs et leurs permissions.
+     * knownFiles (ex. lus sur le document utilisateur) est prioritaire sur le cache local.
+     */
+    public void uploadProfilePhoto(String userEmail, String userType, Uri imageUri,
+                                   ProfileFiles knownFiles, UploadCallback callback) {
+        uploadProfilePhoto(userEmail, userType, imageUri, knownFiles,
+                DriveTaskScheduler.Priority.INTERACTIVE, callback);
+    }
+
+    /**
+     * Upload avec une priorité explicite (BACKGROUND pour les imports en masse).
+     * Un nouvel upload pour le même utilisateur annule celui en attente ou en cours.
+     * L'empreinte SHA-256 de l'image source évite les envois inutiles : même photo que
+     * la photo actuelle, rien n'est envoyé ; photo déjà présente sur Drive pour un autre
+     * profil (import en masse), les fichiers sont copiés côté serveur.
+     */
+    public void uploadProfilePhoto(String userEmail, String userType, Uri imageUri, ProfileFiles knownFiles,
+                                   DriveTaskScheduler.Priority priority, UploadCallback callback) {
         if (driveService == null || folderId == null) {
             callback.onFailure("Service Drive non initialisé");
             return;
         }
 
-        executor.execute(() -> {
+        scheduler.schedule(getProfileTaskKey(userEmail, userType), priority,
+                driveTask("l'upload", callback::onFailure, callback::onCancelled, task -> {
+            ProfileImagePreparer.PreparedImage prepared = null;
             try {
-                // Simuler la progression
-                callback.onProgress(10);
+                callback.onProgress(0);
+
+                String baseName = getProfileBaseName(userEmail, userType);
+                String description = "Photo de profil pour " + userEmail;
+                ProfileFiles existing = knownFiles != null
+                        ? knownFiles : fileCache.getProfileFiles(accountKey, baseName);
+
+                String contentHash = ProfileImagePreparer.computeSha256(context, imageUri);
+                task.throwIfCancelled();
+                if (existing != null && existing.getThumbnailFileId() != null
+                        && contentHash.equals(existing.getContentHash())
+                        && existsOnDrive(existing.getPhotoFileId())
+                        && existsOnDrive(existing.getThumbnailFileId())) {
+                    Log.d(TAG, "Photo identique à la photo actuelle, upload ignoré: " + baseName);
+                    completeUpload(baseName, existing, callback);
+                    return;
+                }
+                if (existing == null) {
+                    ProfileFiles copied = copyExistingContent(contentHash, baseName, description);
+                    if (copied != null) {
+                        Log.d(TAG, "Photo déjà présente sur Drive, fichiers copiés: " + baseName);
+                        completeUpload(baseName, copied, callback);
+                        return;
+                    }
+                }
+
+                // Réduire et réencoder la photo avant l'envoi (et produire la miniature)
+                prepared = ProfileImagePreparer.prepare(context, imageUri);
+                task.throwIfCancelled();
+                callback.onProgress(PREPARE_PROGRESS);
+
+                File thumbnailFile = uploadFile(baseName + "_thumb." + prepared.getExtension(),
+                        existing != null ? existing.getThumbnailFileId() : null,
+                        description, appProperties(contentHash, VARIANT_THUMBNAIL),
+                        prepared.getMimeType(), prepared.getThumbnail(), task, null);
+                if (existing == null || !thumbnailFile.getId().equals(existing.getThumbnailFileId())) {
+                    makePublic(thumbnailFile.getId());
+                }
+
+                File uploadedFile = uploadFile(baseName + "." + prepared.getExtension(),
+                        existing != null ? existing.getPhotoFileId() : null,
+                        description, appProperties(contentHash, VARIANT_PHOTO),
+                        prepared.getMimeType(), prepared.getPhoto(), task,
+                        fraction -> callback.onProgress(PREPARE_PROGRESS
+                                + (int) (fraction * (UPLOAD_PROGRESS_END - PREPARE_PROGRESS))));
+                callback.onProgress(UPLOAD_PROGRESS_END);
+
+                // Rendre le fichier public (lecture seule) ; un fichier remplacé garde sa permission
+                if (existing == null || !uploadedFile.getId().equals(existing.getPhotoFileId())) {
+                    makePublic(uploadedFile.getId());
+                }
+
+                completeUpload(baseName, new ProfileFiles(uploadedFile.getId(), thumbnailFile.getId(),
+                        uploadedFile.getHeadRevisionId(), contentHash), callback);
+
+            } finally {
+                if (prepared != null) {
+                    prepared.delete();
+                }
+            }
+        }));
+    }
 
-                // Lire le fichier
-                InputStream inputStream = context.getContentResolver().openInputStream(imageUri);
-                byte[] imageBytes = readInputStream(inputStream);
+    private void completeUpload(String baseName, ProfileFiles files, UploadCallback callback) {
+        fileCache.putProfileFiles(accountKey, baseName, files);
+        callback.onThumbnailUploaded(getPublicUrl(files.getThumbnailFileId()));
+        callback.onFilesStored(files);
+        callback.onProgress(100);
 
-                callback.onProgress(30);
+        // Construire l'URL publique
+        String publicUrl = getPublicUrl(files.getPhotoFileId());
 
-                // Préparer les métadonnées du fichier
-                String fileName = userType + "_" + userEmail.replace("@", "_") + "_profile.jpg";
-                File fileMetadata = new File();
-                fileMetadata.setName(fileName);
-                fileMetadata.setParents(Collections.singletonList(folderId));
-                fileMetadata.setDescription("Photo de profil pour " + userEmail);
+        Log.d(TAG, "Photo uploadée avec succès: " + publicUrl + " (" + scheduler.getMetrics() + ")");
+        callback.onSuccess(publicUrl);
+    }
 
-                callback.onProgress(50);
+    private static Map<String, String> appProperties(String contentHash, String variant) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(PROPERTY_SOURCE_HASH, contentHash);
+        properties.put(PROPERTY_VARIANT, variant);
+        return properties;
+    }
 
-                // Upload du fichier
-                ByteArrayContent mediaContent = new ByteArrayContent("image/jpeg", imageBytes);
-                File uploadedFile = driveService.files().create(fileMetadata, mediaContent)
-                        .setFields("id,webViewLink,webContentLink")
-                        .execute();
+    /**
+     * Copier côté serveur la photo et la miniature d'un autre profil ayant la même image source
+     * (aucun octet envoyé) ; null si cette image n'est pas encore sur Drive
+     */
+    private ProfileFiles copyExistingContent(String contentHash, String baseName, String description) throws IOException {
+        String query = "appProperties has { key='" + PROPERTY_SOURCE_HASH + "' and value='" + contentHash + "' }"
+                + " and parents in '" + folderId + "' and trashed=false";
+        FileList result = driveService.files().list()
+                .setQ(query)
+                .setFields("files(id,name,appProperties)")
+                .execute();
+
+        File photo = null;
+        File thumbnail = null;
+        for (File file : result.getFiles()) {
+            Map<String, String> properties = file.getAppProperties();
+            String variant = properties != null ? properties.get(PROPERTY_VARIANT) : null;
+            if (VARIANT_PHOTO.equals(variant) && photo == null) {
+                photo = file;
+            } else if (VARIANT_THUMBNAIL.equals(variant) && thumbnail == null) {
+                thumbnail = file;
+            }
+        }
+        if (photo == null || thumbnail == null) {
+            return null;
+        }
 
-                callback.onProgress(80);
+        File thumbnailCopy = copyFile(thumbnail, baseName + "_thumb", description, contentHash, VARIANT_THUMBNAIL);
+        File photoCopy = copyFile(photo, baseName, description, contentHash, VARIANT_PHOTO);
+        return new ProfileFiles(photoCopy.getId(), thumbnailCopy.getId(), photoCopy.getHeadRevisionId(), contentHash);
+    }
 
-                // Rendre le fichier public (lecture seule)
-                Permission permission = new Permission();
-                permission.setType("anyone");
-                permission.setRole("reader");
-                driveService.permissions().create(uploadedFile.getId(), permission).execute();
+    private File copyFile(File source, String name, String description, String contentHash,
+                          String variant) throws IOException {
+        String sourceName = source.getName();
+        int dot = sourceName != null ? sourceName.lastIndexOf('.') : -1;
+
+        File copyMetadata = new File();
+        copyMetadata.setName(dot >= 0 ? name + sourceName.substring(dot) : name);
+        copyMetadata.setParents(Collections.singletonList(folderId));
+        copyMetadata.setDescription(description);
+        copyMetadata.setAppProperties(appProperties(contentHash, variant));
+
+        File copy = driveService.files().copy(source.getId(), copyMetadata)
+                .setFields("id,headRevisionId")
+                .execute();
+        // Les permissions ne sont pas copiées
+        makePublic(copy.getId());
+        return copy;
+    }
 
-                callback.onProgress(100);
+    /**
+     * Envoyer un fichier local dans le dossier des photos : remplacement du contenu si
+     * existingFileId est connu, création sinon. Un fichier ou un dossier supprimé entre-temps
+     * côté Drive (404) est recréé.
+     */
+    private File uploadFile(String fileName, String existingFileId, String description,
+                            Map<String, String> appProperties, String mimeType,
+                            java.io.File localFile, DriveTaskScheduler.TaskHandle task,
+                            UploadProgressListener progressListener) throws IOException {
+        if (existingFileId != null) {
+            try {
+                return sendFile(fileName, existingFileId, description, appProperties, mimeType, localFile, task, progressListener);
+            } catch (GoogleJsonResponseException e) {
+                if (e.getStatusCode() != 404) throw e;
+                Log.d(TAG, "Fichier introuvable, recréation: " + fileName);
+            }
+        }
+        try {
+            return sendFile(fileName, null, description, appProperties, mimeType, localFile, task, progressListener);
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+            Log.d(TAG, "Dossier introuvable, nouvelle recherche: " + folderId);
+            refreshFolder();
+            return sendFile(fileName, null, description, appProperties, mimeType, localFile, task, progressListener);
+        }
+    }
 
-                // Construire l'URL publique
-                String publicUrl = "https://drive.google.com/uc?id=" + uploadedFile.getId();
+    /**
+     * Le contenu est lu en flux ; au-delà d'un bloc, l'envoi passe par une session résumable
+     * (seul le bloc en cours est gardé en mémoire).
+     */
+    private File sendFile(String fileName, String existingFileId, String description,
+                          Map<String, String> appProperties, String mimeType,
+                          java.io.File localFile, DriveTaskScheduler.TaskHandle task,
+                          UploadProgressListener progressListener) throws IOException {
+        File fileMetadata = new File();
+        fileMetadata.setName(fileName);
+        fileMetadata.setDescription(description);
+        fileMetadata.setAppProperties(appProperties);
+
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(localFile))) {
+            long contentLength = localFile.length();
+            InputStreamContent mediaContent = new InputStreamContent(mimeType, inputStream);
+            mediaContent.setLength(contentLength);
+
+            if (existingFileId != null) {
+                Drive.Files.Update request = driveService.files().update(existingFileId, fileMetadata, mediaContent)
+                        .setFields("id,headRevisionId,webViewLink,webContentLink");
+                configureUploader(request.getMediaHttpUploader(), contentLength, task, progressListener);
+                File file = request.execute();
+                task.addBytesTransferred(contentLength);
+                return file;
+            }
 
-                Log.d(TAG, "Photo uploadée avec succès: " + publicUrl);
-                callback.onSuccess(publicUrl);
+            fileMetadata.setParents(Collections.singletonList(folderId));
+            Drive.Files.Create request = driveService.files().create(fileMetadata, mediaContent)
+                    .setFields("id,headRevisionId,webViewLink,webContentLink");
+            configureUploader(request.getMediaHttpUploader(), contentLength, task, progressListener);
+            File file = request.execute();
+            task.addBytesTransferred(contentLength);
+            return file;
+        }
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Erreur lors de l'upload", e);
-                callback.onFailure(e.getMessage());
+    private static void configureUploader(MediaHttpUploader uploader, long contentLength,
+                                          DriveTaskScheduler.TaskHandle task,
+                                          UploadProgressListener progressListener) {
+        // Petits fichiers (miniature) : une seule requête
+        uploader.setDirectUploadEnabled(contentLength <= UPLOAD_CHUNK_SIZE);
+        uploader.setChunkSize(UPLOAD_CHUNK_SIZE);
+        uploader.setProgressListener(progressUploader -> {
+            // Upload remplacé ou annulé : interrompre entre deux blocs
+            task.throwIfCancelled();
+            if (progressListener != null
+                    && progressUploader.getUploadState() == MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS
+                    && contentLength > 0) {
+                progressListener.onProgress(progressUploader.getProgress());
             }
         });
     }
 
+    private void makePublic(String fileId) throws IOException {
+        Permission permission = new Permission();
+        permission.setType("anyone");
+        permission.setRole("reader");
+        driveService.permissions().create(fileId, permission).execute();
+    }
+
+    private static String getPublicUrl(String fileId) {
+        return "https://drive.google.com/uc?id=" + fileId;
+    }
+
+    private static String getProfileBaseName(String userEmail, String userType) {
+        return userType + "_" + userEmail.replace("@", "_") + "_profile";
+    }
+
+    /**
+     * Clé des tâches portant sur la photo d'un utilisateur (une seule à la fois)
+     */
+    private static String getProfileTaskKey(String userEmail, String userType) {
+        return "profile|" + getProfileBaseName(userEmail, userType);
+    }
+
+    /**
+     * Annuler l'upload ou la suppression en attente (ou en cours) pour un utilisateur
+     */
+    public void cancelProfilePhotoTask(String userEmail, String userType) {
+        scheduler.cancel(getProfileTaskKey(userEmail, userType));
+    }
+
+    /**
+     * Profondeur des files et débit des tâches Drive
+     */
+    public DriveTaskScheduler.Metrics getTaskMetrics() {
+        return scheduler.getMetrics();
+    }
+
+    /**
+     * Noms possibles des fichiers de profil d'un utilisateur (photo et miniature, JPEG ou WebP)
+     */
+    private static List<String> getProfileFileNames(String userEmail, String userType) {
+        String baseName = getProfileBaseName(userEmail, userType);
+        return Arrays.asList(baseName + ".jpg", baseName + ".webp",
+                baseName + "_thumb.jpg", baseName + "_thumb.webp");
+    }
+
     /**
      * Supprimer une photo de profil existante
      */
     public void deleteProfilePhoto(String userEmail, String userType, DriveCallback<Void> callback) {
+        deleteProfilePhoto(userEmail, userType, null, callback);
+    }
+
+    /**
+     * Supprimer une photo de profil dont les identifiants sont connus (document utilisateur
+     * ou cache local) ; à défaut, les fichiers sont recherchés par nom.
+     */
+    public void deleteProfilePhoto(String userEmail, String userType, ProfileFiles knownFiles,
+                                   DriveCallback<Void> callback) {
         if (driveService == null || folderId == null) {
             callback.onFailure("Service Drive non initialisé");
             return;
         }
 
-        executor.execute(() -> {
-            try {
-                String fileName = userType + "_" + userEmail.replace("@", "_") + "_profile.jpg";
-                String query = "name='" + fileName + "' and parents in '" + folderId + "' and trashed=false";
+        scheduler.schedule(getProfileTaskKey(userEmail, userType), DriveTaskScheduler.Priority.INTERACTIVE,
+                driveTask("la suppression", callback::onFailure, callback::onCancelled, task -> {
+            String baseName = getProfileBaseName(userEmail, userType);
+            ProfileFiles files = knownFiles != null
+                    ? knownFiles : fileCache.getProfileFiles(accountKey, baseName);
+            if (files != null) {
+                deleteIfExists(files.getPhotoFileId());
+                deleteIfExists(files.getThumbnailFileId());
+                fileCache.removeProfileFiles(accountKey, baseName);
+                Log.d(TAG, "Photo supprimée: " + baseName);
+                callback.onSuccess(null);
+                return;
+            }
 
-                FileList result = driveService.files().list().setQ(query).execute();
+            StringBuilder names = new StringBuilder();
+            for (String fileName : getProfileFileNames(userEmail, userType)) {
+                if (names.length() > 0) names.append(" or ");
+                names.append("name='").append(fileName).append("'");
+            }
+            String query = "(" + names + ") and parents in '" + folderId + "' and trashed=false";
 
-                if (result.getFiles().size() > 0) {
-                    String fileId = result.getFiles().get(0).getId();
-                    driveService.files().delete(fileId).execute();
+            FileList result = driveService.files().list().setQ(query).execute();
 
-                    Log.d(TAG, "Photo supprimée: " + fileName);
-                    callback.onSuccess(null);
-                } else {
-                    Log.d(TAG, "Aucune photo à supprimer pour: " + fileName);
-                    callback.onSuccess(null);
+            if (result.getFiles().size() > 0) {
+                // Photo et miniature
+                for (File file : result.getFiles()) {
+                    driveService.files().delete(file.getId()).execute();
+                    Log.d(TAG, "Photo supprimée: " + file.getName());
                 }
-
-            } catch (IOException e) {
-                Log.e(TAG, "Erreur lors de la suppression", e);
-                callback.onFailure(e.getMessage());
+                callback.onSuccess(null);
+            } else {
+                Log.d(TAG, "Aucune photo à supprimer pour: " + userEmail);
+                callback.onSuccess(null);
             }
-        });
+        }));
+    }
+
+    /**
+     * Le fichier existe-t-il encore sur Drive (supprimé entre-temps : 404) ?
+     */
+    private boolean existsOnDrive(String fileId) throws IOException {
+        if (fileId == null || fileId.isEmpty()) {
+            return false;
+        }
+        try {
+            driveService.files().get(fileId).setFields("id").execute();
+            return true;
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+            return false;
+        }
+    }
+
+    /**
+     * Supprimer un fichier par identifiant (déjà supprimé côté Drive : ignoré)
+     */
+    private void deleteIfExists(String fileId) throws IOException {
+        if (fileId == null || fileId.isEmpty()) {
+            return;
+        }
+        try {
+            driveService.files().delete(fileId).execute();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+        }
     }
 
     /**
@@ -269,6 +696,7 @@ public class GoogleDriveService {
         googleSignInClient.signOut().addOnCompleteListener(task -> {
             driveService = null;
             folderId = null;
+            accountKey = null;
             callback.onSuccess(null);
         });
     }
@@ -280,20 +708,6 @@ public class GoogleDriveService {
         return GoogleSignIn.getLastSignedInAccount(context);
     }
 
-    /**
-     * Lire complètement un InputStream
-     */
-    private byte[] readInputStream(InputStream inputStream) throws IOException {
-        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-        int nRead;
-        byte[] data = new byte[1024];
-        while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nRead);
-        }
-        buffer.flush();
-        return buffer.toByteArray();
-    }
-
     /**
      * Obtenir la liste des photos dans le dossier
      */
@@ -303,20 +717,15 @@ public class GoogleDriveService {
             return;
         }
 
-        executor.execute(() -> {
-            try {
-                String query = "parents in '" + folderId + "' and trashed=false and mimeType contains 'image/'";
-                FileList result = driveService.files().list()
-                        .setQ(query)
-                        .setFields("files(id,name,createdTime,size)")
-                        .execute();
-
-                callback.onSuccess(result);
+        scheduler.schedule(null, DriveTaskScheduler.Priority.BACKGROUND,
+                driveTask("la liste des fichiers", callback::onFailure, task -> {
+            String query = "parents in '" + folderId + "' and trashed=false and mimeType contains 'image/'";
+            FileList result = driveService.files().list()
+                    .setQ(query)
+                    .setFields("files(id,name,createdTime,size)")
+                    .execute();
 
-            } catch (IOException e) {
-                Log.e(TAG, "Erreur lors de la liste des fichiers", e);
-                callback.onFailure(e.getMessage());
-            }
-        });
+            callback.onSuccess(result);
+        }));
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.example.attendancesystem.services;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Callback rattaché au cycle de vie d'un écran (voir FirebaseManager.bind()).
+ * À la destruction de l'écran, la référence vers le callback d'origine (et donc vers l'activité)
+ * est libérée et l'observateur retiré : les requêtes encore en cours ne retiennent plus
+ * l'activité et leur résultat est ignoré.
+ */
+class LifecycleBoundCallback<T> implements FirebaseManager.DataCallback<T>, DefaultLifecycleObserver {
+    private static final String TAG = "LifecycleBoundCallback";
+
+    // Lu depuis les threads de conversion, remis à null sur le thread principal
+    private volatile FirebaseManager.DataCallback<T> delegate;
+
+    /**
+     * À appeler sur le thread principal (exigence de Lifecycle.addObserver)
+     */
+    LifecycleBoundCallback(LifecycleOwner owner, FirebaseManager.DataCallback<T> delegate) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        this.delegate = delegate;
+        lifecycle.addObserver(this);
+    }
+
+    /**
+     * Faux une fois l'écran détruit : le travail restant (conversion des résultats) peut être évité
+     */
+    boolean isActive() {
+        return delegate != null;
+    }
+
+    @Override
+    public void onSuccess(T data) {
+        FirebaseManager.DataCallback<T> callback = delegate;
+        if (callback != null) {
+            callback.onSuccess(data);
+        }
+    }
+
+    @Override
+    public void onFailure(String error) {
+        FirebaseManager.DataCallback<T> callback = delegate;
+        if (callback != null) {
+            callback.onFailure(error);
+        } else {
+            Log.d(TAG, "Erreur ignorée, écran détruit: " + error);
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        delegate = null;
+        owner.getLifecycle().removeObserver(this);
+    }
+}
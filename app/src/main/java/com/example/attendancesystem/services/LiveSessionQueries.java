@@ -0,0 +1,340 @@
+package com.example.attendancesystem.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.attendancesystem.models.Session;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sessions "en direct" partagées entre les écrans.
+ * Un seul addSnapshotListener par requête distincte (sessions d'aujourd'hui et des 7 jours suivants),
+ * complété par l'écoute des sessions en cours quelle que soit leur date (une session démarrée
+ * la veille ou jamais clôturée reste "en cours").
+ * Chaque mise à jour est diffusée à tous les abonnés avec les vues "aujourd'hui", "prochaine"
+ * et "en cours" calculées sur le même ensemble de sessions.
+ * Les sessions transmises sont partagées : les écrans ne doivent pas les modifier.
+ */
+public class LiveSessionQueries {
+    private static final String TAG = "LiveSessionQueries";
+
+    private static final int WINDOW_DAYS = 7;
+    // Délai avant de retirer un listener sans abonné (rotation, changement d'écran)
+    private static final long RELEASE_DELAY_MS = 5000;
+
+    private final FirebaseFirestore db;
+    private final String collection;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, LiveQuery> queries = new HashMap<>();
+
+    public interface SessionsListener {
+        void onSessionsChanged(SessionViews views);
+        void onFailure(String error);
+    }
+
+    /**
+     * Vues dérivées d'un même ensemble de sessions
+     */
+    public static class SessionViews {
+        private final List<Session> todaySessions;
+        private final Session nextSession;
+        private final Session activeSession;
+        private final boolean fromCache;
+
+        SessionViews(List<Session> todaySessions, Session nextSession, Session activeSession, boolean fromCache) {
+            this.todaySessions = todaySessions;
+            this.nextSession = nextSession;
+            this.activeSession = activeSession;
+            this.fromCache = fromCache;
+        }
+
+        public List<Session> getTodaySessions() { return todaySessions; }
+        public Session getNextSession() { return nextSession; }
+        public Session getActiveSession() { return activeSession; }
+        public boolean isFromCache() { return fromCache; }
+    }
+
+    /**
+     * Abonnement à une requête ; à retirer dans onStop()
+     */
+    public class Subscription {
+        private final LiveQuery query;
+        private SessionsListener listener;
+
+        private Subscription(LiveQuery query, SessionsListener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+
+        public void remove() {
+            if (listener != null) {
+                unsubscribe(query, listener);
+                listener = null;
+            }
+        }
+    }
+
+    private class LiveQuery {
+        final String key;
+        final Query query;
+        final Query activeQuery;
+        final Query beyondWindowQuery;
+        final List<Session> sessions = new ArrayList<>();
+        // Sessions en cours, sans fenêtre de dates
+        final List<Session> activeSessions = new ArrayList<>();
+        final List<SessionsListener> listeners = new ArrayList<>();
+        final Runnable release = this::release;
+
+        ListenerRegistration registration;
+        ListenerRegistration activeRegistration;
+        boolean loaded;
+        boolean fromCache;
+        // Prochaine session au-delà de la fenêtre (recherchée une seule fois si besoin)
+        boolean beyondWindowRequested;
+        Session beyondWindowSession;
+
+        LiveQuery(String key, Query query, Query activeQuery, Query beyondWindowQuery) {
+            this.key = key;
+            this.query = query;
+            this.activeQuery = activeQuery;
+            this.beyondWindowQuery = beyondWindowQuery;
+        }
+
+        void start() {
+            Log.d(TAG, "Écoute de " + key);
+            registration = query.addSnapshotListener((snapshot, error) -> {
+                if (error != null) {
+                    fail(error);
+                    return;
+                }
+                if (snapshot != null) {
+                    apply(snapshot);
+                    dispatch();
+                }
+            });
+            activeRegistration = activeQuery.addSnapshotListener((snapshot, error) -> {
+                if (error != null) {
+                    fail(error);
+                    return;
+                }
+                if (snapshot != null) {
+                    activeSessions.clear();
+                    for (DocumentSnapshot document : snapshot.getDocuments()) {
+                        activeSessions.add(FirebaseManager.toSession(document));
+                    }
+                    if (loaded) {
+                        dispatch();
+                    }
+                }
+            });
+        }
+
+        void fail(Exception error) {
+            if (registration == null) return; // Déjà signalé par l'autre listener
+            Log.e(TAG, "Erreur d'écoute " + key, error);
+            stop();
+            for (SessionsListener listener : new ArrayList<>(listeners)) {
+                listener.onFailure(error.getMessage());
+            }
+        }
+
+        /**
+         * Appliquer uniquement les documents modifiés à la liste triée
+         */
+        void apply(QuerySnapshot snapshot) {
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                switch (change.getType()) {
+                    case ADDED:
+                        sessions.add(change.getNewIndex(), FirebaseManager.toSession(change.getDocument()));
+                        break;
+                    case MODIFIED:
+                        Session session = FirebaseManager.toSession(change.getDocument());
+                        if (change.getOldIndex() == change.getNewIndex()) {
+                            sessions.set(change.getNewIndex(), session);
+                        } else {
+                            sessions.remove(change.getOldIndex());
+                            sessions.add(change.getNewIndex(), session);
+                        }
+                        break;
+                    case REMOVED:
+                        sessions.remove(change.getOldIndex());
+                        break;
+                }
+            }
+            loaded = true;
+            fromCache = snapshot.getMetadata().isFromCache();
+        }
+
+        void dispatch() {
+            SessionViews views = deriveViews(this);
+            for (SessionsListener listener : new ArrayList<>(listeners)) {
+                listener.onSessionsChanged(views);
+            }
+            if (views.getNextSession() == null && !beyondWindowRequested && !fromCache) {
+                requestBeyondWindow();
+            }
+        }
+
+        void requestBeyondWindow() {
+            beyondWindowRequested = true;
+            beyondWindowQuery.get().addOnSuccessListener(querySnapshot -> {
+                if (querySnapshot.isEmpty() || registration == null) return;
+                beyondWindowSession = FirebaseManager.toSession(querySnapshot.getDocuments().get(0));
+                dispatch();
+            });
+        }
+
+        void stop() {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+            if (activeRegistration != null) {
+                activeRegistration.remove();
+                activeRegistration = null;
+            }
+            queries.remove(key, this);
+        }
+
+        void release() {
+            if (listeners.isEmpty()) {
+                Log.d(TAG, "Fin d'écoute de " + key);
+                stop();
+            }
+        }
+    }
+
+    LiveSessionQueries(FirebaseFirestore db, String collection) {
+        this.db = db;
+        this.collection = collection;
+    }
+
+    /**
+     * Sessions d'un étudiant (par département, filière et année)
+     */
+    public Subscription subscribeStudent(String department, String field, String year, SessionsListener listener) {
+        Calendar window = startOfToday();
+        String key = "student|" + department + "|" + field + "|" + year + "|" + dayKey(window);
+        Query base = db.collection(collection)
+                .whereEqualTo("department", department)
+                .whereEqualTo("field", field)
+                .whereArrayContains("targetYears", year);
+        return subscribe(key, base, window, listener);
+    }
+
+    /**
+     * Sessions d'un enseignant
+     */
+    public Subscription subscribeTeacher(String teacherEmail, SessionsListener listener) {
+        Calendar window = startOfToday();
+        String key = "teacher|" + teacherEmail + "|" + dayKey(window);
+        Query base = db.collection(collection).whereEqualTo("teacherEmail", teacherEmail);
+        return subscribe(key, base, window, listener);
+    }
+
+    private Subscription subscribe(String key, Query base, Calendar windowStart, SessionsListener listener) {
+        LiveQuery live = queries.get(key);
+        if (live == null) {
+            Timestamp start = new Timestamp(windowStart.getTime());
+            windowStart.add(Calendar.DAY_OF_MONTH, WINDOW_DAYS);
+            Timestamp end = new Timestamp(windowStart.getTime());
+
+            Query query = base
+                    .whereGreaterThanOrEqualTo("startTime", start)
+                    .whereLessThan("startTime", end)
+                    .orderBy("startTime");
+            Query active = base.whereEqualTo("status", "active");
+            Query beyondWindow = base
+                    .whereIn("status", Arrays.asList("scheduled", "active"))
+                    .whereGreaterThanOrEqualTo("startTime", end)
+                    .orderBy("startTime")
+                    .limit(1);
+            live = new LiveQuery(key, query, active, beyondWindow);
+            queries.put(key, live);
+        }
+
+        handler.removeCallbacks(live.release);
+        live.listeners.add(listener);
+        if (live.registration == null) {
+            live.start();
+        } else if (live.loaded) {
+            // Résultat déjà en mémoire : aucune requête supplémentaire
+            listener.onSessionsChanged(deriveViews(live));
+        }
+        return new Subscription(live, listener);
+    }
+
+    private void unsubscribe(LiveQuery live, SessionsListener listener) {
+        live.listeners.remove(listener);
+        if (live.listeners.isEmpty() && live.registration != null) {
+            handler.postDelayed(live.release, RELEASE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Calculer les vues à l'instant présent (la prochaine session évolue avec l'heure)
+     */
+    private static SessionViews deriveViews(LiveQuery live) {
+        Date now = new Date();
+        Calendar tomorrow = startOfToday();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        Date startOfTomorrow = tomorrow.getTime();
+
+        List<Session> today = new ArrayList<>();
+        Session next = null;
+        Session active = null;
+        for (Session session : live.sessions) {
+            Date startTime = session.getStartTime() != null ? session.getStartTime().toDate() : null;
+            if (startTime == null) continue;
+
+            if (startTime.before(startOfTomorrow)) {
+                today.add(session);
+            }
+            if (next == null && !startTime.before(now) && (session.isScheduled() || session.isActive())) {
+                next = session;
+            }
+        }
+        if (next == null) {
+            next = live.beyondWindowSession;
+        }
+        // Session en cours la plus ancienne, même hors de la fenêtre
+        for (Session session : live.activeSessions) {
+            if (session == null || !session.isActive() || session.getStartTime() == null) continue;
+            if (active == null || session.getStartTime().compareTo(active.getStartTime()) < 0) {
+                active = session;
+            }
+        }
+        return new SessionViews(Collections.unmodifiableList(today), next, active, live.fromCache);
+    }
+
+    private static Calendar startOfToday() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+
+    private static String dayKey(Calendar calendar) {
+        return new SimpleDateFormat("yyyyMMdd", Locale.US).format(calendar.getTime());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.attendancesystem.services;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.FaceDetector;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.attendancesystem.utils.ProfileImagePreparer;
+
+import java.io.IOException;
+
+/**
+ * Empreinte faciale d'un étudiant calculée à partir de sa photo de profil, avec le modèle
+ * enregistré (FaceEmbedders) et le même cadrage du visage que FaceFrameAnalyzer.
+ */
+final class ProfileFaceEmbedding {
+    private static final String TAG = "ProfileFaceEmbedding";
+
+    private static final int DETECTION_MAX_DIMENSION = 640;
+    private static final int MAX_FACES = 4;
+
+    private ProfileFaceEmbedding() {}
+
+    /**
+     * Empreinte du visage le plus grand de la photo ; null si le modèle ne peut pas être chargé,
+     * sans visage détecté ou si la photo est illisible (à appeler hors du thread principal)
+     */
+    static float[] compute(Context context, Uri imageUri) {
+        FaceEmbedder embedder;
+        Bitmap photo;
+        try {
+            embedder = FaceEmbedders.create(context);
+            photo = ProfileImagePreparer.decode(context, imageUri, DETECTION_MAX_DIMENSION);
+        } catch (IOException e) {
+            Log.w(TAG, "Empreinte de la photo de profil impossible", e);
+            return null;
+        }
+
+        // FaceDetector exige du RGB_565 et une largeur paire
+        int width = photo.getWidth() & ~1;
+        Bitmap detection = Bitmap.createBitmap(width, photo.getHeight(), Bitmap.Config.RGB_565);
+        new Canvas(detection).drawBitmap(photo, 0, 0, null);
+        FaceDetector.Face[] faces = new FaceDetector.Face[MAX_FACES];
+        int found = new FaceDetector(width, photo.getHeight(), MAX_FACES).findFaces(detection, faces);
+        detection.recycle();
+
+        FaceDetector.Face largest = null;
+        for (int i = 0; i < found; i++) {
+            if (largest == null || faces[i].eyesDistance() > largest.eyesDistance()) {
+                largest = faces[i];
+            }
+        }
+        if (largest == null) {
+            Log.d(TAG, "Aucun visage sur la photo de profil");
+            photo.recycle();
+            return null;
+        }
+
+        PointF midPoint = new PointF();
+        largest.getMidPoint(midPoint);
+        Rect source = new Rect();
+        FaceFrameAnalyzer.faceBox(midPoint.x, midPoint.y, largest.eyesDistance(),
+                photo.getWidth(), photo.getHeight(), source);
+        int size = embedder.getInputSize();
+        Bitmap face = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        new Canvas(face).drawBitmap(photo, source, new RectF(0, 0, size, size), new Paint(Paint.FILTER_BITMAP_FLAG));
+        photo.recycle();
+
+        float[] embedding = embedder.embed(face);
+        face.recycle();
+        return embedding;
+    }
+}
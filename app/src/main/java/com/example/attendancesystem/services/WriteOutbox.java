@@ -0,0 +1,490 @@
+package com.example.attendancesystem.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.attendancesystem.models.AttendanceRollup;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Écritures de présences, sessions et justifications, et journal des bilans d'assiduité.
+ * - set/update sont confiés tout de suite à Firestore : l'écriture est appliquée au cache local
+ *   (lectures et listeners la voient, même hors connexion) et conservée par le SDK jusqu'à
+ *   sa validation. onSuccess est appelé dès cette application locale, sans attendre le serveur ;
+ *   onFailure est appelé plus tard si le serveur la refuse (le SDK annule alors l'écriture locale).
+ * - bilans d'assiduité : la transaction est impossible hors connexion, l'opération est donc
+ *   ajoutée à un journal persistant (fichier JSON, une ligne par opération) traité à part,
+ *   dans l'ordre, avec un backoff exponentiel sur les erreurs temporaires. Il ne retarde
+ *   jamais les autres écritures. La transaction relit le statut déjà compté pour la séance
+ *   (AttendanceRollup.statusUpdate) : rejouer une opération déjà appliquée ne change rien.
+ */
+class WriteOutbox {
+    private static final String TAG = "WriteOutbox";
+
+    // Étudiants par transaction de bilan (chaque bilan est relu puis écrit)
+    private static final int ROLLUP_CHUNK_SIZE = 100;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+    // Compacter le journal quand il contient trop de lignes déjà traitées
+    private static final int COMPACT_MIN_LINES = 64;
+
+    // Champs réservés pour les types Firestore dans le JSON du journal
+    private static final String TIMESTAMP_KEY = "$timestamp";
+    private static final String DATE_KEY = "$date";
+
+    enum Type {
+        ROLLUP   // Statut des étudiants d'une session dans leurs bilans
+    }
+
+    /**
+     * Opération du journal
+     */
+    static class Mutation {
+        String id; // Identifiant dans le journal
+        Type type;
+        String path;
+        JsonObject data;
+        long createdAt;
+        int attempts;
+    }
+
+    /**
+     * Ligne du journal : ajout ou fin d'une opération
+     */
+    private static class Record {
+        static final String ADD = "add";
+        static final String DONE = "done";
+
+        String op;
+        String id;
+        Mutation mutation;
+
+        Record(String op, String id, Mutation mutation) {
+            this.op = op;
+            this.id = id;
+            this.mutation = mutation;
+        }
+    }
+
+    private final FirebaseFirestore db;
+    private final String rollupCollection;
+    private final File journalFile;
+    // serializeNulls : un champ null des données doit être rejoué tel quel
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+    private final Random random = new Random();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Un seul thread : journal, transactions de bilan et réessais sont traités dans l'ordre
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<Mutation> pending = new ArrayList<>();
+    private Mutation inFlight;
+    private boolean retryScheduled;
+    private int journalLines;
+
+    WriteOutbox(FirebaseFirestore db, File journalFile, String rollupCollection) {
+        this.db = db;
+        this.journalFile = journalFile;
+        this.rollupCollection = rollupCollection;
+        executor.execute(() -> {
+            load();
+            sendNext();
+        });
+    }
+
+    /**
+     * Écrire un document complet (set) ; l'identifiant du document doit être fixé par l'appelant
+     */
+    void set(DocumentReference reference, Map<String, Object> data, FirebaseManager.DataCallback<Void> callback) {
+        report(reference.set(data), "set " + reference.getPath(), callback);
+    }
+
+    /**
+     * Mettre à jour un document (différences ou état complet)
+     */
+    void update(DocumentReference reference, Map<String, Object> data, FirebaseManager.DataCallback<Void> callback) {
+        report(reference.update(data), "update " + reference.getPath(), callback);
+    }
+
+    /**
+     * Succès dès l'application locale, refus du serveur signalé ensuite (callbacks sur le thread principal)
+     */
+    private void report(Task<Void> write, String operation, FirebaseManager.DataCallback<Void> callback) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onSuccess(null));
+        }
+        write.addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                Log.d(TAG, operation + " validé");
+                return;
+            }
+            Exception e = task.getException();
+            Log.e(TAG, operation + " refusé", e);
+            if (callback != null) {
+                callback.onFailure(e != null ? e.getMessage() : "Écriture refusée");
+            }
+        });
+    }
+
+    /**
+     * Reporter le statut des étudiants d'une session dans leurs bilans (statut par email),
+     * découpé en transactions de ROLLUP_CHUNK_SIZE étudiants
+     */
+    void rollup(String sessionId, String courseId, Date sessionDate, Map<String, String> statuses) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(statuses.entrySet());
+        List<Mutation> chunks = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += ROLLUP_CHUNK_SIZE) {
+            JsonObject students = new JsonObject();
+            for (Map.Entry<String, String> entry : entries.subList(start, Math.min(entries.size(), start + ROLLUP_CHUNK_SIZE))) {
+                students.addProperty(entry.getKey(), entry.getValue());
+            }
+            JsonObject data = new JsonObject();
+            data.addProperty("sessionId", sessionId);
+            if (courseId != null) {
+                data.addProperty("courseId", courseId);
+            }
+            data.add("sessionDate", encodeValue(sessionDate));
+            data.add("statuses", students);
+            chunks.add(newMutation(Type.ROLLUP, rollupCollection, data));
+        }
+        executor.execute(() -> {
+            for (Mutation chunk : chunks) {
+                pending.add(chunk);
+                append(new Record(Record.ADD, chunk.id, chunk));
+            }
+            sendNext();
+        });
+    }
+
+    private Mutation newMutation(Type type, String path, JsonObject data) {
+        Mutation mutation = new Mutation();
+        mutation.id = UUID.randomUUID().toString();
+        mutation.type = type;
+        mutation.path = path;
+        mutation.data = data;
+        mutation.createdAt = System.currentTimeMillis();
+        return mutation;
+    }
+
+    // =================== BILANS ===================
+
+    private void sendNext() {
+        if (inFlight != null || retryScheduled || pending.isEmpty()) {
+            return;
+        }
+        Mutation mutation = pending.get(0);
+        inFlight = mutation;
+
+        Task<Void> write;
+        try {
+            write = applyRollup(mutation);
+        } catch (RuntimeException e) {
+            onApplied(mutation, e);
+            return;
+        }
+        write.addOnCompleteListener(executor, task -> onApplied(mutation, task.isSuccessful() ? null : task.getException()));
+    }
+
+    /**
+     * Les bilans sont relus dans la transaction : une séance déjà comptée avec le même statut
+     * n'est pas comptée deux fois (rejeu après un redémarrage, autre appareil, rattrapage)
+     */
+    private Task<Void> applyRollup(Mutation mutation) {
+        String sessionId = sessionIdOf(mutation);
+        String courseId = mutation.data.has("courseId") ? mutation.data.get("courseId").getAsString() : null;
+        Date sessionDate = (Date) decodeValue(mutation.data.get("sessionDate"));
+        JsonObject statuses = mutation.data.getAsJsonObject("statuses");
+
+        return db.runTransaction(transaction -> {
+            // Toutes les lectures avant les écritures
+            Map<String, DocumentSnapshot> rollups = new HashMap<>();
+            for (String studentEmail : statuses.keySet()) {
+                rollups.put(studentEmail, transaction.get(db.collection(mutation.path).document(studentEmail)));
+            }
+            Date now = new Date();
+            for (Map.Entry<String, JsonElement> student : statuses.entrySet()) {
+                String studentEmail = student.getKey();
+                DocumentSnapshot current = rollups.get(studentEmail);
+                Map<String, Object> update = AttendanceRollup.statusUpdate(studentEmail, sessionId, courseId,
+                        sessionDate, student.getValue().getAsString(), AttendanceRollup.sessionsIn(current),
+                        AttendanceRollup.daysIn(current), now);
+                if (update != null) {
+                    transaction.set(db.collection(mutation.path).document(studentEmail), update, SetOptions.merge());
+                }
+            }
+            return null;
+        });
+    }
+
+    private void onApplied(Mutation mutation, Exception error) {
+        inFlight = null;
+        if (error == null) {
+            complete(mutation);
+            Log.d(TAG, "Bilans de la session " + sessionIdOf(mutation) + " à jour, " + pending.size() + " en attente");
+        } else if (isTransient(error)) {
+            // Hors connexion (UNAVAILABLE) compris : l'opération reste en tête du journal des bilans
+            mutation.attempts++;
+            long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(mutation.attempts - 1, 6))
+                    + random.nextInt((int) INITIAL_BACKOFF_MS);
+            Log.w(TAG, "Bilans de la session " + sessionIdOf(mutation) + " : essai " + mutation.attempts
+                    + " échoué, nouvel essai dans " + delay + " ms", error);
+            retryScheduled = true;
+            executor.schedule(() -> {
+                retryScheduled = false;
+                sendNext();
+            }, delay, TimeUnit.MILLISECONDS);
+            return;
+        } else {
+            // Refus définitif (droits...) : le rejouer ne changerait rien ; le rattrapage
+            // du bilan (FirebaseManager.backfillRollup) recalcule les statuts depuis les sessions
+            Log.e(TAG, "Bilans de la session " + sessionIdOf(mutation) + " abandonnés", error);
+            complete(mutation);
+        }
+        sendNext();
+    }
+
+    private static String sessionIdOf(Mutation mutation) {
+        return mutation.data.get("sessionId").getAsString();
+    }
+
+    private void complete(Mutation mutation) {
+        pending.remove(mutation);
+        append(new Record(Record.DONE, mutation.id, null));
+    }
+
+    private static boolean isTransient(Exception error) {
+        if (!(error instanceof FirebaseFirestoreException)) {
+            return false;
+        }
+        switch (((FirebaseFirestoreException) error).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case ABORTED:
+            case RESOURCE_EXHAUSTED:
+            case INTERNAL:
+            case UNKNOWN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // =================== JOURNAL ===================
+
+    /**
+     * Relire le journal au démarrage (une ligne incomplète après un arrêt brutal est ignorée)
+     */
+    private void load() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        Map<String, Mutation> mutations = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record;
+                try {
+                    record = gson.fromJson(line, Record.class);
+                } catch (JsonParseException e) {
+                    Log.w(TAG, "Ligne du journal illisible ignorée", e);
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+                if (Record.DONE.equals(record.op)) {
+                    mutations.remove(record.id);
+                } else if (record.mutation != null && record.mutation.type == Type.ROLLUP) {
+                    mutations.put(record.id, record.mutation);
+                } else {
+                    Log.w(TAG, "Opération inconnue ignorée: " + record.id);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Lecture du journal impossible", e);
+        }
+        pending.addAll(mutations.values());
+        Log.d(TAG, pending.size() + " opérations de bilan reprises du journal");
+        compact();
+    }
+
+    /**
+     * Ajouter une ligne au journal et la forcer sur le disque
+     */
+    private void append(Record record) {
+        // Le journal réécrit reflète déjà l'opération (ajoutée ou retirée de la file)
+        if (shouldCompact() && compact()) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(gson.toJson(record));
+            writer.write('\n');
+            writer.flush();
+            out.getFD().sync();
+            journalLines++;
+        } catch (IOException e) {
+            Log.e(TAG, "Écriture du journal impossible", e);
+        }
+    }
+
+    private boolean shouldCompact() {
+        return journalLines >= COMPACT_MIN_LINES && journalLines >= 4 * pending.size();
+    }
+
+    /**
+     * Réécrire le journal avec les seules opérations en attente (fichier temporaire puis renommage)
+     */
+    private boolean compact() {
+        if (pending.isEmpty()) {
+            if (journalFile.exists() && !journalFile.delete()) {
+                Log.w(TAG, "Suppression du journal impossible");
+                return false;
+            }
+            journalLines = 0;
+            return true;
+        }
+        File temp = new File(journalFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (Mutation mutation : pending) {
+                writer.write(gson.toJson(new Record(Record.ADD, mutation.id, mutation)));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Compactage du journal impossible", e);
+            return false;
+        }
+        if (!temp.renameTo(journalFile)) {
+            Log.e(TAG, "Remplacement du journal impossible");
+            return false;
+        }
+        journalLines = pending.size();
+        return true;
+    }
+
+    // =================== ENCODAGE ===================
+
+    /**
+     * Données Firestore -> JSON (Timestamp et Date sont marqués pour être restaurés)
+     */
+    static JsonObject encode(Map<String, Object> data) {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            json.add(field.getKey(), encodeValue(field.getValue()));
+        }
+        return json;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JsonElement encodeValue(Object value) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        } else if (value instanceof String) {
+            return new JsonPrimitive((String) value);
+        } else if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        } else if (value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        } else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            JsonArray parts = new JsonArray();
+            parts.add(timestamp.getSeconds());
+            parts.add(timestamp.getNanoseconds());
+            JsonObject json = new JsonObject();
+            json.add(TIMESTAMP_KEY, parts);
+            return json;
+        } else if (value instanceof Date) {
+            JsonObject json = new JsonObject();
+            json.addProperty(DATE_KEY, ((Date) value).getTime());
+            return json;
+        } else if (value instanceof List) {
+            JsonArray array = new JsonArray();
+            for (Object item : (List<Object>) value) {
+                array.add(encodeValue(item));
+            }
+            return array;
+        } else if (value instanceof Map) {
+            return encode((Map<String, Object>) value);
+        }
+        throw new IllegalArgumentException("Type non journalisable: " + value.getClass().getName());
+    }
+
+    static Map<String, Object> decode(JsonObject json) {
+        Map<String, Object> data = new HashMap<>();
+        for (Map.Entry<String, JsonElement> field : json.entrySet()) {
+            data.put(field.getKey(), decodeValue(field.getValue()));
+        }
+        return data;
+    }
+
+    private static Object decodeValue(JsonElement json) {
+        if (json == null || json.isJsonNull()) {
+            return null;
+        } else if (json.isJsonArray()) {
+            List<Object> list = new ArrayList<>();
+            for (JsonElement item : json.getAsJsonArray()) {
+                list.add(decodeValue(item));
+            }
+            return list;
+        } else if (json.isJsonObject()) {
+            JsonObject object = json.getAsJsonObject();
+            if (object.size() == 1 && object.has(TIMESTAMP_KEY)) {
+                JsonArray parts = object.getAsJsonArray(TIMESTAMP_KEY);
+                return new Timestamp(parts.get(0).getAsLong(), parts.get(1).getAsInt());
+            }
+            if (object.size() == 1 && object.has(DATE_KEY)) {
+                return new Date(object.get(DATE_KEY).getAsLong());
+            }
+            return decode(object);
+        }
+        JsonPrimitive primitive = json.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        } else if (primitive.isNumber()) {
+            // Firestore stocke les entiers en 64 bits
+            String number = primitive.getAsString();
+            return number.contains(".") || number.contains("e") || number.contains("E")
+                    ? primitive.getAsDouble() : (Object) primitive.getAsLong();
+        }
+        return primitive.getAsString();
+    }
+}
@@ -24,6 +24,7 @@ public class AdminJustificationAdapter extends RecyclerView.Adapter<AdminJustifi
 
     private List<Justification> justifications;
     private OnJustificationActionListener listener;
+    private final LoadMoreTrigger loadMoreTrigger = new LoadMoreTrigger(); // Pagination
     private SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
 
     public interface OnJustificationActionListener {
@@ -47,6 +48,7 @@ public class AdminJustificationAdapter extends RecyclerView.Adapter<AdminJustifi
     public void onBindViewHolder(@NonNull JustificationViewHolder holder, int position) {
         Justification justification = justifications.get(position);
         holder.bind(justification);
+        loadMoreTrigger.onItemBound(holder.itemView, position, getItemCount());
     }
 
     @Override
@@ -54,6 +56,13 @@ public class AdminJustificationAdapter extends RecyclerView.Adapter<AdminJustifi
         return justifications.size();
     }
 
+    /**
+     * Chargement de la page suivante à l'approche de la fin de la liste
+     */
+    public LoadMoreTrigger getLoadMoreTrigger() {
+        return loadMoreTrigger;
+    }
+
     public class JustificationViewHolder extends RecyclerView.ViewHolder {
         TextView tvStudentName, tvCourseName, tvJustificationDate, tvReason, tvDescription, tvStatus;
         Button btnApprove, btnReject, btnConfirmAction;
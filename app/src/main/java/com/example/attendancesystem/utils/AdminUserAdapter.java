@@ -5,6 +5,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -21,6 +22,11 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
 
     private List<Object> users; // Can hold Student or Teacher
     private OnUserActionListener listener;
+    private final LoadMoreTrigger loadMoreTrigger = new LoadMoreTrigger(); // Pagination
+
+    // Nombre de lignes suivantes dont les avatars sont préchargés
+    private static final int AVATAR_PRELOAD_AHEAD = 8;
+    private int avatarsPreloadedUntil; // Position (exclue) jusqu'à laquelle le préchargement est lancé
 
     public interface OnUserActionListener {
         void onEditClick(Object user);
@@ -31,6 +37,13 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
     public AdminUserAdapter(List<Object> users, OnUserActionListener listener) {
         this.users = users;
         this.listener = listener;
+        // Liste modifiée (rechargement, filtre) : les positions préchargées ne sont plus valables
+        registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                avatarsPreloadedUntil = 0;
+            }
+        });
     }
 
     @NonNull
@@ -44,6 +57,21 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
         Object user = users.get(position);
         holder.bind(user);
+        preloadAvatars(holder, position);
+        loadMoreTrigger.onItemBound(holder.itemView, position, getItemCount());
+    }
+
+    /**
+     * Précharger les avatars des lignes qui vont apparaître pendant le défilement
+     */
+    private void preloadAvatars(UserViewHolder holder, int position) {
+        int end = Math.min(position + 1 + AVATAR_PRELOAD_AHEAD, users.size());
+        if (end <= avatarsPreloadedUntil) {
+            return;
+        }
+        int start = Math.max(position + 1, avatarsPreloadedUntil);
+        AvatarLoader.preloadThumbnails(holder.itemView.getContext(), users, start, end);
+        avatarsPreloadedUntil = end;
     }
 
     @Override
@@ -51,12 +79,21 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
         return users.size();
     }
 
+    /**
+     * Chargement de la page suivante à l'approche de la fin de la liste
+     */
+    public LoadMoreTrigger getLoadMoreTrigger() {
+        return loadMoreTrigger;
+    }
+
     public class UserViewHolder extends RecyclerView.ViewHolder {
+        ImageView ivUserAvatar;
         TextView tvUserName, tvUserEmail, tvUserTypeId, tvUserDepartment, tvUserStatus;
         AppCompatButton btnEditUser, btnToggleStatus, btnRemoveUser; // Added: Reference for remove button
 
         public UserViewHolder(@NonNull View itemView) {
             super(itemView);
+            ivUserAvatar = itemView.findViewById(R.id.iv_user_avatar);
             tvUserName = itemView.findViewById(R.id.tv_user_name);
             tvUserEmail = itemView.findViewById(R.id.tv_user_email);
             tvUserTypeId = itemView.findViewById(R.id.tv_user_type_id);
@@ -111,6 +148,7 @@ public class AdminUserAdapter extends RecyclerView.Adapter<AdminUserAdapter.User
                 statusColor = Color.BLACK;
             }
 
+            AvatarLoader.loadThumbnail(ivUserAvatar, user);
             tvUserTypeId.setText("Type: " + typeIdText);
             tvUserStatus.setText("Statut: " + statusText);
             tvUserStatus.setTextColor(statusColor);
@@ -0,0 +1,132 @@
+package com.example.attendancesystem.utils;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.signature.ObjectKey;
+import com.example.attendancesystem.R;
+import com.example.attendancesystem.models.Admin;
+import com.example.attendancesystem.models.Student;
+import com.example.attendancesystem.models.Teacher;
+
+import java.util.List;
+
+/**
+ * Affichage des photos de profil (Drive) avec les deux niveaux de cache de Glide :
+ * LRU mémoire des images décodées (taille bornée par Glide selon la mémoire de l'appareil)
+ * et cache disque des fichiers téléchargés.
+ * La clé est l'URL du fichier Drive (uc?id=fileId) plus la révision de la photo :
+ * une photo remplacée (même fichier, même URL) est donc rechargée une seule fois.
+ */
+public class AvatarLoader {
+
+    // Taille fixe des miniatures : même clé en mémoire pour le préchargement et l'affichage
+    private static final int THUMBNAIL_SIZE = ProfileImagePreparer.THUMBNAIL_MAX_DIMENSION;
+
+    private AvatarLoader() {}
+
+    /**
+     * Miniature ronde pour les listes
+     */
+    public static void loadThumbnail(ImageView imageView, Object user) {
+        String url = getThumbnailUrl(user);
+        if (isEmpty(url)) {
+            showPlaceholder(imageView);
+            return;
+        }
+        thumbnailRequest(Glide.with(imageView), url, getRevision(user)).into(imageView);
+    }
+
+    /**
+     * Photo complète (écran de profil) ; la miniature en cache s'affiche en attendant
+     */
+    public static void loadProfilePhoto(ImageView imageView, Object user) {
+        String url = getPhotoUrl(user);
+        if (isEmpty(url)) {
+            showPlaceholder(imageView);
+            return;
+        }
+        RequestManager requestManager = Glide.with(imageView);
+        RequestBuilder<Drawable> request = request(requestManager, url, getRevision(user))
+                .circleCrop();
+        String thumbnailUrl = getThumbnailUrl(user);
+        if (!isEmpty(thumbnailUrl)) {
+            request = request.thumbnail(thumbnailRequest(requestManager, thumbnailUrl, getRevision(user)));
+        }
+        request.into(imageView);
+    }
+
+    /**
+     * Précharger les miniatures des utilisateurs [from, to) (lignes bientôt visibles)
+     */
+    public static void preloadThumbnails(Context context, List<?> users, int from, int to) {
+        RequestManager requestManager = Glide.with(context);
+        for (int i = Math.max(0, from); i < Math.min(to, users.size()); i++) {
+            Object user = users.get(i);
+            String url = getThumbnailUrl(user);
+            if (!isEmpty(url)) {
+                thumbnailRequest(requestManager, url, getRevision(user)).preload(THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            }
+        }
+    }
+
+    private static RequestBuilder<Drawable> thumbnailRequest(RequestManager requestManager, String url, String revision) {
+        return request(requestManager, url, revision)
+                .override(THUMBNAIL_SIZE)
+                .circleCrop();
+    }
+
+    private static RequestBuilder<Drawable> request(RequestManager requestManager, String url, String revision) {
+        return requestManager
+                .load(new GlideUrl(url))
+                .signature(new ObjectKey(revision != null ? revision : ""))
+                // Fichiers déjà compressés et de petite taille : garder l'original sur disque
+                .diskCacheStrategy(DiskCacheStrategy.DATA)
+                .placeholder(R.drawable.ic_person)
+                .error(R.drawable.ic_person);
+    }
+
+    private static void showPlaceholder(ImageView imageView) {
+        Glide.with(imageView).clear(imageView);
+        imageView.setImageResource(R.drawable.ic_person);
+    }
+
+    /**
+     * Miniature si elle existe, sinon la photo (anciens profils sans miniature)
+     */
+    private static String getThumbnailUrl(Object user) {
+        String thumbnailUrl = null;
+        if (user instanceof Student) {
+            thumbnailUrl = ((Student) user).getProfileThumbnailUrl();
+        } else if (user instanceof Teacher) {
+            thumbnailUrl = ((Teacher) user).getProfileThumbnailUrl();
+        } else if (user instanceof Admin) {
+            thumbnailUrl = ((Admin) user).getProfileThumbnailUrl();
+        }
+        return !isEmpty(thumbnailUrl) ? thumbnailUrl : getPhotoUrl(user);
+    }
+
+    private static String getPhotoUrl(Object user) {
+        if (user instanceof Student) return ((Student) user).getProfileImageUrl();
+        if (user instanceof Teacher) return ((Teacher) user).getProfileImageUrl();
+        if (user instanceof Admin) return ((Admin) user).getProfileImageUrl();
+        return null;
+    }
+
+    private static String getRevision(Object user) {
+        if (user instanceof Student) return ((Student) user).getProfileImageRevision();
+        if (user instanceof Teacher) return ((Teacher) user).getProfileImageRevision();
+        if (user instanceof Admin) return ((Admin) user).getProfileImageRevision();
+        return null;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
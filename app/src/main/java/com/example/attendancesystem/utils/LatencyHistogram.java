@@ -0,0 +1,72 @@
+package com.example.attendancesystem.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Histogramme des durées d'une étape, par compartiments en puissances de 2 de microsecondes
+ * (jusqu'à environ 1 s) : médiane et p95 approchées sans conserver chaque mesure.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 21; // [0, 1 µs), [1, 2), [2, 4) ... [2^19 µs, +inf)
+
+    private final String name;
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public synchronized void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts[bucket]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Borne supérieure (µs) du compartiment contenant le centile demandé (0 à 1)
+     */
+    public synchronized long percentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return bucket == BUCKETS - 1 ? maxMicros : Math.min(1L << bucket, maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    /**
+     * Résumé pour les logs, ex. "détection: n=100 moy=12.3 ms p50≤16.4 ms p95≤32.8 ms max=40.1 ms"
+     */
+    public synchronized String summary() {
+        if (count == 0) {
+            return name + ": aucune mesure";
+        }
+        return String.format(Locale.US, "%s: n=%d moy=%.1f ms p50≤%.1f ms p95≤%.1f ms max=%.1f ms",
+                name, count, totalMicros / 1000.0 / count,
+                percentileMicros(0.5) / 1000.0, percentileMicros(0.95) / 1000.0, maxMicros / 1000.0);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.attendancesystem.utils;
+
+import android.view.View;
+
+/**
+ * Déclenche le chargement de la page suivante quand une liste paginée approche de sa fin.
+ * Utilisé par les adapters dans onBindViewHolder ; l'activité signale la fin du chargement
+ * avec setLoading(false) et indique s'il reste des pages avec setHasMore().
+ */
+public class LoadMoreTrigger {
+
+    public interface OnLoadMoreListener {
+        void onLoadMore();
+    }
+
+    // Nombre d'éléments restants avant la fin à partir duquel on charge la page suivante
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private OnLoadMoreListener listener;
+    private boolean hasMore;
+    private boolean loading;
+
+    public void setOnLoadMoreListener(OnLoadMoreListener listener) {
+        this.listener = listener;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * À appeler pour chaque élément affiché.
+     * Le listener est posté sur la vue : l'adapter ne peut pas être modifié pendant un bind.
+     */
+    public void onItemBound(View itemView, int position, int itemCount) {
+        if (listener == null || !hasMore || loading) {
+            return;
+        }
+        if (position >= itemCount - PREFETCH_DISTANCE) {
+            loading = true;
+            itemView.post(listener::onLoadMore);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.attendancesystem.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Préparation d'une photo de profil avant l'envoi vers Drive :
+ * décodage sous-échantillonné (inSampleSize), correction de l'orientation EXIF,
+ * redimensionnement, réencodage (WebP à partir d'Android 11, JPEG sinon) et miniature.
+ * Les fichiers produits sont écrits dans le cache de l'application.
+ */
+public class ProfileImagePreparer {
+    private static final String TAG = "ProfileImagePreparer";
+
+    public static final int PHOTO_MAX_DIMENSION = 1024;
+    public static final int THUMBNAIL_MAX_DIMENSION = 192;
+    private static final int PHOTO_QUALITY = 85;
+    private static final int THUMBNAIL_QUALITY = 80;
+
+    /**
+     * Photo et miniature prêtes à être envoyées
+     */
+    public static class PreparedImage {
+        private final File photo;
+        private final File thumbnail;
+        private final String mimeType;
+        private final String extension;
+
+        PreparedImage(File photo, File thumbnail, String mimeType, String extension) {
+            this.photo = photo;
+            this.thumbnail = thumbnail;
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+
+        public File getPhoto() { return photo; }
+        public File getThumbnail() { return thumbnail; }
+        public String getMimeType() { return mimeType; }
+        public String getExtension() { return extension; }
+
+        /**
+         * Supprimer les fichiers temporaires après l'envoi
+         */
+        public void delete() {
+            if (!photo.delete()) photo.deleteOnExit();
+            if (!thumbnail.delete()) thumbnail.deleteOnExit();
+        }
+    }
+
+    private ProfileImagePreparer() {}
+
+    /**
+     * Préparer l'image désignée par l'URI (à appeler hors du thread principal)
+     */
+    public static PreparedImage prepare(Context context, Uri imageUri) throws IOException {
+        Bitmap photo = decode(context, imageUri, PHOTO_MAX_DIMENSION);
+        String dimensions = photo.getWidth() + "x" + photo.getHeight();
+        Bitmap thumbnail = transform(photo, ExifInterface.ORIENTATION_NORMAL, THUMBNAIL_MAX_DIMENSION);
+
+        // Réencodage
+        boolean webp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+        String extension = webp ? "webp" : "jpg";
+        String mimeType = webp ? "image/webp" : "image/jpeg";
+        File photoFile = null;
+        File thumbnailFile = null;
+        try {
+            photoFile = File.createTempFile("profile_", "." + extension, context.getCacheDir());
+            thumbnailFile = File.createTempFile("profile_thumb_", "." + extension, context.getCacheDir());
+            compress(photo, webp, PHOTO_QUALITY, photoFile);
+            compress(thumbnail, webp, THUMBNAIL_QUALITY, thumbnailFile);
+        } catch (IOException | RuntimeException e) {
+            // Pas de fichier temporaire à moitié écrit laissé dans le cache
+            deleteQuietly(photoFile);
+            deleteQuietly(thumbnailFile);
+            throw e;
+        } finally {
+            if (thumbnail != photo) {
+                thumbnail.recycle();
+            }
+            photo.recycle();
+        }
+
+        Log.d(TAG, "Image préparée: " + dimensions
+                + " -> " + photoFile.length() / 1024 + " Ko (" + extension + "), miniature "
+                + thumbnailFile.length() / 1024 + " Ko");
+        return new PreparedImage(photoFile, thumbnailFile, mimeType, extension);
+    }
+
+    /**
+     * Décoder l'image redressée (orientation EXIF), le plus grand côté réduit à maxDimension
+     * (à appeler hors du thread principal)
+     */
+    public static Bitmap decode(Context context, Uri imageUri, int maxDimension) throws IOException {
+        // 1. Lire uniquement les dimensions
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = context.getContentResolver().openInputStream(imageUri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Format d'image non reconnu");
+        }
+
+        // 2. Décoder directement à une taille proche de la cible
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, maxDimension);
+        Bitmap decoded;
+        try (InputStream in = context.getContentResolver().openInputStream(imageUri)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Impossible de décoder l'image");
+        }
+
+        // 3. Orientation + taille finale en une seule transformation
+        int orientation = readOrientation(context, imageUri);
+        Bitmap photo = transform(decoded, orientation, maxDimension);
+        if (photo != decoded) {
+            decoded.recycle();
+        }
+        return photo;
+    }
+
+    /**
+     * Empreinte SHA-256 (hexadécimal) de l'image source, calculée en flux
+     */
+    public static String computeSha256(Context context, Uri imageUri) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 indisponible", e);
+        }
+        try (InputStream in = context.getContentResolver().openInputStream(imageUri)) {
+            if (in == null) {
+                throw new IOException("Image introuvable");
+            }
+            DigestInputStream digestStream = new DigestInputStream(in, digest);
+            byte[] buffer = new byte[8192];
+            while (digestStream.read(buffer) != -1) {
+                // Le digest est mis à jour pendant la lecture
+            }
+        }
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Plus grande puissance de 2 qui garde le plus grand côté au-dessus de la cible
+     */
+    static int calculateInSampleSize(int width, int height, int maxDimension) {
+        int sampleSize = 1;
+        int largest = Math.max(width, height);
+        while (largest / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int readOrientation(Context context, Uri imageUri) {
+        try (InputStream in = context.getContentResolver().openInputStream(imageUri)) {
+            if (in == null) return ExifInterface.ORIENTATION_NORMAL;
+            return new ExifInterface(in).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Orientation EXIF illisible", e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Appliquer l'orientation EXIF et réduire le plus grand côté à maxDimension
+     */
+    private static Bitmap transform(Bitmap source, int orientation, int maxDimension) {
+        Matrix matrix = new Matrix();
+        boolean identity = true;
+
+        int largest = Math.max(source.getWidth(), source.getHeight());
+        if (largest > maxDimension) {
+            float scale = (float) maxDimension / largest;
+            matrix.postScale(scale, scale);
+            identity = false;
+        }
+
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+            default:
+                if (identity) {
+                    return source;
+                }
+                break;
+        }
+        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static void compress(Bitmap bitmap, boolean webp, int quality, File target) throws IOException {
+        Bitmap.CompressFormat format = webp ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.JPEG;
+        try (OutputStream out = new FileOutputStream(target)) {
+            if (!bitmap.compress(format, quality, out)) {
+                throw new IOException("Échec de l'encodage de l'image");
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.attendancesystem.utils;
+
+import com.example.attendancesystem.models.Student;
+import com.example.attendancesystem.models.Teacher;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Index de recherche en mémoire sur le nom, l'email et le matricule des utilisateurs (Student/Teacher).
+ * Construit au fur et à mesure des pages chargées ; la recherche se fait sans tenir compte
+ * de la casse ni des accents.
+ * - Termes de 3 caractères ou plus : recherche de sous-chaîne via les trigrammes.
+ * - Termes de 1 ou 2 caractères : début de mot (préfixes indexés).
+ * Les candidats de la liste de postings la plus courte sont ensuite vérifiés sur le texte normalisé.
+ */
+public class UserSearchIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final List<Object> users = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();       // Mots précédés d'un espace, puis champs normalisés
+    private final Map<String, Integer> idsByEmail = new HashMap<>();
+    private final BitSet removed = new BitSet();                // Entrées remplacées par une version plus récente
+    private final Map<String, IntList> postings = new HashMap<>();
+
+    /**
+     * Liste d'identifiants croissants (ajoutés dans l'ordre d'indexation)
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    public synchronized void clear() {
+        users.clear();
+        texts.clear();
+        idsByEmail.clear();
+        removed.clear();
+        postings.clear();
+    }
+
+    public synchronized int size() {
+        return idsByEmail.size();
+    }
+
+    public synchronized void addAll(List<?> newUsers) {
+        for (Object user : newUsers) {
+            add(user);
+        }
+    }
+
+    /**
+     * Indexer un utilisateur ; un utilisateur déjà présent (même email) est remplacé.
+     */
+    public synchronized void add(Object user) {
+        String email;
+        String[] fields;
+        if (user instanceof Student) {
+            Student student = (Student) user;
+            email = student.getEmail();
+            fields = new String[]{student.getFullName(), student.getEmail(), student.getStudentId()};
+        } else if (user instanceof Teacher) {
+            Teacher teacher = (Teacher) user;
+            email = teacher.getEmail();
+            fields = new String[]{teacher.getFullName(), teacher.getEmail(), teacher.getEmployeeId()};
+        } else {
+            return;
+        }
+
+        int id = users.size();
+        if (email != null) {
+            Integer previous = idsByEmail.put(email, id);
+            if (previous != null) {
+                removed.set(previous);
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        StringBuilder raw = new StringBuilder();
+        for (String field : fields) {
+            if (field == null) continue;
+            String normalized = normalize(field);
+            // Découpage en mots (lettres et chiffres)
+            int wordStart = -1;
+            for (int i = 0; i <= normalized.length(); i++) {
+                boolean wordChar = i < normalized.length() && isWordChar(normalized.charAt(i));
+                if (wordChar && wordStart < 0) {
+                    wordStart = i;
+                } else if (!wordChar && wordStart >= 0) {
+                    text.append(' ').append(normalized, wordStart, i);
+                    posting(normalized.substring(wordStart, wordStart + 1)).add(id);
+                    if (i - wordStart > 1) {
+                        posting(normalized.substring(wordStart, wordStart + 2)).add(id);
+                    }
+                    wordStart = -1;
+                }
+            }
+            for (int i = 0; i + 3 <= normalized.length(); i++) {
+                posting(normalized.substring(i, i + 3)).add(id);
+            }
+            raw.append('\n').append(normalized);
+        }
+
+        users.add(user);
+        texts.add(text.append(raw).toString());
+    }
+
+    /**
+     * Utilisateurs correspondant à tous les termes de la requête, dans l'ordre d'indexation
+     */
+    public synchronized List<Object> search(String query) {
+        List<Object> results = new ArrayList<>();
+        String[] terms = normalize(query).trim().split("\\s+");
+        if (terms.length == 0 || terms[0].isEmpty()) {
+            return results;
+        }
+
+        // Liste de candidats la plus courte parmi les clés de tous les termes
+        IntList candidates = null;
+        for (String term : terms) {
+            for (String key : keysFor(term)) {
+                IntList list = postings.get(key);
+                if (list == null) {
+                    return results;
+                }
+                if (candidates == null || list.size < candidates.size) {
+                    candidates = list;
+                }
+            }
+        }
+
+        for (int i = 0; i < candidates.size; i++) {
+            int id = candidates.values[i];
+            if (!removed.get(id) && matchesAll(texts.get(id), terms)) {
+                results.add(users.get(id));
+            }
+        }
+        return results;
+    }
+
+    private static boolean matchesAll(String text, String[] terms) {
+        for (String term : terms) {
+            boolean matches = term.length() >= 3 ? text.contains(term) : text.contains(" " + term);
+            if (!matches) return false;
+        }
+        return true;
+    }
+
+    private static List<String> keysFor(String term) {
+        List<String> keys = new ArrayList<>();
+        if (term.length() < 3) {
+            keys.add(term);
+        } else {
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                keys.add(term.substring(i, i + 3));
+            }
+        }
+        return keys;
+    }
+
+    private IntList posting(String key) {
+        IntList list = postings.get(key);
+        if (list == null) {
+            list = new IntList();
+            postings.put(key, list);
+        }
+        return list;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Minuscules sans accents ("Éloïse" -> "eloise")
+     */
+    static String normalize(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 128) {
+                String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+                return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+            }
+        }
+        // Cas le plus fréquent : texte ASCII, pas de décomposition nécessaire
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.attendancesystem.utils;
+
+import android.graphics.Bitmap;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion des images YUV_420_888 de CameraX en Bitmap ARGB redressé (rotation du capteur
+ * appliquée). Les plans, le tableau de pixels et le Bitmap de sortie sont réutilisés d'une image
+ * à l'autre : aucune allocation tant que la résolution ne change pas.
+ * Un convertisseur par thread d'analyse (non thread-safe) ; le Bitmap renvoyé est réécrit à l'appel suivant.
+ */
+public class YuvToRgbConverter {
+
+    private byte[] yPlane = new byte[0];
+    private byte[] uPlane = new byte[0];
+    private byte[] vPlane = new byte[0];
+    private int[] pixels = new int[0];
+    private Bitmap output;
+
+    public Bitmap convert(ImageProxy image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rotation = image.getImageInfo().getRotationDegrees();
+        boolean swap = rotation == 90 || rotation == 270;
+        int outWidth = swap ? height : width;
+        int outHeight = swap ? width : height;
+
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        yPlane = copy(planes[0].getBuffer(), yPlane);
+        uPlane = copy(planes[1].getBuffer(), uPlane);
+        vPlane = copy(planes[2].getBuffer(), vPlane);
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+
+        if (pixels.length < outWidth * outHeight) {
+            pixels = new int[outWidth * outHeight];
+        }
+        if (output == null || output.getWidth() != outWidth || output.getHeight() != outHeight) {
+            output = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+        }
+
+        for (int y = 0; y < height; y++) {
+            int yRow = y * yRowStride;
+            int uvRow = (y >> 1) * uvRowStride;
+            for (int x = 0; x < width; x++) {
+                int luma = yPlane[yRow + x * yPixelStride] & 0xFF;
+                int uvIndex = uvRow + (x >> 1) * uvPixelStride;
+                int u = (uPlane[uvIndex] & 0xFF) - 128;
+                int v = (vPlane[uvIndex] & 0xFF) - 128;
+
+                // BT.601 plage complète, coefficients en virgule fixe (16 bits)
+                int r = clamp(luma + ((91881 * v) >> 16));
+                int g = clamp(luma - ((22554 * u + 46802 * v) >> 16));
+                int b = clamp(luma + ((116130 * u) >> 16));
+
+                int target;
+                switch (rotation) {
+                    case 90:
+                        target = x * outWidth + (outWidth - 1 - y);
+                        break;
+                    case 180:
+                        target = (height - 1 - y) * outWidth + (width - 1 - x);
+                        break;
+                    case 270:
+                        target = (width - 1 - x) * outWidth + y;
+                        break;
+                    default:
+                        target = y * outWidth + x;
+                        break;
+                }
+                pixels[target] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        output.setPixels(pixels, 0, outWidth, 0, 0, outWidth, outHeight);
+        return output;
+    }
+
+    private static byte[] copy(ByteBuffer buffer, byte[] target) {
+        buffer.rewind();
+        int length = buffer.remaining();
+        if (target.length < length) {
+            target = new byte[length];
+        }
+        buffer.get(target, 0, length);
+        return target;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
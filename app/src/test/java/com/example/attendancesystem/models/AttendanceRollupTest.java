@@ -0,0 +1,158 @@
+package com.example.attendancesystem.models;
+
+import com.google.firebase.firestore.FieldValue;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fenêtre glissante par jour et application des statuts du bilan d'assiduité
+ */
+public class AttendanceRollupTest {
+
+    private static Date daysBefore(Date now, int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(now);
+        calendar.add(Calendar.DAY_OF_MONTH, -days);
+        return calendar.getTime();
+    }
+
+    private static Map<String, Long> bucket(long total, long present) {
+        Map<String, Long> bucket = new HashMap<>();
+        bucket.put(AttendanceRollup.TOTAL, total);
+        bucket.put(AttendanceRollup.PRESENT, present);
+        return bucket;
+    }
+
+    private static Map<String, Map<String, Object>> recorded(String sessionId, Map<String, Object> entry) {
+        Map<String, Map<String, Object>> recorded = new HashMap<>();
+        if (entry != null) {
+            recorded.put(sessionId, entry);
+        }
+        return recorded;
+    }
+
+    @Test
+    public void countSince_countsExactlyTheLastDays() {
+        Date now = new Date();
+        Map<String, Map<String, Long>> byDay = new HashMap<>();
+        byDay.put(AttendanceRollup.dayKey(now), bucket(1, 1));
+        byDay.put(AttendanceRollup.dayKey(daysBefore(now, 29)), bucket(2, 1));
+        // Hors de la fenêtre de 30 jours
+        byDay.put(AttendanceRollup.dayKey(daysBefore(now, 30)), bucket(4, 4));
+        byDay.put(AttendanceRollup.dayKey(daysBefore(now, 35)), bucket(8, 8));
+        AttendanceRollup rollup = new AttendanceRollup();
+        rollup.setByDay(byDay);
+
+        assertEquals(3, rollup.countSince(30, AttendanceRollup.TOTAL, now));
+        assertEquals(2, rollup.countSince(30, AttendanceRollup.PRESENT, now));
+        assertEquals(7, rollup.countSince(31, AttendanceRollup.TOTAL, now));
+    }
+
+    @Test
+    public void resolveStatus_keepsJustificationAndIgnoresRepeats() {
+        assertNull(AttendanceRollup.resolveStatus(AttendanceRollup.PRESENT, AttendanceRollup.PRESENT));
+        assertNull(AttendanceRollup.resolveStatus(AttendanceRollup.JUSTIFIED, AttendanceRollup.ABSENT));
+        assertNull(AttendanceRollup.resolveStatus(AttendanceRollup.PRESENT, AttendanceRollup.JUSTIFIED));
+        assertEquals(AttendanceRollup.JUSTIFIED,
+                AttendanceRollup.resolveStatus(AttendanceRollup.ABSENT, AttendanceRollup.JUSTIFIED));
+        assertEquals(AttendanceRollup.PRESENT,
+                AttendanceRollup.resolveStatus(AttendanceRollup.JUSTIFIED, AttendanceRollup.PRESENT));
+        assertEquals(AttendanceRollup.ABSENT, AttendanceRollup.resolveStatus(null, AttendanceRollup.ABSENT));
+    }
+
+    @Test
+    public void statusUpdate_returnsNullWhenNothingChanges() {
+        Date date = new Date();
+        Map<String, Map<String, Object>> recorded =
+                recorded("s1", AttendanceRollup.sessionEntry("c1", date, AttendanceRollup.PRESENT));
+        assertNull(AttendanceRollup.statusUpdate("a@ecole.fr", "s1", "c1", date, AttendanceRollup.PRESENT,
+                recorded, new HashSet<>(), date));
+        assertNotNull(AttendanceRollup.statusUpdate("a@ecole.fr", "s1", "c1", date, AttendanceRollup.ABSENT,
+                recorded, new HashSet<>(), date));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void statusUpdate_keepsDayOfCorrectedSession() {
+        Date now = new Date();
+        Date sessionDay = daysBefore(now, 3);
+        Map<String, Map<String, Object>> recorded =
+                recorded("s1", AttendanceRollup.sessionEntry("c1", sessionDay, AttendanceRollup.ABSENT));
+
+        // Correction enregistrée aujourd'hui : elle reste comptée le jour de la séance
+        Map<String, Object> update = AttendanceRollup.statusUpdate("a@ecole.fr", "s1", "c1", now,
+                AttendanceRollup.JUSTIFIED, recorded, new HashSet<>(), now);
+        Map<String, Object> byDay = (Map<String, Object>) update.get("byDay");
+        assertEquals(1, byDay.size());
+        assertTrue(byDay.containsKey(AttendanceRollup.dayKey(sessionDay)));
+        Map<String, Object> bucket = (Map<String, Object>) byDay.get(AttendanceRollup.dayKey(sessionDay));
+        assertTrue(bucket.containsKey(AttendanceRollup.ABSENT));
+        assertTrue(bucket.containsKey(AttendanceRollup.JUSTIFIED));
+        assertFalse(bucket.containsKey(AttendanceRollup.TOTAL));
+        assertFalse(update.containsKey("totalSessions"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void statusUpdate_prunesEntriesAndDaysOutsideRetention() {
+        Date now = new Date();
+        Date oldDay = daysBefore(now, AttendanceRollup.RETENTION_DAYS);
+        Date lastKeptDay = daysBefore(now, AttendanceRollup.RETENTION_DAYS - 1);
+        Map<String, Map<String, Object>> recorded =
+                recorded("old", AttendanceRollup.sessionEntry("c1", oldDay, AttendanceRollup.ABSENT));
+        recorded.put("kept", AttendanceRollup.sessionEntry("c1", lastKeptDay, AttendanceRollup.PRESENT));
+        HashSet<String> days = new HashSet<>();
+        days.add(AttendanceRollup.dayKey(oldDay));
+        days.add(AttendanceRollup.dayKey(lastKeptDay));
+
+        Map<String, Object> update = AttendanceRollup.statusUpdate("a@ecole.fr", "s1", "c1", now,
+                AttendanceRollup.PRESENT, recorded, days, now);
+        Map<String, Object> sessions = (Map<String, Object>) update.get("sessions");
+        assertEquals(2, sessions.size());
+        assertSame(FieldValue.delete(), sessions.get("old"));
+        assertFalse(sessions.containsKey("kept"));
+        Map<String, Object> byDay = (Map<String, Object>) update.get("byDay");
+        assertSame(FieldValue.delete(), byDay.get(AttendanceRollup.dayKey(oldDay)));
+        assertFalse(byDay.containsKey(AttendanceRollup.dayKey(lastKeptDay)));
+
+        // Séance hors de la fenêtre : compteurs définitifs, plus de correction
+        assertNull(AttendanceRollup.statusUpdate("a@ecole.fr", "old", "c1", oldDay,
+                AttendanceRollup.JUSTIFIED, recorded, days, now));
+        assertNull(AttendanceRollup.statusUpdate("a@ecole.fr", "s2", "c1", oldDay,
+                AttendanceRollup.ABSENT, recorded(null, null), new HashSet<>(), now));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void rebuild_countsEverySession() {
+        Date now = new Date();
+        Map<String, Map<String, Object>> entries = new HashMap<>();
+        entries.put("s1", AttendanceRollup.sessionEntry("c1", now, AttendanceRollup.PRESENT));
+        entries.put("s2", AttendanceRollup.sessionEntry("c1", daysBefore(now, 40), AttendanceRollup.ABSENT));
+        entries.put("s3", AttendanceRollup.sessionEntry("c2", daysBefore(now, 2), AttendanceRollup.JUSTIFIED));
+
+        Map<String, Object> document = AttendanceRollup.rebuild("a@ecole.fr", entries, now);
+        assertEquals(3L, document.get("totalSessions"));
+        assertEquals(1L, document.get("presentCount"));
+        assertEquals(1L, document.get("absentCount"));
+        assertEquals(1L, document.get("justifiedCount"));
+        assertEquals(Boolean.TRUE, document.get("backfilled"));
+        // Seules les séances de la fenêtre de conservation restent enregistrées
+        assertEquals(2, ((Map<String, Object>) document.get("sessions")).size());
+        assertEquals(2, ((Map<String, Object>) document.get("byDay")).size());
+
+        AttendanceRollup rollup = new AttendanceRollup();
+        rollup.setByDay((Map<String, Map<String, Long>>) document.get("byDay"));
+        rollup.setByCourse((Map<String, Map<String, Long>>) document.get("byCourse"));
+        assertEquals(2, rollup.countSince(30, AttendanceRollup.TOTAL, now));
+        assertEquals(2, rollup.countForCourse("c1", AttendanceRollup.TOTAL));
+    }
+}
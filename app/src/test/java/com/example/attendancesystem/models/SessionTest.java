@@ -0,0 +1,215 @@
+package com.example.attendancesystem.models;
+
+import com.google.firebase.firestore.FieldValue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cohérence entre les listes d'étudiants de Session et leurs index (email -> position)
+ */
+public class SessionTest {
+
+    private static final int STUDENTS = 50;
+
+    private Session session;
+    private List<String> emails;
+
+    @Before
+    public void setUp() {
+        session = new Session();
+        emails = new ArrayList<>();
+        for (int i = 0; i < STUDENTS; i++) {
+            String email = "etudiant" + i + "@ecole.fr";
+            emails.add(email);
+            session.enrollStudent(email);
+        }
+    }
+
+    @Test
+    public void enrollStudent_ignoresDuplicates() {
+        session.enrollStudent(emails.get(3));
+        assertEquals(STUDENTS, session.getEnrolledStudentEmails().size());
+        assertConsistent();
+    }
+
+    @Test
+    public void markPresentThenAbsent_movesStudentBetweenLists() {
+        String email = emails.get(7);
+        session.markStudentPresent(email);
+        assertTrue(session.isStudentPresent(email));
+        assertFalse(session.isStudentAbsent(email));
+
+        session.markStudentAbsent(email);
+        assertFalse(session.isStudentPresent(email));
+        assertTrue(session.isStudentAbsent(email));
+        assertEquals(0, session.getPresentStudentEmails().size());
+        assertEquals(1, session.getAbsentStudentEmails().size());
+        assertConsistent();
+    }
+
+    @Test
+    public void markStudentPresent_ignoresStudentNotEnrolled() {
+        session.markStudentPresent("inconnu@ecole.fr");
+        assertFalse(session.isStudentPresent("inconnu@ecole.fr"));
+        assertTrue(session.getPresentStudentEmails().isEmpty());
+    }
+
+    @Test
+    public void removeStudent_fromMiddleKeepsIndexInSync() {
+        for (String email : emails) {
+            session.markStudentPresent(email);
+        }
+        session.removeStudent(emails.get(0));
+        session.removeStudent(emails.get(25));
+        session.removeStudent(emails.get(STUDENTS - 1));
+
+        assertEquals(STUDENTS - 3, session.getEnrolledStudentEmails().size());
+        assertEquals(STUDENTS - 3, session.getPresentStudentEmails().size());
+        assertFalse(session.isStudentEnrolled(emails.get(25)));
+        assertFalse(session.isStudentPresent(emails.get(25)));
+        // Les étudiants décalés par le retrait restent retirables
+        session.removeStudent(emails.get(STUDENTS - 2));
+        assertFalse(session.isStudentPresent(emails.get(STUDENTS - 2)));
+        assertConsistent();
+    }
+
+    @Test
+    public void randomOperations_keepListsAndIndexesConsistent() {
+        Random random = new Random(42);
+        for (int step = 0; step < 5000; step++) {
+            String email = emails.get(random.nextInt(STUDENTS));
+            switch (random.nextInt(4)) {
+                case 0: session.markStudentPresent(email); break;
+                case 1: session.markStudentAbsent(email); break;
+                case 2: session.removeStudent(email); break;
+                default: session.enrollStudent(email); break;
+            }
+        }
+        assertConsistent();
+    }
+
+    @Test
+    public void endSession_marksEveryoneNotPresentAbsent() {
+        session.markStudentPresent(emails.get(1));
+        session.markStudentPresent(emails.get(2));
+        session.endSession();
+
+        assertEquals(2, session.getPresentStudentEmails().size());
+        assertEquals(STUDENTS - 2, session.getAbsentStudentEmails().size());
+        assertEquals(2, session.getStatistics().getTotalPresent());
+        assertEquals(STUDENTS - 2, session.getStatistics().getTotalAbsent());
+        assertConsistent();
+    }
+
+    @Test
+    public void setPresentStudentEmails_rebuildsIndexAndDropsDuplicates() {
+        session.setPresentStudentEmails(new ArrayList<>(Arrays.asList(emails.get(4), emails.get(5), emails.get(4))));
+        assertTrue(session.isStudentPresent(emails.get(4)));
+        assertEquals(2, session.getPresentStudentEmails().size());
+
+        session.markStudentAbsent(emails.get(4));
+        assertEquals(Arrays.asList(emails.get(5)), session.getPresentStudentEmails());
+        assertConsistent();
+    }
+
+    @Test
+    public void toDeltaMap_sendsListChangesWithoutCounters() {
+        session.setSessionId("s1");
+        session.beginChangeTracking();
+        session.markStudentPresent(emails.get(0));
+        session.markStudentPresent(emails.get(1));
+
+        Map<String, Object> delta = session.toDeltaMap();
+        assertTrue(delta.containsKey("presentStudentEmails"));
+        assertFalse(delta.containsKey("enrolledStudentEmails"));
+        // Statistiques des versions précédentes supprimées, jamais réécrites
+        assertSame(FieldValue.delete(), delta.get("statistics"));
+    }
+
+    @Test
+    public void toMap_doesNotStoreStatistics() {
+        session.markStudentPresent(emails.get(0));
+        assertFalse(session.toMap().containsKey("statistics"));
+        assertSame(FieldValue.delete(), session.toUpdateMap().get("statistics"));
+
+        session.setSessionId("s1");
+        session.beginChangeTracking();
+        // Ajout et retrait sur la même liste : la liste complète est envoyée, sans compteurs
+        session.markStudentPresent(emails.get(1));
+        session.markStudentAbsent(emails.get(0));
+        Map<String, Object> delta = session.toDeltaMap();
+        assertEquals(session.getPresentStudentEmails(), delta.get("presentStudentEmails"));
+        assertSame(FieldValue.delete(), delta.get("statistics"));
+        assertEquals(1, session.getStatistics().getTotalPresent());
+    }
+
+    @Test
+    public void removeStudent_keepsListOrder() {
+        for (String email : emails) {
+            session.markStudentPresent(email);
+        }
+        session.removeStudent(emails.get(10));
+        session.removeStudent(emails.get(0));
+        session.markStudentAbsent(emails.get(30));
+
+        List<String> expected = new ArrayList<>(emails);
+        expected.remove(emails.get(10));
+        expected.remove(emails.get(0));
+        assertEquals(expected, session.getEnrolledStudentEmails());
+        expected.remove(emails.get(30));
+        assertEquals(expected, session.getPresentStudentEmails());
+        // Les positions décalées restent justes pour les retraits suivants
+        session.removeStudent(emails.get(STUDENTS - 1));
+        expected.remove(emails.get(STUDENTS - 1));
+        assertEquals(expected, session.getPresentStudentEmails());
+        assertConsistent();
+    }
+
+    @Test
+    public void isStudentEnrolled_doesNotModifyList() {
+        List<String> enrolled = session.getEnrolledStudentEmails();
+        List<String> copy = new ArrayList<>(enrolled);
+        session.isStudentEnrolled(emails.get(1));
+        session.isStudentPresent(emails.get(1));
+        assertEquals(copy, enrolled);
+    }
+
+    private void assertConsistent() {
+        assertListMatchesIndex(session.getEnrolledStudentEmails(), Membership.ENROLLED);
+        assertListMatchesIndex(session.getPresentStudentEmails(), Membership.PRESENT);
+        assertListMatchesIndex(session.getAbsentStudentEmails(), Membership.ABSENT);
+        for (String email : session.getPresentStudentEmails()) {
+            assertFalse("présent et absent: " + email, session.isStudentAbsent(email));
+            assertTrue("présent sans être inscrit: " + email, session.isStudentEnrolled(email));
+        }
+        Session.SessionStatistics statistics = session.getStatistics();
+        assertEquals(session.getEnrolledStudentEmails().size(), statistics.getTotalEnrolled());
+        assertEquals(session.getPresentStudentEmails().size(), statistics.getTotalPresent());
+        assertEquals(session.getAbsentStudentEmails().size(), statistics.getTotalAbsent());
+    }
+
+    private enum Membership { ENROLLED, PRESENT, ABSENT }
+
+    private void assertListMatchesIndex(List<String> list, Membership membership) {
+        assertEquals("doublons dans " + membership, new HashSet<>(list).size(), list.size());
+        for (String email : emails) {
+            boolean indexed;
+            switch (membership) {
+                case ENROLLED: indexed = session.isStudentEnrolled(email); break;
+                case PRESENT: indexed = session.isStudentPresent(email); break;
+                default: indexed = session.isStudentAbsent(email); break;
+            }
+            assertEquals(membership + " " + email, list.contains(email), indexed);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.attendancesystem.services;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rappel de la recherche approchée (IVF) de FaceEmbeddingIndex comparé à la
+ * recherche exhaustive (searchExhaustive), et persistance de l'index enregistré.
+ */
+public class FaceEmbeddingIndexTest {
+
+    private static final int DIMENSION = 128;
+    private static final int GALLERY_SIZE = 10000;
+    private static final int QUERIES = 200;
+    // Même visage, autre image : score cosinus d'environ 0,8 avec l'empreinte enregistrée
+    private static final double SAME_FACE_NOISE = 0.7;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Random random;
+    private float[][] embeddings;
+    private File file;
+    private FaceEmbeddingIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        random = new Random(42);
+        embeddings = new float[GALLERY_SIZE][];
+        file = new File(folder.getRoot(), "face_index.bin");
+        index = FaceEmbeddingIndex.open(file);
+        for (int i = 0; i < GALLERY_SIZE; i++) {
+            embeddings[i] = randomVector();
+            index.put(email(i), embeddings[i]);
+        }
+        index.save();
+    }
+
+    private static String email(int index) {
+        return "etudiant" + index + "@ecole.fr";
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private float[] nearStudent(int index) {
+        float[] probe = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            probe[i] = (float) (embeddings[index][i] + SAME_FACE_NOISE * random.nextGaussian());
+        }
+        return probe;
+    }
+
+    @Test
+    public void search_findsSameStudentAsExhaustive() {
+        int top1 = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int expected = random.nextInt(GALLERY_SIZE);
+            float[] probe = nearStudent(expected);
+            List<FaceEmbeddingIndex.Match> approximate = index.search(probe, 1, FaceEmbeddingIndex.DEFAULT_PROBES);
+            List<FaceEmbeddingIndex.Match> exhaustive = index.searchExhaustive(probe, 1);
+
+            // La recherche exhaustive retrouve l'étudiant : elle sert de référence
+            assertEquals(email(expected), exhaustive.get(0).getEmail());
+            if (approximate.get(0).getEmail().equals(exhaustive.get(0).getEmail())) {
+                top1++;
+            }
+        }
+
+        double recall1 = top1 / (double) QUERIES;
+        assertTrue("rappel@1 " + recall1, recall1 >= 0.9);
+    }
+
+    @Test
+    public void searchExhaustive_scoresMatchCosine() {
+        float[] probe = nearStudent(123);
+        FaceEmbeddingIndex.Match best = index.searchExhaustive(probe, 1).get(0);
+        assertEquals(email(123), best.getEmail());
+
+        double dot = 0, probeNorm = 0, galleryNorm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            dot += probe[i] * (double) embeddings[123][i];
+            probeNorm += probe[i] * (double) probe[i];
+            galleryNorm += embeddings[123][i] * (double) embeddings[123][i];
+        }
+        // Quantification sur 8 bits : écart limité
+        assertEquals(dot / Math.sqrt(probeNorm * galleryNorm), best.getScore(), 0.02);
+    }
+
+    @Test
+    public void putAndRemove_areVisibleBeforeAndAfterSave() throws Exception {
+        float[] replacement = randomVector();
+        index.put(email(7), replacement);
+        index.remove(email(8));
+        // Même modification reçue deux fois (synchronisation >= watermark) : sans effet de plus
+        index.put(email(7), replacement);
+        index.remove(email(8));
+        assertEquals(GALLERY_SIZE - 1, index.size());
+
+        for (int pass = 0; pass < 2; pass++) {
+            assertEquals(email(7), index.searchExhaustive(replacement, 1).get(0).getEmail());
+            for (FaceEmbeddingIndex.Match match : index.searchExhaustive(embeddings[8], 5)) {
+                assertNotEquals(email(8), match.getEmail());
+            }
+            index.save();
+        }
+        assertEquals(GALLERY_SIZE - 1, index.size());
+    }
+
+    @Test
+    public void open_restoresSavedIndexAndWatermark() throws Exception {
+        index.setWatermark(1_700_000_000_000L);
+        index.save();
+
+        FaceEmbeddingIndex reopened = FaceEmbeddingIndex.open(file);
+        assertEquals(GALLERY_SIZE, reopened.size());
+        assertEquals(DIMENSION, reopened.getDimension());
+        assertEquals(1_700_000_000_000L, reopened.getWatermark());
+        float[] probe = nearStudent(4321);
+        assertEquals(index.search(probe, 3, FaceEmbeddingIndex.DEFAULT_PROBES).get(0).getEmail(),
+                reopened.search(probe, 3, FaceEmbeddingIndex.DEFAULT_PROBES).get(0).getEmail());
+    }
+
+    @Test
+    public void search_rejectsWrongDimension() {
+        assertTrue(index.search(new float[DIMENSION - 1], 3, FaceEmbeddingIndex.DEFAULT_PROBES).isEmpty());
+        assertTrue(index.search(randomVector(), 0, FaceEmbeddingIndex.DEFAULT_PROBES).isEmpty());
+    }
+}
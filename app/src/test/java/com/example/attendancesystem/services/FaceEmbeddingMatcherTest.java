@@ -0,0 +1,190 @@
+package com.example.attendancesystem.services;
+
+import com.example.attendancesystem.models.Student;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Résultats de match() et matchBatch() comparés à une recherche exhaustive en double précision
+ */
+public class FaceEmbeddingMatcherTest {
+
+    private static final int DIMENSION = 128;
+    private static final int GALLERY_SIZE = 2000;
+    private static final float SCORE_TOLERANCE = 1e-4f;
+
+    private Random random;
+    private List<Student> students;
+    private FaceEmbeddingMatcher matcher;
+
+    @Before
+    public void setUp() {
+        random = new Random(42);
+        students = new ArrayList<>();
+        for (int i = 0; i < GALLERY_SIZE; i++) {
+            students.add(student(i, randomVector(DIMENSION)));
+        }
+        matcher = FaceEmbeddingMatcher.fromStudents(students);
+    }
+
+    private static Student student(int index, float[] embedding) {
+        Student student = new Student();
+        student.setEmail("etudiant" + index + "@ecole.fr");
+        student.setFullName("Étudiant " + index);
+        student.setStudentId("E" + index);
+        List<Double> values = new ArrayList<>(embedding.length);
+        for (float value : embedding) {
+            values.add((double) value);
+        }
+        student.setFaceEmbedding(values);
+        return student;
+    }
+
+    private float[] randomVector(int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * Empreinte proche de celle d'un étudiant (même visage, autre image)
+     */
+    private float[] nearStudent(int index, double noise) {
+        List<Double> embedding = students.get(index).getFaceEmbedding();
+        float[] probe = new float[embedding.size()];
+        for (int i = 0; i < probe.length; i++) {
+            probe[i] = (float) (embedding.get(i) + noise * random.nextGaussian());
+        }
+        return probe;
+    }
+
+    /**
+     * Cosinus en double avec tous les étudiants de la galerie
+     */
+    private double[] exhaustiveScores(float[] probe) {
+        double[] scores = new double[students.size()];
+        for (int row = 0; row < students.size(); row++) {
+            List<Double> embedding = students.get(row).getFaceEmbedding();
+            double dot = 0, probeNorm = 0, galleryNorm = 0;
+            for (int i = 0; i < probe.length; i++) {
+                dot += probe[i] * embedding.get(i);
+                probeNorm += probe[i] * (double) probe[i];
+                galleryNorm += embedding.get(i) * embedding.get(i);
+            }
+            scores[row] = dot / Math.sqrt(probeNorm * galleryNorm);
+        }
+        return scores;
+    }
+
+    private static int[] topRows(double[] scores, int k) {
+        Integer[] rows = new Integer[scores.length];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        Arrays.sort(rows, (a, b) -> Double.compare(scores[b], scores[a]));
+        int[] top = new int[Math.min(k, rows.length)];
+        for (int i = 0; i < top.length; i++) top[i] = rows[i];
+        return top;
+    }
+
+    private static int argMax(double[] scores) {
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        return best;
+    }
+
+    @Test
+    public void match_returnsExhaustiveTopK() {
+        for (int trial = 0; trial < 50; trial++) {
+            float[] probe = trial % 2 == 0 ? randomVector(DIMENSION) : nearStudent(random.nextInt(GALLERY_SIZE), 0.5);
+            int k = 1 + trial % 10;
+            double[] scores = exhaustiveScores(probe);
+            int[] expected = topRows(scores, k);
+
+            List<FaceEmbeddingMatcher.Match> matches = matcher.match(probe, k).getMatches();
+            assertEquals(k, matches.size());
+            for (int i = 0; i < k; i++) {
+                assertEquals(students.get(expected[i]).getEmail(), matches.get(i).getStudent().getEmail());
+                assertEquals(scores[expected[i]], matches.get(i).getScore(), SCORE_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void match_doesNotModifyProbe() {
+        float[] probe = randomVector(DIMENSION);
+        float[] copy = probe.clone();
+        matcher.match(probe, 3);
+        matcher.matchBatch(new float[][]{probe}, 1);
+        assertArrayEquals(copy, probe, 0f);
+    }
+
+    @Test
+    public void match_rejectsWrongDimensionAndEmptyGallery() {
+        assertTrue(matcher.match(randomVector(DIMENSION - 1), 3).getMatches().isEmpty());
+        assertTrue(matcher.match(randomVector(DIMENSION), 0).getMatches().isEmpty());
+        FaceEmbeddingMatcher empty = FaceEmbeddingMatcher.fromStudents(new ArrayList<>());
+        assertTrue(empty.match(randomVector(DIMENSION), 3).getMatches().isEmpty());
+        assertArrayEquals(new FaceEmbeddingMatcher.Match[2], empty.matchBatch(new float[2][], 2));
+    }
+
+    @Test
+    public void matchBatch_matchesExhaustiveBestPerFace() {
+        // 7 visages : un groupe de 4 et un reste de 3 pour le produit groupé
+        int[] faces = {5, 17, 900, 1999, 42, 1234, 77};
+        float[][] probes = new float[faces.length][];
+        for (int p = 0; p < faces.length; p++) {
+            probes[p] = nearStudent(faces[p], 0.3);
+        }
+
+        FaceEmbeddingMatcher.Match[] matches = matcher.matchBatch(probes, probes.length);
+        for (int p = 0; p < faces.length; p++) {
+            double[] scores = exhaustiveScores(probes[p]);
+            int best = argMax(scores);
+            assertEquals(faces[p], best);
+            assertNotNull(matches[p]);
+            assertEquals(students.get(best).getEmail(), matches[p].getStudent().getEmail());
+            assertEquals(scores[best], matches[p].getScore(), SCORE_TOLERANCE);
+            // Même résultat que la recherche d'un seul visage
+            assertEquals(matcher.match(probes[p], 1).getMatches().get(0).getStudent().getEmail(),
+                    matches[p].getStudent().getEmail());
+        }
+    }
+
+    @Test
+    public void matchBatch_keepsStudentForBestFaceOnly() {
+        float[][] probes = {
+                nearStudent(10, 0.8),  // Même étudiant, moins ressemblant
+                nearStudent(20, 0.2),
+                nearStudent(10, 0.1),  // Même étudiant, meilleur score
+                null,                  // Visage sans empreinte
+                randomVector(DIMENSION + 3)
+        };
+        FaceEmbeddingMatcher.Match[] matches = matcher.matchBatch(probes, probes.length);
+
+        assertNull(matches[0]);
+        assertEquals("etudiant20@ecole.fr", matches[1].getStudent().getEmail());
+        assertEquals("etudiant10@ecole.fr", matches[2].getStudent().getEmail());
+        assertNull(matches[3]);
+        assertNull(matches[4]);
+    }
+
+    @Test
+    public void matchBatch_onlyReadsFirstCountProbes() {
+        float[][] probes = {nearStudent(3, 0.1), nearStudent(4, 0.1), nearStudent(5, 0.1)};
+        FaceEmbeddingMatcher.Match[] matches = matcher.matchBatch(probes, 2);
+        assertEquals(2, matches.length);
+        assertEquals("etudiant3@ecole.fr", matches[0].getStudent().getEmail());
+        assertEquals("etudiant4@ecole.fr", matches[1].getStudent().getEmail());
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.attendancesystem.utils;
+
+import com.example.attendancesystem.models.Student;
+import com.example.attendancesystem.models.Teacher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recherche par trigrammes (termes de 3 caractères ou plus) et par début de mot (1 ou 2 caractères)
+ */
+public class UserSearchIndexTest {
+
+    private UserSearchIndex index;
+    private Student eloise;
+    private Student marc;
+    private Teacher amel;
+
+    private static Student student(String email, String fullName, String studentId) {
+        Student student = new Student();
+        student.setEmail(email);
+        student.setFullName(fullName);
+        student.setStudentId(studentId);
+        return student;
+    }
+
+    private static List<String> emailsOf(List<Object> users) {
+        List<String> emails = new ArrayList<>();
+        for (Object user : users) {
+            emails.add(user instanceof Student ? ((Student) user).getEmail() : ((Teacher) user).getEmail());
+        }
+        return emails;
+    }
+
+    @Before
+    public void setUp() {
+        index = new UserSearchIndex();
+        eloise = student("eloise.martin@ecole.fr", "Éloïse Martin", "E2024001");
+        marc = student("marc.dupont@ecole.fr", "Marc Dupont", "E2024002");
+        amel = new Teacher();
+        amel.setEmail("amel.benali@ecole.fr");
+        amel.setFullName("Amel Benali");
+        amel.setEmployeeId("T-17");
+        index.addAll(Arrays.asList(eloise, marc, amel));
+    }
+
+    @Test
+    public void search_findsSubstringWithTrigrams() {
+        assertEquals(Arrays.asList(eloise), index.search("arti"));
+        assertEquals(Arrays.asList(marc), index.search("upon"));
+        assertEquals(Arrays.asList(eloise, marc), index.search("e2024"));
+    }
+
+    @Test
+    public void search_ignoresCaseAndAccents() {
+        assertEquals(Arrays.asList(eloise), index.search("ELOISE"));
+        assertEquals(Arrays.asList(eloise), index.search("éloï"));
+    }
+
+    @Test
+    public void search_shortTermsMatchWordStartsOnly() {
+        // "ma" : début de "Marc" et "Martin", pas le milieu de "amel"
+        assertEquals(Arrays.asList(eloise, marc), index.search("ma"));
+        assertEquals(Arrays.asList(amel), index.search("b"));
+        assertTrue(index.search("rc").isEmpty());
+    }
+
+    @Test
+    public void search_requiresEveryTerm() {
+        assertEquals(Arrays.asList(marc), index.search("ma dup"));
+        assertTrue(index.search("marc martin").isEmpty());
+        assertEquals(Arrays.asList(amel), index.search("t-17"));
+    }
+
+    @Test
+    public void search_emptyOrUnknownQueryReturnsNothing() {
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search("   ").isEmpty());
+        assertTrue(index.search("zzz").isEmpty());
+    }
+
+    @Test
+    public void add_replacesUserWithSameEmail() {
+        Student renamed = student("marc.dupont@ecole.fr", "Marc Durand", "E2024002");
+        index.add(renamed);
+
+        assertEquals(3, index.size());
+        // L'ancienne version n'est plus renvoyée (l'email contient toujours "dupont")
+        assertEquals(Arrays.asList(renamed), index.search("dupont"));
+        assertEquals(Arrays.asList(renamed), index.search("durand"));
+        assertEquals(Arrays.asList(renamed), index.search("marc"));
+    }
+
+    @Test
+    public void search_matchesLinearScan() {
+        Random random = new Random(7);
+        String[] names = {"Martin", "Bernard", "Dubois", "Thomas", "Robert", "Richard", "Petit", "Durand", "Léa", "Noé"};
+        List<Student> students = new ArrayList<>();
+        index.clear();
+        for (int i = 0; i < 2000; i++) {
+            String fullName = names[random.nextInt(names.length)] + " " + names[random.nextInt(names.length)];
+            Student s = student("etudiant" + i + "@ecole.fr", fullName, "E" + (100000 + i));
+            students.add(s);
+            index.add(s);
+        }
+
+        for (String query : Arrays.asList("ar", "mar", "ber tho", "d", "lea", "e1000", "noe pet", "rob")) {
+            List<Object> expected = new ArrayList<>();
+            for (Student s : students) {
+                if (matchesByScan(s, query)) expected.add(s);
+            }
+            assertEquals(query, emailsOf(expected), emailsOf(index.search(query)));
+        }
+    }
+
+    /**
+     * Référence : chaque terme est une sous-chaîne (3+ caractères) ou un début de mot d'un des champs
+     */
+    private static boolean matchesByScan(Student student, String query) {
+        List<String> fields = Arrays.asList(student.getFullName(), student.getEmail(), student.getStudentId());
+        for (String term : UserSearchIndex.normalize(query).trim().split("\\s+")) {
+            boolean found = false;
+            for (String field : fields) {
+                String normalized = UserSearchIndex.normalize(field);
+                if (term.length() >= 3) {
+                    found |= normalized.contains(term);
+                } else {
+                    for (String word : normalized.split("[^a-z0-9]+")) {
+                        found |= word.startsWith(term);
+                    }
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+}